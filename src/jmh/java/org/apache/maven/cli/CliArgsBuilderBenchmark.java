@@ -0,0 +1,121 @@
+package org.apache.maven.cli;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CliArgsBuilderBenchmark {
+
+	@Param({ "2", "200" })
+	int properties;
+
+	@Param({ "1", "100" })
+	int projects;
+
+	private Map<String, String> systemProperties;
+	private String[] projectList;
+	private CliArgsBuilder args;
+	private CliArgsBuilder same;
+	private CliArgsBuilder different;
+	private CliArgsBuilder frozen;
+	private CliArgsBuilder frozenSame;
+	private CliArgsBuilder frozenDifferent;
+
+	@Setup
+	public void setup() {
+		systemProperties = new LinkedHashMap<String, String>();
+		for (int i = 0; i < properties; i++) {
+			systemProperties.put("property." + i, i % 3 == 0 ? "value with spaces " + i : "value" + i);
+		}
+		projectList = new String[projects];
+		for (int i = 0; i < projects; i++) {
+			projectList[i] = ":module-" + i;
+		}
+		args = build();
+		same = build();
+		different = build().threads("2C");
+		frozen = args.freeze();
+		frozenSame = same.freeze();
+		frozenDifferent = different.freeze();
+	}
+
+	private CliArgsBuilder build() {
+		return new CliArgsBuilder().alternatePomFile("pom.xml").systemProperties(systemProperties).offline().batchMode()
+				.activateProfiles("ci", "release").failAtEnd().projectList(projectList).alsoMake().threads("1C")
+				.goals("clean", "install");
+	}
+
+	@Benchmark
+	public CliArgsBuilder fluentConstruction() {
+		return build();
+	}
+
+	@Benchmark
+	public String renderToString() {
+		return args.toString();
+	}
+
+	@Benchmark
+	public String[] renderToArgv() {
+		return args.toArgv();
+	}
+
+	@Benchmark
+	public int hashCodeOf() {
+		return args.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSame() {
+		return args.equals(same);
+	}
+
+	@Benchmark
+	public boolean equalsDifferent() {
+		return args.equals(different);
+	}
+
+	@Benchmark
+	public int hashCodeFrozen() {
+		return frozen.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsFrozenSame() {
+		return frozen.equals(frozenSame);
+	}
+
+	@Benchmark
+	public boolean equalsFrozenDifferent() {
+		return frozen.equals(frozenDifferent);
+	}
+
+	@Benchmark
+	public CliArgsBuilder freeze() {
+		return args.freeze();
+	}
+
+	@Benchmark
+	public CliArgsBuilder deriveVariant() {
+		return frozen.derive().resumeFrom(":module-0").freeze();
+	}
+
+}
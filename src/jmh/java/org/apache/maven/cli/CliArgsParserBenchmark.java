@@ -0,0 +1,68 @@
+package org.apache.maven.cli;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of turning {@code mvn} command lines back into
+ * {@link CliArgsBuilder}s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CliArgsParserBenchmark {
+
+	@Param({ "2", "200" })
+	int properties;
+
+	private String commandLine;
+	private String[] argv;
+
+	@Setup
+	public void setup() {
+		CliArgsBuilder args = new CliArgsBuilder().alternatePomFile("pom.xml").offline().batchMode()
+				.activateProfiles("ci", "release").failAtEnd().projectList(":api", ":core").alsoMake().threads("1C")
+				.goals("clean", "install");
+		for (int i = 0; i < properties; i++) {
+			args.systemProperty("property." + i, i % 3 == 0 ? "value with spaces " + i : "value" + i);
+		}
+		commandLine = "./mvnw " + args;
+		argv = args.toArgv();
+	}
+
+	@Benchmark
+	public List<String> tokenize() {
+		return CommandLineTokenizer.tokenize(commandLine);
+	}
+
+	@Benchmark
+	public CliArgsBuilder parseCommandLine() {
+		return CliArgsBuilder.parse(commandLine);
+	}
+
+	@Benchmark
+	public CliArgsBuilder parseArgv() {
+		return CliArgsBuilder.fromArgv(argv);
+	}
+
+	@Benchmark
+	public String[] roundTrip() {
+		return CliArgsBuilder.fromArgv(argv).toArgv();
+	}
+
+}
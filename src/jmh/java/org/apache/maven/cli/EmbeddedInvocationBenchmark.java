@@ -0,0 +1,177 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Embedded invocation latency against the bundled sample projects, all run
+ * offline:
+ * <ul>
+ * <li>{@code coldJvm}: the first invocation in a fresh JVM, one shot per
+ * fork</li>
+ * <li>{@code freshContainer}: a new container per invocation in a warmed-up
+ * JVM</li>
+ * <li>{@code warm}: invocations reusing one {@link EmbeddedMavenExecutor}</li>
+ * <li>{@code coldProcess}: a whole worker JVM running one invocation, started
+ * with and without an archive from {@link ClassDataSharing}</li>
+ * </ul>
+ * {@code coldJvm} and {@code freshContainer} boot the container both by
+ * scanning and from the {@link ComponentIndex} the build generates in the
+ * {@code prepare-package} phase.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EmbeddedInvocationBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Project {
+		@Param({ "simple", "multi-module" })
+		String project;
+
+		File dir;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			dir = SampleProjects.locate(project);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Warm {
+		EmbeddedMavenExecutor executor;
+
+		@Setup(Level.Trial)
+		public void setup(Project project) {
+			executor = new EmbeddedMavenExecutor();
+			run(executor, project);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			executor.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Boot {
+		@Param({ "scan", "index" })
+		String boot;
+
+		ComponentIndex index;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			if ("index".equals(boot)) {
+				index = ComponentIndex.load(EmbeddedInvocationBenchmark.class.getClassLoader());
+				if (index == null) {
+					throw new IllegalStateException("no up-to-date " + ComponentIndex.RESOURCE
+							+ " on the class path, it is generated in the prepare-package phase");
+				}
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Sharing {
+		@Param({ "off", "appcds" })
+		String sharing;
+
+		Path archive;
+
+		@Setup(Level.Trial)
+		public void setup(Project project) throws IOException {
+			if ("appcds".equals(sharing)) {
+				archive = ClassDataSharing.dump(Files.createTempDirectory("mbetter-cds").resolve("maven.jsa"),
+						project.dir, SampleProjects.validateOffline());
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			if (archive != null) {
+				Files.delete(archive);
+				Files.delete(archive.getParent());
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public BuildResult coldJvm(Boot boot, Project project) {
+		return runOnce(boot, project);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	@Fork(2)
+	public BuildResult freshContainer(Boot boot, Project project) {
+		return runOnce(boot, project);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(1)
+	public BuildResult warm(Warm warm, Project project) {
+		return run(warm.executor, project);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 10)
+	@Fork(1)
+	public int coldProcess(Sharing sharing, Project project) throws IOException, InterruptedException {
+		String[] args = SampleProjects.validateOffline().toArgv();
+		String[] command = new String[args.length + 2];
+		command[0] = "run";
+		command[1] = project.dir.getPath();
+		System.arraycopy(args, 0, command, 2, args.length);
+		int exitCode = ClassDataSharing.worker(sharing.archive, ClassDataSharing.class.getName(), command)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD).start()
+				.waitFor();
+		if (exitCode != 0) {
+			throw new IllegalStateException("sample build of " + project.project + " exited with " + exitCode);
+		}
+		return exitCode;
+	}
+
+	private static BuildResult runOnce(Boot boot, Project project) {
+		try (EmbeddedMavenExecutor executor = new EmbeddedMavenExecutor(
+				EmbeddedInvocationBenchmark.class.getClassLoader(), boot.index)) {
+			return run(executor, project);
+		}
+	}
+
+	private static BuildResult run(EmbeddedMavenExecutor executor, Project project) {
+		BuildResult result = executor.execute(SampleProjects.validateOffline(), project.dir, SampleProjects.DISCARD,
+				SampleProjects.DISCARD);
+		if (!result.isSuccess()) {
+			throw new IllegalStateException("sample build of " + project.project + " failed: " + result);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,40 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+/**
+ * Locates the offline sample projects bundled under
+ * {@code src/jmh/resources/sample-projects}.
+ */
+final class SampleProjects {
+
+	static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+	private SampleProjects() {
+	}
+
+	static File locate(String name) {
+		URL pom = SampleProjects.class.getResource("/sample-projects/" + name + "/pom.xml");
+		if (pom == null) {
+			throw new IllegalArgumentException("no sample project named " + name);
+		}
+		try {
+			return new File(pom.toURI()).getParentFile();
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Arguments that need nothing beyond the bundled POMs, so the benchmark never
+	 * touches the network or a plugin.
+	 */
+	static CliArgsBuilder validateOffline() {
+		return new CliArgsBuilder().offline().batchMode().quiet().goals("validate");
+	}
+
+}
@@ -0,0 +1,227 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Checks a {@link CliArgsBuilder} for option combinations and paths Maven would
+ * reject, before an executor pays for booting Maven and loading models. Every
+ * rule runs, so {@link #validate(CliArgsBuilder, File)} reports all violations
+ * at once. Validators are immutable and can be shared.
+ */
+public class ArgsValidator {
+
+	/**
+	 * One check of a {@link CliArgsBuilder}.
+	 */
+	@FunctionalInterface
+	public interface Rule {
+		/**
+		 * @param workingDirectory the absolute directory the build runs from, which
+		 *                         relative paths are resolved against
+		 * @param violations       receives every problem the rule finds
+		 */
+		void check(CliArgsBuilder args, File workingDirectory, List<Violation> violations);
+	}
+
+	public static final class Violation {
+		private final String option;
+		private final String message;
+
+		/**
+		 * @param option the offending command line option, such as {@code -T}
+		 */
+		public Violation(String option, String message) {
+			this.option = Objects.requireNonNull(option, "option");
+			this.message = Objects.requireNonNull(message, "message");
+		}
+
+		public String getOption() {
+			return this.option;
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		@Override
+		public String toString() {
+			return option + ": " + message;
+		}
+	}
+
+	/**
+	 * At most one of {@code -ff}, {@code -fae} and {@code -fn}; not both
+	 * {@code -q} and {@code -X}; not both {@code -C} and {@code -c}.
+	 */
+	public static final Rule EXCLUSIVE_OPTIONS = (args, workingDirectory, violations) -> {
+		int failurePolicies = (args.isFailFast() ? 1 : 0) + (args.isFailAtEnd() ? 1 : 0)
+				+ (args.isFailNever() ? 1 : 0);
+		if (failurePolicies > 1) {
+			violations.add(new Violation(
+					"-" + CLIManager.FAIL_FAST + "/-" + CLIManager.FAIL_AT_END + "/-" + CLIManager.FAIL_NEVER,
+					"only one reactor failure behaviour can be chosen"));
+		}
+		if (args.isQuiet() && args.isDebug()) {
+			violations.add(new Violation("-" + CLIManager.QUIET + "/-" + CLIManager.DEBUG,
+					"quiet and debug output exclude each other"));
+		}
+		if (args.isChecksumFailurePolicy() && args.isChecksumWarningPolicy()) {
+			violations.add(new Violation("-" + CLIManager.CHECKSUM_FAILURE_POLICY + "/-"
+					+ CLIManager.CHECKSUM_WARNING_POLICY, "only one checksum policy can be chosen"));
+		}
+	};
+
+	/**
+	 * The POM, settings and toolchains files exist and the directory of the log
+	 * file does.
+	 */
+	public static final Rule EXISTING_FILES = (args, workingDirectory, violations) -> {
+		String pom = args.getAlternatePomFile();
+		if (isSet(pom)) {
+			File file = resolve(workingDirectory, pom);
+			if (file.isDirectory()) {
+				file = new File(file, SourceFingerprint.POM);
+			}
+			if (!file.isFile()) {
+				violations.add(new Violation("-" + CLIManager.ALTERNATE_POM_FILE, "POM " + file + " does not exist"));
+			}
+		}
+		requireFile(violations, "-" + CLIManager.ALTERNATE_USER_SETTINGS, "user settings", workingDirectory,
+				args.getAlternateUserSettings());
+		requireFile(violations, "-" + CLIManager.ALTERNATE_GLOBAL_SETTINGS, "global settings", workingDirectory,
+				args.getAlternateGlobalSettings());
+		for (String toolchains : args.getAlternateUserToolchains()) {
+			requireFile(violations, "-" + CLIManager.ALTERNATE_USER_TOOLCHAINS, "user toolchains", workingDirectory,
+					toolchains);
+		}
+		for (String toolchains : args.getAlternateGlobalToolchains()) {
+			requireFile(violations, "-" + CLIManager.ALTERNATE_GLOBAL_TOOLCHAINS, "global toolchains",
+					workingDirectory, toolchains);
+		}
+		String logFile = args.getLogFile();
+		if (isSet(logFile)) {
+			File parent = resolve(workingDirectory, logFile).getParentFile();
+			if (parent != null && !parent.isDirectory()) {
+				violations.add(new Violation("-" + CLIManager.LOG_FILE, "directory " + parent + " does not exist"));
+			}
+		}
+	};
+
+	/**
+	 * {@code -T} is a thread count or a multiple of the cores followed by
+	 * {@code C}, as Maven parses it; values below one thread, such as {@code 0},
+	 * build single-threaded.
+	 */
+	public static final Rule THREADS = (args, workingDirectory, violations) -> {
+		String threads = args.getThreads();
+		if (isSet(threads)) {
+			try {
+				Threads.degreeOfConcurrency(threads, Runtime.getRuntime().availableProcessors());
+			} catch (IllegalArgumentException e) {
+				violations.add(new Violation("-" + CLIManager.THREADS,
+						"'" + threads + "' is neither a thread count nor a core multiple such as 1C"));
+			}
+		}
+	};
+
+	private static final ArgsValidator NONE = new ArgsValidator(Collections.<Rule>emptyList());
+	private static final ArgsValidator DEFAULTS = new ArgsValidator(
+			List.of(EXCLUSIVE_OPTIONS, EXISTING_FILES, THREADS));
+
+	private final List<Rule> rules;
+
+	private ArgsValidator(List<Rule> rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * @return a validator without rules
+	 */
+	public static ArgsValidator none() {
+		return NONE;
+	}
+
+	/**
+	 * @return a validator with {@link #EXCLUSIVE_OPTIONS}, {@link #EXISTING_FILES}
+	 *         and {@link #THREADS}
+	 */
+	public static ArgsValidator defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * @return a validator that also runs {@code rule}, after the rules of this one
+	 */
+	public ArgsValidator with(Rule rule) {
+		List<Rule> extended = new ArrayList<Rule>(rules.size() + 1);
+		extended.addAll(rules);
+		extended.add(Objects.requireNonNull(rule, "rule"));
+		return new ArgsValidator(Collections.unmodifiableList(extended));
+	}
+
+	public List<Rule> getRules() {
+		return this.rules;
+	}
+
+	/**
+	 * @param workingDirectory the directory the build runs from, or {@code null}
+	 *                         for {@code user.dir}
+	 * @return every violation of every rule, empty if {@code args} may be run
+	 */
+	public List<Violation> validate(CliArgsBuilder args, File workingDirectory) {
+		if (rules.isEmpty()) {
+			return Collections.emptyList();
+		}
+		File dir = (workingDirectory != null ? workingDirectory : new File(System.getProperty("user.dir")))
+				.getAbsoluteFile();
+		CliArgsBuilder snapshot = args.freeze();
+		List<Violation> violations = new ArrayList<Violation>(0);
+		for (Rule rule : rules) {
+			rule.check(snapshot, dir, violations);
+		}
+		return violations;
+	}
+
+	/**
+	 * @throws InvalidArgsException listing every violation, if there are any
+	 */
+	public void check(CliArgsBuilder args, File workingDirectory) {
+		List<Violation> violations = validate(args, workingDirectory);
+		if (!violations.isEmpty()) {
+			throw new InvalidArgsException(violations);
+		}
+	}
+
+	private static void requireFile(List<Violation> violations, String option, String description,
+			File workingDirectory, String path) {
+		if (isSet(path)) {
+			File file = resolve(workingDirectory, path);
+			if (!file.isFile()) {
+				violations.add(new Violation(option, description + " file " + file + " does not exist"));
+			}
+		}
+	}
+
+	private static boolean isSet(String value) {
+		return value != null && !value.isBlank();
+	}
+
+	/**
+	 * Resolves {@code path} the way {@code MavenCli} does: relative paths against
+	 * the working directory.
+	 */
+	private static File resolve(File workingDirectory, String path) {
+		File file = new File(path.trim());
+		return file.isAbsolute() ? file : new File(workingDirectory, path.trim());
+	}
+
+	@Override
+	public String toString() {
+		return "ArgsValidator [rules=" + rules.size() + "]";
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submits invocations to a {@link MavenExecutor} without blocking the caller.
+ * <p>
+ * Cancelling a returned future, or letting its timeout expire, is cooperative:
+ * a build that has not started is skipped, and a build that is running on an
+ * {@link EmbeddedMavenExecutor} fails the next project or mojo it would start.
+ * The mojo that is running when that happens is allowed to finish, and the
+ * build reports a failure even if it runs with {@code -fn}. Other executors
+ * only observe cancellation before they start.
+ * <p>
+ * Without an explicit executor, invocations run on a pool of as many daemon
+ * threads as there are processors. They are platform threads: a build blocks
+ * in monitors and I/O throughout, which would pin the carrier of a virtual
+ * thread.
+ */
+public class AsyncMavenExecutor implements AutoCloseable {
+
+	private final MavenExecutor delegate;
+	private final Executor executor;
+	private final ExecutorService owned;
+
+	/**
+	 * Uses the default executor, which is shut down by {@link #close()}.
+	 */
+	public AsyncMavenExecutor(MavenExecutor delegate) {
+		this(delegate, defaultExecutor());
+	}
+
+	/**
+	 * @param executor runs the invocations; it is not shut down by
+	 *                 {@link #close()}
+	 */
+	public AsyncMavenExecutor(MavenExecutor delegate, Executor executor) {
+		this(delegate, executor, null);
+	}
+
+	private AsyncMavenExecutor(MavenExecutor delegate, ExecutorService owned) {
+		this(delegate, owned, owned);
+	}
+
+	private AsyncMavenExecutor(MavenExecutor delegate, Executor executor, ExecutorService owned) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate");
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.owned = owned;
+	}
+
+	public CompletableFuture<BuildResult> submit(CliArgsBuilder args) {
+		return submit(args, null);
+	}
+
+	public CompletableFuture<BuildResult> submit(CliArgsBuilder args, File workingDirectory) {
+		return submit(args, workingDirectory, null, null);
+	}
+
+	public CompletableFuture<BuildResult> submit(CliArgsBuilder args, File workingDirectory, PrintStream out,
+			PrintStream err) {
+		Objects.requireNonNull(args, "args");
+		InvocationContext context = new InvocationContext();
+		CompletableFuture<BuildResult> future = new CompletableFuture<BuildResult>();
+		future.whenComplete((result, failure) -> {
+			if (failure != null) {
+				context.cancel();
+			}
+		});
+		executor.execute(() -> {
+			if (future.isDone()) {
+				return;
+			}
+			try {
+				future.complete(context.run(() -> delegate.execute(args, workingDirectory, out, err)));
+			} catch (RuntimeException | Error e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * The returned future completes with a
+	 * {@link java.util.concurrent.TimeoutException} and cancels the build if it
+	 * has not finished within {@code timeout}.
+	 */
+	public CompletableFuture<BuildResult> submit(CliArgsBuilder args, File workingDirectory, long timeout,
+			TimeUnit unit) {
+		return submit(args, workingDirectory).orTimeout(timeout, unit);
+	}
+
+	/**
+	 * Shuts the default executor down; builds that are running finish.
+	 */
+	@Override
+	public void close() {
+		if (owned != null) {
+			owned.shutdown();
+		}
+	}
+
+	static ExecutorService defaultExecutor() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), daemonThreads("maven-async-"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @return a factory of daemon threads named {@code prefix} and a sequence
+	 *         number
+	 */
+	static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return task -> {
+			Thread thread = new Thread(task, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
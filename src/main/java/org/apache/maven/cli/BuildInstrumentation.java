@@ -0,0 +1,308 @@
+package org.apache.maven.cli;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Wall and CPU time of embedded builds per module, per plugin goal and per
+ * lifecycle phase, aggregated across every invocation it is attached to with
+ * {@link CliArgsBuilder#instrumentation(BuildInstrumentation)}. CPU time is
+ * that of the thread building the module or running the mojo; work a mojo
+ * hands to other threads or processes is not included. Phase times are the
+ * sum of a module's mojos bound to that phase.
+ * <p>
+ * Snapshots can be exported with {@link #toJson()} or
+ * {@link #toPrometheus()}. Thread-safe.
+ */
+public class BuildInstrumentation {
+
+	private static final String NO_PHASE = "none";
+
+	public static class Timing {
+		private final TimingHistogram wall = new TimingHistogram();
+		private final TimingHistogram cpu = new TimingHistogram();
+
+		public TimingHistogram getWall() {
+			return this.wall;
+		}
+
+		/**
+		 * @return an empty histogram when the JVM cannot measure thread CPU time
+		 */
+		public TimingHistogram getCpu() {
+			return this.cpu;
+		}
+
+		private void record(long wallNanos, long cpuNanos) {
+			wall.record(wallNanos);
+			if (cpuNanos >= 0) {
+				cpu.record(cpuNanos);
+			}
+		}
+	}
+
+	private static class Started {
+		private final long wall = System.nanoTime();
+		private final long cpu = cpuTime();
+	}
+
+	/** Per invocation state; events of parallel builds arrive on several threads. */
+	private class Listener extends AbstractExecutionListener {
+		private final Map<MavenProject, Started> projects = new ConcurrentHashMap<MavenProject, Started>();
+		private final Map<MojoExecution, Started> mojos = new ConcurrentHashMap<MojoExecution, Started>();
+		private final Map<MavenProject, Map<String, long[]>> phases = new ConcurrentHashMap<>();
+
+		@Override
+		public void sessionStarted(ExecutionEvent event) {
+			invocations.increment();
+		}
+
+		@Override
+		public void projectStarted(ExecutionEvent event) {
+			projects.put(event.getProject(), new Started());
+			phases.put(event.getProject(), new ConcurrentHashMap<String, long[]>());
+		}
+
+		@Override
+		public void projectSucceeded(ExecutionEvent event) {
+			projectEnded(event);
+		}
+
+		@Override
+		public void projectFailed(ExecutionEvent event) {
+			projectEnded(event);
+		}
+
+		private void projectEnded(ExecutionEvent event) {
+			Started started = projects.remove(event.getProject());
+			if (started != null) {
+				record(modules, moduleKey(event.getProject()), started);
+			}
+			Map<String, long[]> projectPhases = phases.remove(event.getProject());
+			if (projectPhases != null) {
+				for (Map.Entry<String, long[]> phase : projectPhases.entrySet()) {
+					long[] total = phase.getValue();
+					timing(BuildInstrumentation.this.phases, phase.getKey()).record(total[0], total[1]);
+				}
+			}
+		}
+
+		@Override
+		public void mojoStarted(ExecutionEvent event) {
+			mojos.put(event.getMojoExecution(), new Started());
+		}
+
+		@Override
+		public void mojoSucceeded(ExecutionEvent event) {
+			mojoEnded(event);
+		}
+
+		@Override
+		public void mojoFailed(ExecutionEvent event) {
+			mojoEnded(event);
+		}
+
+		private void mojoEnded(ExecutionEvent event) {
+			MojoExecution execution = event.getMojoExecution();
+			Started started = mojos.remove(execution);
+			if (started == null) {
+				return;
+			}
+			long wall = System.nanoTime() - started.wall;
+			long cpu = started.cpu >= 0 ? cpuTime() - started.cpu : -1;
+			timing(goals, execution.getArtifactId() + ":" + execution.getGoal()).record(wall, cpu);
+			Map<String, long[]> projectPhases = phases.get(event.getProject());
+			if (projectPhases != null) {
+				String phase = execution.getLifecyclePhase() != null ? execution.getLifecyclePhase() : NO_PHASE;
+				long[] total = projectPhases.computeIfAbsent(phase, p -> new long[2]);
+				synchronized (total) {
+					total[0] += wall;
+					total[1] = cpu >= 0 && total[1] >= 0 ? total[1] + cpu : -1;
+				}
+			}
+		}
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final Map<String, Timing> modules = new ConcurrentHashMap<String, Timing>();
+	private final Map<String, Timing> goals = new ConcurrentHashMap<String, Timing>();
+	private final Map<String, Timing> phases = new ConcurrentHashMap<String, Timing>();
+	private final LongAdder invocations = new LongAdder();
+
+	/**
+	 * @return a listener collecting the events of a single invocation into this
+	 *         instrumentation
+	 */
+	ExecutionListener newListener() {
+		return new Listener();
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static String moduleKey(MavenProject project) {
+		return project.getGroupId() + ":" + project.getArtifactId();
+	}
+
+	private static Timing timing(Map<String, Timing> timings, String key) {
+		return timings.computeIfAbsent(key, k -> new Timing());
+	}
+
+	private static void record(Map<String, Timing> timings, String key, Started started) {
+		long cpu = started.cpu >= 0 ? cpuTime() - started.cpu : -1;
+		timing(timings, key).record(System.nanoTime() - started.wall, cpu);
+	}
+
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	/**
+	 * @return timings keyed by {@code groupId:artifactId}
+	 */
+	public Map<String, Timing> getModuleTimings() {
+		return Collections.unmodifiableMap(new TreeMap<String, Timing>(modules));
+	}
+
+	/**
+	 * @return timings keyed by {@code pluginArtifactId:goal}
+	 */
+	public Map<String, Timing> getGoalTimings() {
+		return Collections.unmodifiableMap(new TreeMap<String, Timing>(goals));
+	}
+
+	/**
+	 * @return timings keyed by lifecycle phase, {@value #NO_PHASE} for goals
+	 *         invoked directly
+	 */
+	public Map<String, Timing> getPhaseTimings() {
+		return Collections.unmodifiableMap(new TreeMap<String, Timing>(phases));
+	}
+
+	public void reset() {
+		modules.clear();
+		goals.clear();
+		phases.clear();
+		invocations.reset();
+	}
+
+	/**
+	 * @return count, sum, max and p50/p90/p99 in milliseconds of every timing
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"invocations\":").append(getInvocations());
+		appendJson(sb, "modules", getModuleTimings());
+		appendJson(sb, "goals", getGoalTimings());
+		appendJson(sb, "phases", getPhaseTimings());
+		return sb.append('}').toString();
+	}
+
+	private static void appendJson(StringBuilder sb, String name, Map<String, Timing> timings) {
+		sb.append(",\"").append(name).append("\":{");
+		boolean first = true;
+		for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			appendJsonString(sb, entry.getKey());
+			sb.append(":{\"wall\":");
+			appendJson(sb, entry.getValue().getWall());
+			sb.append(",\"cpu\":");
+			appendJson(sb, entry.getValue().getCpu());
+			sb.append('}');
+		}
+		sb.append('}');
+	}
+
+	private static void appendJson(StringBuilder sb, TimingHistogram histogram) {
+		sb.append("{\"count\":").append(histogram.getCount());
+		sb.append(",\"sumMillis\":").append(millis(histogram.getSumNanos()));
+		sb.append(",\"maxMillis\":").append(millis(histogram.getMaxNanos()));
+		sb.append(",\"p50Millis\":").append(millis(histogram.getPercentileNanos(0.5)));
+		sb.append(",\"p90Millis\":").append(millis(histogram.getPercentileNanos(0.9)));
+		sb.append(",\"p99Millis\":").append(millis(histogram.getPercentileNanos(0.99)));
+		sb.append('}');
+	}
+
+	private static void appendJsonString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000d;
+	}
+
+	/**
+	 * @return the timings as Prometheus histograms in the text exposition format,
+	 *         in seconds
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("# HELP maven_invocations_total Instrumented embedded invocations.\n");
+		sb.append("# TYPE maven_invocations_total counter\n");
+		sb.append("maven_invocations_total ").append(getInvocations()).append('\n');
+		Map<String, Timing> modules = getModuleTimings();
+		Map<String, Timing> goals = getGoalTimings();
+		Map<String, Timing> phases = getPhaseTimings();
+		appendPrometheus(sb, "maven_module_wall_seconds", "Wall time per module.", "module", modules, false);
+		appendPrometheus(sb, "maven_module_cpu_seconds", "CPU time per module.", "module", modules, true);
+		appendPrometheus(sb, "maven_goal_wall_seconds", "Wall time per plugin goal.", "goal", goals, false);
+		appendPrometheus(sb, "maven_goal_cpu_seconds", "CPU time per plugin goal.", "goal", goals, true);
+		appendPrometheus(sb, "maven_phase_wall_seconds", "Wall time per lifecycle phase.", "phase", phases, false);
+		appendPrometheus(sb, "maven_phase_cpu_seconds", "CPU time per lifecycle phase.", "phase", phases, true);
+		return sb.toString();
+	}
+
+	private static void appendPrometheus(StringBuilder sb, String metric, String help, String label,
+			Map<String, Timing> timings, boolean cpu) {
+		sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(metric).append(" histogram\n");
+		for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+			TimingHistogram histogram = cpu ? entry.getValue().getCpu() : entry.getValue().getWall();
+			String value = escapeLabel(entry.getKey());
+			long cumulative = 0;
+			for (int i = 0; i <= TimingHistogram.BUCKETS; i++) {
+				cumulative += histogram.bucketCount(i);
+				String le = i < TimingHistogram.BUCKETS ? Double.toString(TimingHistogram.upperBoundNanos(i) / 1e9)
+						: "+Inf";
+				sb.append(metric).append("_bucket{").append(label).append("=\"").append(value).append("\",le=\"")
+						.append(le).append("\"} ").append(cumulative).append('\n');
+			}
+			sb.append(metric).append("_sum{").append(label).append("=\"").append(value).append("\"} ")
+					.append(histogram.getSumNanos() / 1e9).append('\n');
+			sb.append(metric).append("_count{").append(label).append("=\"").append(value).append("\"} ")
+					.append(histogram.getCount()).append('\n');
+		}
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.apache.maven.cli;
+
+import java.util.concurrent.TimeUnit;
+
+public class BuildResult {
+
+	private final int exitCode;
+	private final long durationNanos;
+	private final boolean coldStart;
+	private final boolean cacheHit;
+
+	public BuildResult(int exitCode, long durationNanos, boolean coldStart) {
+		this(exitCode, durationNanos, coldStart, false);
+	}
+
+	public BuildResult(int exitCode, long durationNanos, boolean coldStart, boolean cacheHit) {
+		this.exitCode = exitCode;
+		this.durationNanos = durationNanos;
+		this.coldStart = coldStart;
+		this.cacheHit = cacheHit;
+	}
+
+	public int getExitCode() {
+		return this.exitCode;
+	}
+
+	public boolean isSuccess() {
+		return this.exitCode == 0;
+	}
+
+	public long getDurationNanos() {
+		return this.durationNanos;
+	}
+
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(this.durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return {@code true} if this invocation had to boot the embedded container
+	 */
+	public boolean isColdStart() {
+		return this.coldStart;
+	}
+
+	/**
+	 * @return {@code true} if the outcome was replayed from a
+	 *         {@link BuildResultCache} instead of running Maven
+	 */
+	public boolean isCacheHit() {
+		return this.cacheHit;
+	}
+
+	@Override
+	public String toString() {
+		return "BuildResult [exitCode=" + exitCode + ", durationMillis=" + getDuration(TimeUnit.MILLISECONDS)
+				+ ", coldStart=" + coldStart + ", cacheHit=" + cacheHit + "]";
+	}
+
+}
@@ -0,0 +1,599 @@
+package org.apache.maven.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link MavenExecutor} that answers repeated invocations from a bounded
+ * on-disk store instead of running Maven. Entries are keyed by the normalized
+ * arguments, the working directory, a {@link SourceFingerprint} of the
+ * project's POMs and sources, the content of the settings and toolchains files
+ * the build reads, the JDK and {@code MAVEN_OPTS}. They hold the exit code and
+ * the output, which is streamed to a file as it is printed rather than kept in
+ * memory, and no longer captured once it outgrows the store. Identical
+ * invocations that arrive while one is running wait for it and replay what it
+ * recorded, or run on their own if it recorded nothing.
+ * <p>
+ * A hit only replays output; it does not touch {@code target} or any
+ * repository. Invocations that exist for their side effects outside the
+ * output are therefore passed through without being cached: those that write
+ * a log file with {@code -l}, and those that run {@code install},
+ * {@code deploy} or {@code site-deploy}, as a phase or as a goal of the install
+ * or deploy plugin.
+ */
+public class BuildResultCache implements MavenExecutor {
+
+	private static final String ENTRY_SUFFIX = ".build";
+	private static final int MAGIC = 0x4d425243;
+	private static final int VERSION = 1;
+
+	/** Magic, version, exit code, duration and the two lengths. */
+	private static final int ENTRY_HEADER = 28;
+	private static final String MAVEN_OPTS = "MAVEN_OPTS";
+	private static final Set<String> SIDE_EFFECT_PHASES = Set.of("install", "deploy", "site-deploy");
+	private static final Set<String> SIDE_EFFECT_PLUGINS = Set.of("install", "deploy", "maven-install-plugin",
+			"maven-deploy-plugin");
+
+	/**
+	 * Copies one output stream of a build to a temporary file until the output
+	 * of both streams, shared through {@code captured}, outgrows the budget.
+	 */
+	private class Capture extends OutputStream {
+		private final Path file;
+		private final long[] captured;
+		private OutputStream out;
+		private long length;
+		private boolean complete = true;
+
+		private Capture(Path file, long[] captured) throws IOException {
+			this.file = file;
+			this.captured = captured;
+			this.out = new BufferedOutputStream(Files.newOutputStream(file));
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (out == null) {
+				return;
+			}
+			synchronized (captured) {
+				captured[0] += len;
+				if (captured[0] > maxBytes - ENTRY_HEADER) {
+					abandon();
+					return;
+				}
+			}
+			try {
+				out.write(b, off, len);
+				length += len;
+			} catch (IOException e) {
+				abandon();
+			}
+		}
+
+		private void abandon() {
+			complete = false;
+			close();
+		}
+
+		@Override
+		public void close() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					complete = false;
+				}
+				out = null;
+			}
+		}
+	}
+
+	private static class TeeOutputStream extends OutputStream {
+		private final OutputStream first;
+		private final OutputStream second;
+
+		private TeeOutputStream(OutputStream first, OutputStream second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			first.write(b);
+			second.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			first.write(b, off, len);
+			second.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			first.flush();
+			second.flush();
+		}
+	}
+
+	private final MavenExecutor delegate;
+	private final Path directory;
+	private final long maxBytes;
+	private final boolean cacheFailures;
+	private final SourceFingerprint fingerprints = new SourceFingerprint();
+	private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong storedBytes = new AtomicLong();
+	private final Object evictionLock = new Object();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder collapsed = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder bypassed = new LongAdder();
+
+	/**
+	 * Caches only successful builds.
+	 */
+	public BuildResultCache(MavenExecutor delegate, File directory, long maxBytes) {
+		this(delegate, directory, maxBytes, false);
+	}
+
+	/**
+	 * @param maxBytes      least recently used entries are removed once the store
+	 *                      grows past this size
+	 * @param cacheFailures whether failed outcomes are recorded as well
+	 */
+	public BuildResultCache(MavenExecutor delegate, File directory, long maxBytes, boolean cacheFailures) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate");
+		this.directory = directory.toPath();
+		this.maxBytes = maxBytes;
+		this.cacheFailures = cacheFailures;
+		try {
+			Files.createDirectories(this.directory);
+			long size = 0;
+			for (Path entry : entries()) {
+				size += Files.size(entry);
+			}
+			this.storedBytes.set(size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out, PrintStream err) {
+		if (!isCacheable(args.freeze())) {
+			bypassed.increment();
+			return delegate.execute(args, workingDirectory, out, err);
+		}
+		long start = System.nanoTime();
+		File dir = (workingDirectory != null ? workingDirectory : new File(System.getProperty("user.dir")))
+				.getAbsoluteFile();
+		String key = key(args, dir);
+		boolean waited = false;
+		while (true) {
+			BuildResult replayed = replay(key, out, err, start);
+			if (replayed != null) {
+				(waited ? collapsed : hits).increment();
+				return replayed;
+			}
+			CompletableFuture<Void> mine = new CompletableFuture<Void>();
+			CompletableFuture<Void> running = inFlight.putIfAbsent(key, mine);
+			if (running == null) {
+				misses.increment();
+				return run(key, args, dir, out, err, mine);
+			}
+			await(running);
+			waited = true;
+		}
+	}
+
+	/**
+	 * @param args a frozen snapshot, so that reading the goals does not
+	 *             initialize them on the caller's builder
+	 * @return {@code false} for invocations whose effects a hit would not
+	 *         reproduce, see the class comment
+	 */
+	private static boolean isCacheable(CliArgsBuilder args) {
+		String logFile = args.getLogFile();
+		if (logFile != null && !logFile.isBlank()) {
+			return false;
+		}
+		for (String goal : args.getGoals()) {
+			if (SIDE_EFFECT_PHASES.contains(goal)) {
+				return false;
+			}
+			// prefix:goal, groupId:artifactId:goal or groupId:artifactId:version:goal
+			String[] parts = goal.split(":");
+			if (parts.length > 1 && SIDE_EFFECT_PLUGINS.contains(parts[parts.length == 2 ? 0 : 1])) {
+				return false;
+			}
+		}
+		for (String phase : args.getPhases()) {
+			if (SIDE_EFFECT_PHASES.contains(phase)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private BuildResult run(String key, CliArgsBuilder args, File dir, PrintStream out, PrintStream err,
+			CompletableFuture<Void> mine) {
+		Path capturedOut = null;
+		Path capturedErr = null;
+		try {
+			long[] captured = new long[1];
+			capturedOut = Files.createTempFile(directory, key, ".out.tmp");
+			capturedErr = Files.createTempFile(directory, key, ".err.tmp");
+			BuildResult result;
+			try (Capture outCapture = new Capture(capturedOut, captured);
+					Capture errCapture = new Capture(capturedErr, captured)) {
+				try (PrintStream teeOut = new PrintStream(
+						new TeeOutputStream(out != null ? out : System.out, outCapture), true);
+						PrintStream teeErr = new PrintStream(
+								new TeeOutputStream(err != null ? err : System.err, errCapture), true)) {
+					result = delegate.execute(args, dir, teeOut, teeErr);
+				}
+				outCapture.close();
+				errCapture.close();
+				if ((result.isSuccess() || cacheFailures) && outCapture.complete && errCapture.complete) {
+					write(key, result, outCapture, errCapture);
+				}
+			}
+			mine.complete(null);
+			return result;
+		} catch (IOException e) {
+			mine.completeExceptionally(e);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, mine);
+			deleteQuietly(capturedOut);
+			deleteQuietly(capturedErr);
+		}
+	}
+
+	/**
+	 * Waits for an identical build to finish.
+	 */
+	private static void await(CompletableFuture<Void> running) {
+		try {
+			running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for an identical build", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private static void deleteQuietly(Path file) {
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// left for the next start to overwrite
+			}
+		}
+	}
+
+	/**
+	 * System properties are sorted so that insertion order does not split
+	 * otherwise identical invocations. Settings and toolchains files count with
+	 * their content, since the arguments only name them; without {@code -s},
+	 * {@code -gs} and {@code -t} those in {@code ~/.m2} and
+	 * {@code ${maven.home}/conf} are read.
+	 */
+	String key(CliArgsBuilder args, File workingDirectory) {
+		CliArgsBuilder normalized = args.derive();
+		normalized.setSystemProperties(new TreeMap<String, String>(normalized.getSystemProperties()));
+		MessageDigest digest = SourceFingerprint.sha256();
+		for (String arg : normalized.toArgv()) {
+			update(digest, arg);
+		}
+		update(digest, workingDirectory.getPath());
+		File m2 = new File(System.getProperty("user.home"), ".m2");
+		String mavenHome = System.getProperty("maven.home");
+		update(digest, workingDirectory, normalized.getAlternateUserSettings(), new File(m2, "settings.xml"));
+		update(digest, workingDirectory, normalized.getAlternateGlobalSettings(),
+				mavenHome != null ? new File(mavenHome, "conf/settings.xml") : null);
+		update(digest, workingDirectory, normalized.getAlternateUserToolchains(), new File(m2, "toolchains.xml"));
+		update(digest, workingDirectory, normalized.getAlternateGlobalToolchains(), null);
+		update(digest, System.getProperty("java.home"));
+		update(digest, System.getProperty("java.version"));
+		update(digest, System.getenv(MAVEN_OPTS));
+		File root = EmbeddedMavenExecutor.findMultiModuleProjectDirectory(workingDirectory,
+				args.getAlternatePomFile());
+		digest.update(fingerprints.fingerprint(root.toPath()));
+		return SourceFingerprint.hex(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		if (value != null) {
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+	}
+
+	private void update(MessageDigest digest, File workingDirectory, Collection<String> files, File fallback) {
+		if (files == null || files.isEmpty()) {
+			update(digest, workingDirectory, (String) null, fallback);
+		} else {
+			for (String file : files) {
+				update(digest, workingDirectory, file, fallback);
+			}
+		}
+	}
+
+	/**
+	 * Adds the content of {@code file}, resolved against the working directory,
+	 * or of {@code fallback} if it is {@code null}; a missing file counts as
+	 * empty.
+	 */
+	private void update(MessageDigest digest, File workingDirectory, String file, File fallback) {
+		File resolved = file == null ? fallback : new File(file).isAbsolute() ? new File(file)
+				: new File(workingDirectory, file);
+		if (resolved != null && resolved.isFile()) {
+			digest.update(fingerprints.digest(resolved.toPath()));
+		}
+		digest.update((byte) 0);
+	}
+
+	private Path entry(String key) {
+		return directory.resolve(key + ENTRY_SUFFIX);
+	}
+
+	private List<Path> entries() throws IOException {
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Streams the output recorded for {@code key} to {@code out} and
+	 * {@code err}. The lengths in the entry are checked against its size before
+	 * anything is written, so that a damaged entry is removed instead of being
+	 * replayed in part and then built again.
+	 *
+	 * @return {@code null} if nothing valid is recorded
+	 * @throws UncheckedIOException if the entry cannot be read once its output
+	 *                              has started
+	 */
+	private BuildResult replay(String key, PrintStream out, PrintStream err, long start) {
+		Path entry = entry(key);
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			int[] layout = layout(channel);
+			if (layout != null) {
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+				channel.position(ENTRY_HEADER - Integer.BYTES);
+				DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+				try {
+					copy(data, layout[1], out != null ? out : System.out);
+					data.readInt();
+					copy(data, layout[2], err != null ? err : System.err);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return new BuildResult(layout[0], System.nanoTime() - start, false, true);
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return discard(entry);
+	}
+
+	/**
+	 * @return the exit code and the lengths of the two outputs, or {@code null}
+	 *         if they do not add up to the size of the entry
+	 */
+	private static int[] layout(FileChannel channel) throws IOException {
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER - Integer.BYTES);
+		if (size < ENTRY_HEADER || !readFully(channel, header, 0)) {
+			return null;
+		}
+		header.flip();
+		if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+			return null;
+		}
+		int exitCode = header.getInt();
+		header.getLong();
+		int outLength = header.getInt();
+		long errAt = ENTRY_HEADER - Integer.BYTES + (long) outLength;
+		ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+		if (outLength < 0 || errAt + Integer.BYTES > size || !readFully(channel, length, errAt)) {
+			return null;
+		}
+		int errLength = length.getInt(0);
+		if (errLength < 0 || size != ENTRY_HEADER + (long) outLength + errLength) {
+			return null;
+		}
+		return new int[] { exitCode, outLength, errLength };
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a damaged entry.
+	 *
+	 * @return {@code null}
+	 */
+	private BuildResult discard(Path entry) {
+		try {
+			long size = Files.size(entry);
+			if (Files.deleteIfExists(entry)) {
+				storedBytes.addAndGet(-size);
+			}
+		} catch (IOException e) {
+			// overwritten by the next build that records it
+		}
+		return null;
+	}
+
+	private static void copy(DataInputStream in, int length, PrintStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (length > 0) {
+			int n = in.read(buffer, 0, Math.min(buffer.length, length));
+			if (n < 0) {
+				throw new IOException("Truncated entry");
+			}
+			out.write(buffer, 0, n);
+			length -= n;
+		}
+		out.flush();
+	}
+
+	private void write(String key, BuildResult result, Capture out, Capture err) {
+		if (ENTRY_HEADER + out.length + err.length > maxBytes || out.length > Integer.MAX_VALUE
+				|| err.length > Integer.MAX_VALUE) {
+			return;
+		}
+		Path entry = entry(key);
+		try {
+			Path tmp = Files.createTempFile(directory, key, ".tmp");
+			try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				data.writeInt(MAGIC);
+				data.writeInt(VERSION);
+				data.writeInt(result.getExitCode());
+				data.writeLong(result.getDurationNanos());
+				data.writeInt((int) out.length);
+				Files.copy(out.file, data);
+				data.writeInt((int) err.length);
+				Files.copy(err.file, data);
+			} catch (IOException e) {
+				Files.deleteIfExists(tmp);
+				throw e;
+			}
+			long size = Files.size(tmp);
+			long replaced = Files.exists(entry) ? Files.size(entry) : 0;
+			Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (storedBytes.addAndGet(size - replaced) > maxBytes) {
+				evict();
+			}
+		} catch (IOException e) {
+			// a build that cannot be recorded is still a valid build
+		}
+	}
+
+	/**
+	 * Removes least recently used entries until the store fits its budget again.
+	 */
+	private void evict() throws IOException {
+		synchronized (evictionLock) {
+			if (storedBytes.get() <= maxBytes) {
+				return;
+			}
+			List<Path> entries = entries();
+			entries.sort(Comparator.comparingLong(BuildResultCache::lastModified));
+			for (Path entry : entries) {
+				if (storedBytes.get() <= maxBytes) {
+					break;
+				}
+				long size;
+				try {
+					size = Files.size(entry);
+					Files.delete(entry);
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+				storedBytes.addAndGet(-size);
+				evictions.increment();
+			}
+		}
+	}
+
+	private static long lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return invocations that waited for an identical in-flight build
+	 */
+	public long getCollapsed() {
+		return collapsed.sum();
+	}
+
+	/**
+	 * @return invocations passed to the delegate without looking at the cache,
+	 *         because they cannot be replayed
+	 */
+	public long getBypassed() {
+		return bypassed.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getStoredBytes() {
+		return storedBytes.get();
+	}
+
+}
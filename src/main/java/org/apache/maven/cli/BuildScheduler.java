@@ -0,0 +1,510 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans batches of {@link CliArgsBuilder} jobs out over a fixed set of workers
+ * while keeping the sum of all builds' {@code -T} values within a global core
+ * budget. Each worker owns a priority queue; a worker whose queue is empty
+ * steals from the most loaded one, so short jobs do not wait behind a long
+ * build that happens to occupy their worker.
+ * <p>
+ * When a job starts it is granted its requested thread count, capped at an
+ * equal share of the budget among the jobs that are running or waiting to run,
+ * as far as there are workers for them, and at the cores still free, and never
+ * less than one. The grant replaces the job's {@code threads} on a
+ * {@link CliArgsBuilder#derive() derived} copy; the submitted builder is left
+ * untouched. A job without {@code threads} requests the recommendation of its
+ * {@link ThreadTuner}, if it has one.
+ */
+public class BuildScheduler implements AutoCloseable {
+
+	public static class Job {
+		private final CliArgsBuilder args;
+		private final File workingDirectory;
+		private final int priority;
+		private PrintStream out;
+		private PrintStream err;
+
+		public Job(CliArgsBuilder args, File workingDirectory) {
+			this(args, workingDirectory, 0);
+		}
+
+		/**
+		 * @param priority jobs with a higher priority start first
+		 */
+		public Job(CliArgsBuilder args, File workingDirectory, int priority) {
+			this.args = Objects.requireNonNull(args, "args");
+			this.workingDirectory = workingDirectory;
+			this.priority = priority;
+		}
+
+		public CliArgsBuilder getArgs() {
+			return this.args;
+		}
+
+		public File getWorkingDirectory() {
+			return this.workingDirectory;
+		}
+
+		public int getPriority() {
+			return this.priority;
+		}
+
+		public Job out(PrintStream out) {
+			this.out = out;
+			return this;
+		}
+
+		public Job err(PrintStream err) {
+			this.err = err;
+			return this;
+		}
+	}
+
+	public static class Metrics {
+		private final int queueDepth;
+		private final int running;
+		private final int coresInUse;
+		private final int coreBudget;
+		private final long submitted;
+		private final long completed;
+		private final long stolen;
+		private final long totalWaitNanos;
+		private final long maxWaitNanos;
+		private final double coreUtilization;
+
+		Metrics(int queueDepth, int running, int coresInUse, int coreBudget, long submitted, long completed,
+				long stolen, long totalWaitNanos, long maxWaitNanos, double coreUtilization) {
+			this.queueDepth = queueDepth;
+			this.running = running;
+			this.coresInUse = coresInUse;
+			this.coreBudget = coreBudget;
+			this.submitted = submitted;
+			this.completed = completed;
+			this.stolen = stolen;
+			this.totalWaitNanos = totalWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+			this.coreUtilization = coreUtilization;
+		}
+
+		public int getQueueDepth() {
+			return this.queueDepth;
+		}
+
+		public int getRunning() {
+			return this.running;
+		}
+
+		public int getCoresInUse() {
+			return this.coresInUse;
+		}
+
+		public int getCoreBudget() {
+			return this.coreBudget;
+		}
+
+		public long getSubmitted() {
+			return this.submitted;
+		}
+
+		public long getCompleted() {
+			return this.completed;
+		}
+
+		/**
+		 * @return jobs that ran on a different worker than they were queued on
+		 */
+		public long getStolen() {
+			return this.stolen;
+		}
+
+		/**
+		 * @return the time started jobs spent queued
+		 */
+		public long getTotalWaitNanos() {
+			return this.totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos() {
+			return this.maxWaitNanos;
+		}
+
+		public long getAverageWaitNanos() {
+			long started = completed + running;
+			return started == 0 ? 0 : totalWaitNanos / started;
+		}
+
+		/**
+		 * @return granted core time over available core time since the scheduler
+		 *         started, between 0 and 1
+		 */
+		public double getCoreUtilization() {
+			return this.coreUtilization;
+		}
+
+		@Override
+		public String toString() {
+			return "Metrics [queueDepth=" + queueDepth + ", running=" + running + ", coresInUse=" + coresInUse + "/"
+					+ coreBudget + ", submitted=" + submitted + ", completed=" + completed + ", stolen=" + stolen
+					+ ", averageWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(getAverageWaitNanos())
+					+ ", coreUtilization=" + String.format("%.2f", coreUtilization) + "]";
+		}
+	}
+
+	private static class Task {
+		private final Job job;
+		private final long sequence;
+		private final long queuedAt = System.nanoTime();
+		private final CompletableFuture<BuildResult> result = new CompletableFuture<BuildResult>();
+
+		private Task(Job job, long sequence) {
+			this.job = job;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final Comparator<Task> ORDER = Comparator.<Task>comparingInt(t -> -t.job.priority)
+			.thenComparingLong(t -> t.sequence);
+
+	private class Worker extends Thread {
+		private final PriorityQueue<Task> queue = new PriorityQueue<Task>(ORDER);
+
+		/** Whether a build is running on this worker; guarded by the worker. */
+		private boolean building;
+
+		private Worker(int id) {
+			super("build-scheduler-" + id);
+			setDaemon(true);
+		}
+
+		/**
+		 * @return {@code false} if the scheduler has been closed, in which case the
+		 *         build must not start
+		 */
+		private synchronized boolean startBuilding() {
+			if (closed) {
+				return false;
+			}
+			building = true;
+			return true;
+		}
+
+		private synchronized void stopBuilding() {
+			building = false;
+		}
+
+		/**
+		 * Interrupts the worker unless it runs a build, which would abort it.
+		 */
+		private synchronized void interruptIfIdle() {
+			if (!building) {
+				interrupt();
+			}
+		}
+
+		private synchronized void push(Task task) {
+			queue.add(task);
+		}
+
+		private synchronized Task poll() {
+			return queue.poll();
+		}
+
+		private synchronized int size() {
+			return queue.size();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					queued.acquire();
+					Task task = poll();
+					if (task == null) {
+						task = steal(this);
+					}
+					if (task != null) {
+						run(task);
+					}
+				}
+			} catch (InterruptedException e) {
+				// closed
+			}
+		}
+
+		private void run(Task task) throws InterruptedException {
+			if (task.result.isDone()) {
+				dequeued();
+				return;
+			}
+			long waited = System.nanoTime() - task.queuedAt;
+			totalWaitNanos.add(waited);
+			maxWaitNanos.accumulateAndGet(waited, Math::max);
+			int granted = 0;
+			long start = 0;
+			try {
+				granted = acquireCores(requestedThreads(task.job.args));
+				start = System.nanoTime();
+				if (!startBuilding()) {
+					task.result.cancel(false);
+					return;
+				}
+				try {
+					CliArgsBuilder args = task.job.args.derive().threads(Integer.toString(granted));
+					task.result.complete(executor.execute(args, task.job.workingDirectory, task.job.out, task.job.err));
+				} finally {
+					stopBuilding();
+					completed.increment();
+				}
+			} catch (InterruptedException e) {
+				// closed while waiting for cores
+				task.result.cancel(false);
+				throw e;
+			} catch (RuntimeException | Error e) {
+				task.result.completeExceptionally(e);
+			} finally {
+				if (granted > 0) {
+					releaseCores(granted, System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	private final MavenExecutor executor;
+	private final int coreBudget;
+	private final int cores = Runtime.getRuntime().availableProcessors();
+	private final Worker[] workers;
+	private final Semaphore queued = new Semaphore(0);
+	/** Notified whenever jobs are queued or the scheduler is closed. */
+	private final Object arrivals = new Object();
+	/** Batches of jobs queued so far; guarded by {@link #arrivals}. */
+	private long batches;
+	private final AtomicLong sequence = new AtomicLong();
+	private final long startedAt = System.nanoTime();
+	private volatile boolean closed;
+
+	private int coresInUse;
+	private int running;
+	/** Jobs submitted that have neither started nor been dropped. */
+	private int pending;
+	private long grantedCoreNanos;
+
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder stolen = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * Uses every available processor as the budget and one worker per core.
+	 */
+	public BuildScheduler(MavenExecutor executor) {
+		this(executor, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param coreBudget the total of {@code -T} values granted to concurrently
+	 *                   running builds
+	 * @param workers    the maximum number of concurrently running builds
+	 */
+	public BuildScheduler(MavenExecutor executor, int coreBudget, int workers) {
+		if (coreBudget < 1 || workers < 1) {
+			throw new IllegalArgumentException("coreBudget and workers must be positive");
+		}
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.coreBudget = coreBudget;
+		this.workers = new Worker[workers];
+		for (int i = 0; i < workers; i++) {
+			this.workers[i] = new Worker(i);
+		}
+		for (Worker worker : this.workers) {
+			worker.start();
+		}
+	}
+
+	public CompletableFuture<BuildResult> submit(CliArgsBuilder args, File workingDirectory, int priority) {
+		return submit(new Job(args, workingDirectory, priority));
+	}
+
+	public CompletableFuture<BuildResult> submit(Job job) {
+		return submitAll(List.of(job)).get(0);
+	}
+
+	/**
+	 * Queues a batch of jobs, each on the worker with the shortest queue at the
+	 * time.
+	 */
+	public List<CompletableFuture<BuildResult>> submitAll(List<Job> jobs) {
+		if (closed) {
+			throw new IllegalStateException("scheduler has been closed");
+		}
+		List<CompletableFuture<BuildResult>> results = new ArrayList<CompletableFuture<BuildResult>>(jobs.size());
+		synchronized (this) {
+			pending += jobs.size();
+		}
+		for (Job job : jobs) {
+			Task task = new Task(job, sequence.getAndIncrement());
+			shortestQueue().push(task);
+			results.add(task.result);
+		}
+		submitted.add(jobs.size());
+		synchronized (arrivals) {
+			batches++;
+			arrivals.notifyAll();
+		}
+		queued.release(jobs.size());
+		return results;
+	}
+
+	private Worker shortestQueue() {
+		Worker shortest = workers[0];
+		int size = shortest.size();
+		for (int i = 1; i < workers.length && size > 0; i++) {
+			int candidate = workers[i].size();
+			if (candidate < size) {
+				shortest = workers[i];
+				size = candidate;
+			}
+		}
+		return shortest;
+	}
+
+	/**
+	 * Takes a task from the worker with the longest queue on behalf of a worker
+	 * that holds a permit but found its own queue empty.
+	 *
+	 * @return {@code null} only if the scheduler has been closed
+	 */
+	private Task steal(Worker thief) throws InterruptedException {
+		while (true) {
+			long seen;
+			synchronized (arrivals) {
+				seen = batches;
+			}
+			Worker victim = null;
+			int size = 0;
+			for (Worker worker : workers) {
+				int candidate = worker == thief ? 0 : worker.size();
+				if (candidate > size) {
+					victim = worker;
+					size = candidate;
+				}
+			}
+			if (victim == null) {
+				// a permit always matches a queued task, so the scan above missed one
+				// queued since it started; wait for that batch instead of rescanning
+				synchronized (arrivals) {
+					Task own = thief.poll();
+					if (own != null || closed) {
+						return own;
+					}
+					while (batches == seen && !closed) {
+						arrivals.wait();
+					}
+				}
+				continue;
+			}
+			Task task = victim.poll();
+			if (task != null) {
+				stolen.increment();
+				return task;
+			}
+		}
+	}
+
+	private int requestedThreads(CliArgsBuilder args) {
+		ThreadTuner tuner = args.getThreadTuner();
+		if (tuner != null && (args.getThreads() == null || args.getThreads().isBlank())) {
+			return Math.max(1, tuner.recommend());
+		}
+		try {
+			return Threads.degreeOfConcurrency(args.getThreads(), cores);
+		} catch (IllegalArgumentException e) {
+			return 1;
+		}
+	}
+
+	private synchronized int acquireCores(int requested) throws InterruptedException {
+		try {
+			while (coresInUse >= coreBudget) {
+				wait();
+			}
+		} finally {
+			pending--;
+		}
+		running++;
+		int contenders = Math.min(workers.length, running + pending);
+		int fairShare = Math.max(1, coreBudget / contenders);
+		int granted = Math.max(1, Math.min(requested, Math.min(fairShare, coreBudget - coresInUse)));
+		coresInUse += granted;
+		return granted;
+	}
+
+	private synchronized void dequeued() {
+		pending--;
+	}
+
+	private synchronized void releaseCores(int granted, long elapsedNanos) {
+		coresInUse -= granted;
+		running--;
+		grantedCoreNanos += granted * elapsedNanos;
+		notifyAll();
+	}
+
+	public int getCoreBudget() {
+		return this.coreBudget;
+	}
+
+	public Metrics getMetrics() {
+		int depth = 0;
+		for (Worker worker : workers) {
+			depth += worker.size();
+		}
+		int inUse;
+		int active;
+		long coreNanos;
+		synchronized (this) {
+			inUse = coresInUse;
+			active = running;
+			coreNanos = grantedCoreNanos;
+		}
+		long elapsed = Math.max(1, System.nanoTime() - startedAt);
+		double utilization = Math.min(1d, (double) coreNanos / ((double) elapsed * coreBudget));
+		return new Metrics(depth, active, inUse, coreBudget, submitted.sum(), completed.sum(), stolen.sum(),
+				totalWaitNanos.sum(), maxWaitNanos.get(), utilization);
+	}
+
+	/**
+	 * Stops the workers; builds that are running finish, queued jobs are
+	 * cancelled.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (arrivals) {
+			arrivals.notifyAll();
+		}
+		for (Worker worker : workers) {
+			worker.interruptIfIdle();
+		}
+		for (Worker worker : workers) {
+			Task task;
+			while ((task = worker.poll()) != null) {
+				task.result.cancel(false);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates an AppCDS archive of the classes an embedded build loads and starts
+ * worker JVMs that map it, so they skip loading and verifying those classes
+ * again. {@link #dump(Path, File, CliArgsBuilder)} runs a representative build
+ * in a training JVM that records the classes it loads and then has the JVM dump
+ * them; {@link #worker(Path, String, String...)} builds the command of a JVM
+ * using the archive. Both are also available from the command line:
+ *
+ * <pre>
+ * ClassDataSharing dump archive projectDirectory [mvn arguments]
+ * ClassDataSharing run projectDirectory [mvn arguments]
+ * </pre>
+ *
+ * The JVM only archives classes from JAR files and only uses an archive when
+ * the class path starts with the one it was dumped with. The archive is
+ * therefore made of the JARs of the class path of this JVM, and workers get
+ * those JARs first and its directories after them. Classes of plugin realms
+ * are never archived; they are loaded by Plexus class loaders. The archive has
+ * to be recreated whenever the JDK or a JAR changes.
+ */
+public final class ClassDataSharing {
+
+	/** Used when no arguments are given: needs neither network nor plugins. */
+	private static final String[] DEFAULT_ARGS = { "-o", "-B", "-q", "validate" };
+
+	private ClassDataSharing() {
+	}
+
+	/**
+	 * Runs {@code args} from {@code projectDirectory} twice in a training JVM,
+	 * once cold and once warm, and dumps the classes it loaded into
+	 * {@code archive}.
+	 *
+	 * @return the archive
+	 * @throws IOException if the training build or the dump fails
+	 */
+	public static Path dump(Path archive, File projectDirectory, CliArgsBuilder args) throws IOException {
+		Path target = archive.toAbsolutePath();
+		if (target.getParent() != null) {
+			Files.createDirectories(target.getParent());
+		}
+		Path classList = target.resolveSibling(target.getFileName() + ".classlist");
+		List<String> training = new ArrayList<String>();
+		training.add(java());
+		training.add("-XX:DumpLoadedClassList=" + classList);
+		training.add("-cp");
+		training.add(workerClasspath());
+		training.add(ClassDataSharing.class.getName());
+		training.add("train");
+		training.add(projectDirectory.getAbsolutePath());
+		training.addAll(Arrays.asList(args.toArgv()));
+		run(training, "training build");
+		try {
+			run(List.of(java(), "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+					"-XX:SharedArchiveFile=" + target, "-cp", sharedClasspath()), "class data dump");
+		} finally {
+			Files.deleteIfExists(classList);
+		}
+		return target;
+	}
+
+	/**
+	 * @param archive   an archive created by {@link #dump(Path, File, CliArgsBuilder)},
+	 *                  or {@code null} for a worker without one
+	 * @param mainClass the class to run, which has to be on the class path of this
+	 *                  JVM
+	 * @return a process builder for a JVM running {@code mainClass} with the class
+	 *         path of this JVM, its standard streams inherited
+	 */
+	public static ProcessBuilder worker(Path archive, String mainClass, String... args) {
+		List<String> command = new ArrayList<String>();
+		command.add(java());
+		if (archive != null) {
+			command.addAll(jvmArgs(archive));
+		}
+		command.add("-cp");
+		command.add(workerClasspath());
+		command.add(mainClass);
+		command.addAll(Arrays.asList(args));
+		return new ProcessBuilder(command).inheritIO();
+	}
+
+	/**
+	 * @return the options that make a JVM use {@code archive} if it matches, and
+	 *         start without it otherwise
+	 */
+	public static List<String> jvmArgs(Path archive) {
+		return List.of("-XX:SharedArchiveFile=" + archive.toAbsolutePath(), "-Xshare:auto");
+	}
+
+	/**
+	 * @return the JAR entries of the class path of this JVM, in their order
+	 */
+	static String sharedClasspath() {
+		return String.join(File.pathSeparator, classpath(true));
+	}
+
+	/**
+	 * @return the class path of this JVM with its JARs first
+	 */
+	static String workerClasspath() {
+		List<String> entries = classpath(true);
+		entries.addAll(classpath(false));
+		return String.join(File.pathSeparator, entries);
+	}
+
+	private static List<String> classpath(boolean jars) {
+		List<String> entries = new ArrayList<String>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (!entry.isEmpty() && new File(entry).isFile() == jars) {
+				entries.add(new File(entry).getAbsolutePath());
+			}
+		}
+		return entries;
+	}
+
+	private static String java() {
+		return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+	}
+
+	private static void run(List<String> command, String description) throws IOException {
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		int exitCode;
+		try {
+			exitCode = process.waitFor();
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new IOException(description + " interrupted", e);
+		}
+		if (exitCode != 0) {
+			throw new IOException(description + " failed with exit code " + exitCode);
+		}
+	}
+
+	/**
+	 * @return the exit code of the last invocation
+	 */
+	private static int build(File projectDirectory, CliArgsBuilder args, int invocations) {
+		int exitCode = 0;
+		try (EmbeddedMavenExecutor executor = new EmbeddedMavenExecutor()) {
+			for (int i = 0; i < invocations; i++) {
+				exitCode = executor.execute(args, projectDirectory).getExitCode();
+			}
+		}
+		return exitCode;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String command = args.length > 0 ? args[0] : null;
+		int projectArg = "dump".equals(command) ? 2 : 1;
+		if (!("dump".equals(command) || "run".equals(command) || "train".equals(command))
+				|| args.length <= projectArg) {
+			System.err.println("usage: ClassDataSharing dump archive projectDirectory [mvn arguments]");
+			System.err.println("       ClassDataSharing run projectDirectory [mvn arguments]");
+			System.exit(2);
+		}
+		File project = new File(args[projectArg]);
+		String[] argv = Arrays.copyOfRange(args, projectArg + 1, args.length);
+		CliArgsBuilder builder = CliArgsBuilder.fromArgv(argv.length > 0 ? argv : DEFAULT_ARGS);
+		if ("dump".equals(command)) {
+			long start = System.nanoTime();
+			Path archive = dump(Paths.get(args[1]), project, builder);
+			System.out.println("Dumped " + archive + " (" + Files.size(archive) / 1024 + " KiB) in "
+					+ (System.nanoTime() - start) / 1_000_000 + " ms");
+		} else {
+			System.exit(build(project, builder, "train".equals(command) ? 2 : 1));
+		}
+	}
+
+}
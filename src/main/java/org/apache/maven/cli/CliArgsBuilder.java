@@ -1,66 +1,140 @@
 package org.apache.maven.cli;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.commons.cli.Options;
+
 public class CliArgsBuilder {
 	private static enum ArgType {
 		BOOLEAN, STRING, COLL, MAP
 	}
 
 	private static enum ArgBuilder implements Predicate<CliArgsBuilder>, Function<CliArgsBuilder, String> {
-		ALTERNATE_POM_FILE(CLIManager.ALTERNATE_POM_FILE, CliArgsBuilder::getAlternatePomFile),
-		SET_SYSTEM_PROPERTY(CLIManager.SET_SYSTEM_PROPERTY, CliArgsBuilder::getSystemProperties),
-		OFFLINE(CLIManager.OFFLINE, CliArgsBuilder::isOffline), QUIET(CLIManager.QUIET, CliArgsBuilder::isQuiet),
-		DEBUG(CLIManager.DEBUG, CliArgsBuilder::isDebug), ERRORS(CLIManager.ERRORS, CliArgsBuilder::isErrors),
-		NON_RECURSIVE(CLIManager.NON_RECURSIVE, CliArgsBuilder::isNonRecursive),
-		UPDATE_SNAPSHOTS(CLIManager.UPDATE_SNAPSHOTS, CliArgsBuilder::isUpdateSnapshots),
-		ACTIVATE_PROFILES(CLIManager.ACTIVATE_PROFILES, CliArgsBuilder::getActivateProfiles),
-		BATCH_MODE(CLIManager.BATCH_MODE, CliArgsBuilder::isBatchMode),
-		SUPRESS_SNAPSHOT_UPDATES(CLIManager.SUPRESS_SNAPSHOT_UPDATES, CliArgsBuilder::isSupressSnapshotUpdates),
-		CHECKSUM_FAILURE_POLICY(CLIManager.CHECKSUM_FAILURE_POLICY, CliArgsBuilder::isChecksumFailurePolicy),
-		CHECKSUM_WARNING_POLICY(CLIManager.CHECKSUM_WARNING_POLICY, CliArgsBuilder::isChecksumWarningPolicy),
-		ALTERNATE_USER_SETTINGS(CLIManager.ALTERNATE_USER_SETTINGS, CliArgsBuilder::getAlternateUserSettings),
-		ALTERNATE_GLOBAL_SETTINGS(CLIManager.ALTERNATE_GLOBAL_SETTINGS, CliArgsBuilder::getAlternateGlobalSettings),
-		ALTERNATE_USER_TOOLCHAINS(CLIManager.ALTERNATE_USER_TOOLCHAINS, CliArgsBuilder::getAlternateUserToolchains),
-		ALTERNATE_GLOBAL_TOOLCHAINS(CLIManager.ALTERNATE_GLOBAL_TOOLCHAINS,
-				CliArgsBuilder::getAlternateGlobalToolchains),
-		FAIL_FAST(CLIManager.FAIL_FAST, CliArgsBuilder::isFailFast),
-		FAIL_AT_END(CLIManager.FAIL_AT_END, CliArgsBuilder::isFailAtEnd),
-		FAIL_NEVER(CLIManager.FAIL_NEVER, CliArgsBuilder::isFailNever),
-		RESUME_FROM(CLIManager.RESUME_FROM, CliArgsBuilder::getResumeFrom),
-		PROJECT_LIST(CLIManager.PROJECT_LIST, CliArgsBuilder::getProjectList),
-		ALSO_MAKE(CLIManager.ALSO_MAKE, CliArgsBuilder::isAlsoMake),
-		ALSO_MAKE_DEPENDENTS(CLIManager.ALSO_MAKE_DEPENDENTS, CliArgsBuilder::isAlsoMakeDependents),
-		LOG_FILE(CLIManager.LOG_FILE, CliArgsBuilder::getLogFile),
-		SHOW_VERSION(CLIManager.SHOW_VERSION, CliArgsBuilder::isShowVersion),
-		ENCRYPT_MASTER_PASSWORD(CLIManager.ENCRYPT_MASTER_PASSWORD, CliArgsBuilder::getEncryptMasterPassword),
-		ENCRYPT_PASSWORD(CLIManager.ENCRYPT_PASSWORD, CliArgsBuilder::getEncryptPassword),
-		THREADS(CLIManager.THREADS, CliArgsBuilder::getThreads),
-		LEGACY_LOCAL_REPOSITORY(CLIManager.LEGACY_LOCAL_REPOSITORY, CliArgsBuilder::isLegacyLocalRepository),
-		BUILDER(CLIManager.BUILDER, CliArgsBuilder::getBuilder),
-		NO_TRANSFER_PROGRESS(CLIManager.NO_TRANSFER_PROGRESS, CliArgsBuilder::isNoTransferProgress);
+		ALTERNATE_POM_FILE(0, CLIManager.ALTERNATE_POM_FILE, ArgType.STRING, t -> t.alternatePomFile,
+				CliArgsBuilder::setAlternatePomFile),
+		SET_SYSTEM_PROPERTY(1, CLIManager.SET_SYSTEM_PROPERTY, ArgType.MAP, t -> t.systemProperties,
+				(t, v) -> put(t.getSystemProperties(), v)),
+		OFFLINE(2, CLIManager.OFFLINE, ArgType.BOOLEAN, t -> t.offline, (t, v) -> t.setOffline(true)),
+		QUIET(3, CLIManager.QUIET, ArgType.BOOLEAN, t -> t.quiet, (t, v) -> t.setQuiet(true)),
+		DEBUG(4, CLIManager.DEBUG, ArgType.BOOLEAN, t -> t.debug, (t, v) -> t.setDebug(true)),
+		ERRORS(5, CLIManager.ERRORS, ArgType.BOOLEAN, t -> t.errors, (t, v) -> t.setErrors(true)),
+		NON_RECURSIVE(6, CLIManager.NON_RECURSIVE, ArgType.BOOLEAN, t -> t.nonRecursive,
+				(t, v) -> t.setNonRecursive(true)),
+		UPDATE_SNAPSHOTS(7, CLIManager.UPDATE_SNAPSHOTS, ArgType.BOOLEAN, t -> t.updateSnapshots,
+				(t, v) -> t.setUpdateSnapshots(true)),
+		ACTIVATE_PROFILES(8, CLIManager.ACTIVATE_PROFILES, ArgType.COLL, t -> t.activateProfiles,
+				(t, v) -> addAll(t.getActivateProfiles(), v)),
+		BATCH_MODE(9, CLIManager.BATCH_MODE, ArgType.BOOLEAN, t -> t.batchMode, (t, v) -> t.setBatchMode(true)),
+		SUPRESS_SNAPSHOT_UPDATES(10, CLIManager.SUPRESS_SNAPSHOT_UPDATES, ArgType.BOOLEAN,
+				t -> t.supressSnapshotUpdates, (t, v) -> t.setSupressSnapshotUpdates(true)),
+		CHECKSUM_FAILURE_POLICY(11, CLIManager.CHECKSUM_FAILURE_POLICY, ArgType.BOOLEAN, t -> t.checksumFailurePolicy,
+				(t, v) -> t.setChecksumFailurePolicy(true)),
+		CHECKSUM_WARNING_POLICY(12, CLIManager.CHECKSUM_WARNING_POLICY, ArgType.BOOLEAN, t -> t.checksumWarningPolicy,
+				(t, v) -> t.setChecksumWarningPolicy(true)),
+		ALTERNATE_USER_SETTINGS(13, CLIManager.ALTERNATE_USER_SETTINGS, ArgType.STRING, t -> t.alternateUserSettings,
+				CliArgsBuilder::setAlternateUserSettings),
+		ALTERNATE_GLOBAL_SETTINGS(14, CLIManager.ALTERNATE_GLOBAL_SETTINGS, ArgType.STRING,
+				t -> t.alternateGlobalSettings, CliArgsBuilder::setAlternateGlobalSettings),
+		ALTERNATE_USER_TOOLCHAINS(15, CLIManager.ALTERNATE_USER_TOOLCHAINS, ArgType.COLL,
+				t -> t.alternateUserToolchains, (t, v) -> addAll(t.getAlternateUserToolchains(), v)),
+		ALTERNATE_GLOBAL_TOOLCHAINS(16, CLIManager.ALTERNATE_GLOBAL_TOOLCHAINS, ArgType.COLL,
+				t -> t.alternateGlobalToolchains, (t, v) -> addAll(t.getAlternateGlobalToolchains(), v)),
+		FAIL_FAST(17, CLIManager.FAIL_FAST, ArgType.BOOLEAN, t -> t.failFast, (t, v) -> t.setFailFast(true)),
+		FAIL_AT_END(18, CLIManager.FAIL_AT_END, ArgType.BOOLEAN, t -> t.failAtEnd, (t, v) -> t.setFailAtEnd(true)),
+		FAIL_NEVER(19, CLIManager.FAIL_NEVER, ArgType.BOOLEAN, t -> t.failNever, (t, v) -> t.setFailNever(true)),
+		RESUME_FROM(20, CLIManager.RESUME_FROM, ArgType.STRING, t -> t.resumeFrom, CliArgsBuilder::setResumeFrom),
+		PROJECT_LIST(21, CLIManager.PROJECT_LIST, ArgType.COLL, t -> t.projectList,
+				(t, v) -> addAll(t.getProjectList(), v)),
+		ALSO_MAKE(22, CLIManager.ALSO_MAKE, ArgType.BOOLEAN, t -> t.alsoMake, (t, v) -> t.setAlsoMake(true)),
+		ALSO_MAKE_DEPENDENTS(23, CLIManager.ALSO_MAKE_DEPENDENTS, ArgType.BOOLEAN, t -> t.alsoMakeDependents,
+				(t, v) -> t.setAlsoMakeDependents(true)),
+		LOG_FILE(24, CLIManager.LOG_FILE, ArgType.STRING, t -> t.logFile, CliArgsBuilder::setLogFile),
+		SHOW_VERSION(25, CLIManager.SHOW_VERSION, ArgType.BOOLEAN, t -> t.showVersion,
+				(t, v) -> t.setShowVersion(true)),
+		ENCRYPT_MASTER_PASSWORD(26, CLIManager.ENCRYPT_MASTER_PASSWORD, ArgType.STRING, t -> t.encryptMasterPassword,
+				CliArgsBuilder::setEncryptMasterPassword),
+		ENCRYPT_PASSWORD(27, CLIManager.ENCRYPT_PASSWORD, ArgType.STRING, t -> t.encryptPassword,
+				CliArgsBuilder::setEncryptPassword),
+		THREADS(28, CLIManager.THREADS, ArgType.STRING, t -> t.threads, CliArgsBuilder::setThreads),
+		LEGACY_LOCAL_REPOSITORY(29, CLIManager.LEGACY_LOCAL_REPOSITORY, ArgType.BOOLEAN, t -> t.legacyLocalRepository,
+				(t, v) -> t.setLegacyLocalRepository(true)),
+		BUILDER(30, CLIManager.BUILDER, ArgType.STRING, t -> t.builder, CliArgsBuilder::setBuilder),
+		NO_TRANSFER_PROGRESS(31, CLIManager.NO_TRANSFER_PROGRESS, ArgType.BOOLEAN, t -> t.noTransferProgress,
+				(t, v) -> t.setNoTransferProgress(true));
+
+		private static final ArgBuilder[] TABLE = values();
+		/** Options by the id that identifies them in the binary form. */
+		private static final ArgBuilder[] BY_ID = new ArgBuilder[Long.SIZE];
+		private static final Map<String, ArgBuilder> BY_SHORT_NAME = new HashMap<String, ArgBuilder>();
+		private static final Map<String, ArgBuilder> BY_LONG_NAME = new HashMap<String, ArgBuilder>();
+		private static final int MAX_SHORT_NAME;
+
+		static {
+			Options options = new CLIManager().options;
+			int max = 0;
+			for (ArgBuilder option : TABLE) {
+				if (option.id < 0 || option.id >= BY_ID.length || BY_ID[option.id] != null) {
+					throw new IllegalStateException(
+							"Option id " + option.id + " of " + option + " is taken or out of range");
+				}
+				BY_ID[option.id] = option;
+				BY_SHORT_NAME.put(option.shortOpt, option);
+				String longName = options.getOption(option.shortOpt).getLongOpt();
+				if (longName != null) {
+					BY_LONG_NAME.put(longName, option);
+				}
+				max = Math.max(max, option.shortOpt.length());
+			}
+			MAX_SHORT_NAME = max;
+		}
 
+		/**
+		 * Identifies the option in the binary form, independently of its position;
+		 * never reuse the id of a removed option.
+		 */
+		private final int id;
 		private final String shortOpt;
+		private final String flag;
+		private final ArgType type;
 		private final Function<CliArgsBuilder, ?> getter;
+		/** Applies one occurrence of the option; the value is {@code null} for flags. */
+		private final BiConsumer<CliArgsBuilder, String> setter;
 
-		private ArgBuilder(char shortName, Function<CliArgsBuilder, ?> getter) {
-			this(Character.toString(shortName), getter);
+		private ArgBuilder(int id, char shortName, ArgType type, Function<CliArgsBuilder, ?> getter,
+				BiConsumer<CliArgsBuilder, String> setter) {
+			this(id, Character.toString(shortName), type, getter, setter);
 		}
 
-		private ArgBuilder(String shortName, Function<CliArgsBuilder, ?> getter) {
+		private ArgBuilder(int id, String shortName, ArgType type, Function<CliArgsBuilder, ?> getter,
+				BiConsumer<CliArgsBuilder, String> setter) {
+			this.id = id;
 			this.shortOpt = shortName;
+			this.flag = "-" + shortName;
+			this.type = type;
 			this.getter = getter;
+			this.setter = setter;
+		}
+
+		private long bit() {
+			return 1L << ordinal();
 		}
 
 		private static final Pattern WhiteSpacePattern = Pattern.compile("[\\s]+");
@@ -78,11 +152,11 @@ public class CliArgsBuilder {
 				if (val instanceof Map) {
 					Map<?, ?> asMap = (Map<?, ?>) val;
 					val = asMap.entrySet().stream()
-							.map(entry -> Map.entry(entry.getKey(),
-									whiteSpacePredicate.test(String.valueOf(entry.getValue()))
+							.map(entry -> entry.getValue() == null ? String.valueOf(entry.getKey())
+									: entry.getKey() + "=" + (whiteSpacePredicate.test(String.valueOf(entry.getValue()))
 											? '"' + String.valueOf(entry.getValue()) + '"'
 											: String.valueOf(entry.getValue())))
-							.collect(Collectors.toSet());
+							.collect(Collectors.toCollection(LinkedHashSet::new));
 
 				}
 				if (val instanceof Collection) {
@@ -117,6 +191,287 @@ public class CliArgsBuilder {
 			return result;
 		}
 
+		/**
+		 * Writes this option's tokens into {@code argv} starting at {@code n} and
+		 * returns the next free index. {@code argv} must have room for two tokens per
+		 * option plus two per system property.
+		 */
+		private int encode(CliArgsBuilder t, String[] argv, int n) {
+			switch (type) {
+			case BOOLEAN:
+				if (Boolean.TRUE.equals(getter.apply(t))) {
+					argv[n++] = flag;
+				}
+				break;
+			case STRING:
+				String str = (String) getter.apply(t);
+				if (str != null && !str.isBlank()) {
+					argv[n++] = flag;
+					argv[n++] = str;
+				}
+				break;
+			case COLL:
+				String joined = join((Collection<?>) getter.apply(t));
+				if (joined != null) {
+					argv[n++] = flag;
+					argv[n++] = joined;
+				}
+				break;
+			case MAP:
+				Map<?, ?> map = (Map<?, ?>) getter.apply(t);
+				if (map != null) {
+					for (Map.Entry<?, ?> entry : map.entrySet()) {
+						argv[n++] = flag;
+						argv[n++] = entry.getValue() != null ? entry.getKey() + "=" + entry.getValue()
+								: String.valueOf(entry.getKey());
+					}
+				}
+				break;
+			}
+			return n;
+		}
+
+		private static String join(Collection<?> values) {
+			if (values == null || values.isEmpty()) {
+				return null;
+			}
+			StringBuilder sb = null;
+			String first = null;
+			for (Object value : values) {
+				if (value == null) {
+					continue;
+				}
+				if (first == null && sb == null) {
+					first = String.valueOf(value);
+				} else {
+					if (sb == null) {
+						sb = new StringBuilder(first);
+					}
+					sb.append(',').append(value);
+				}
+			}
+			return sb != null ? sb.toString() : first;
+		}
+
+		static String[] toArgv(CliArgsBuilder t) {
+			long set = t.setOptions;
+			int capacity = 2 * Long.bitCount(set) + size(t.goals) + size(t.phases);
+			if ((set & SET_SYSTEM_PROPERTY.bit()) != 0) {
+				capacity += 2 * size(t.systemProperties);
+			}
+			String[] argv = new String[capacity];
+			int n = 0;
+			for (long bits = set; bits != 0; bits &= bits - 1) {
+				n = TABLE[Long.numberOfTrailingZeros(bits)].encode(t, argv, n);
+			}
+			if (t.goals != null) {
+				for (String goal : t.goals) {
+					argv[n++] = goal;
+				}
+			}
+			if (t.phases != null) {
+				for (String phase : t.phases) {
+					argv[n++] = phase;
+				}
+			}
+			return n == argv.length ? argv : Arrays.copyOf(argv, n);
+		}
+
+		/**
+		 * The inverse of {@link #toArgv(CliArgsBuilder)}. Options are accepted by
+		 * short or long name, with the value as the next token, attached to a short
+		 * name ({@code -T4}, {@code -Dkey=value}) or after {@code =} following a
+		 * long name. Leading {@code plugin:goal} tasks become goals and every task
+		 * from the first other one on becomes a phase, which keeps their order on
+		 * the way back to argv.
+		 */
+		static CliArgsBuilder fromArgv(List<String> argv) {
+			CliArgsBuilder t = new CliArgsBuilder();
+			boolean inPhases = false;
+			int count = argv.size();
+			for (int i = 0; i < count; i++) {
+				String token = argv.get(i);
+				if (token.length() < 2 || token.charAt(0) != '-') {
+					if (!inPhases && token.indexOf(':') >= 0) {
+						t.getGoals().add(token);
+					} else {
+						inPhases = true;
+						t.getPhases().add(token);
+					}
+					continue;
+				}
+				ArgBuilder option = null;
+				String value = null;
+				if (token.charAt(1) == '-') {
+					int eq = token.indexOf('=');
+					option = BY_LONG_NAME.get(eq < 0 ? token.substring(2) : token.substring(2, eq));
+					if (eq >= 0) {
+						value = token.substring(eq + 1);
+					}
+				} else {
+					option = BY_SHORT_NAME.get(token.substring(1));
+					for (int end = Math.min(MAX_SHORT_NAME + 1, token.length()); option == null && end > 1; end--) {
+						ArgBuilder candidate = BY_SHORT_NAME.get(token.substring(1, end));
+						if (candidate != null && candidate.type != ArgType.BOOLEAN) {
+							option = candidate;
+							value = token.substring(end);
+						}
+					}
+				}
+				if (option == null) {
+					throw new IllegalArgumentException("Unsupported option: " + token);
+				}
+				if (option.type == ArgType.BOOLEAN) {
+					if (value != null) {
+						throw new IllegalArgumentException("Option takes no value: " + token);
+					}
+				} else if (value == null) {
+					if (++i == count) {
+						throw new IllegalArgumentException("Missing value for option: " + token);
+					}
+					value = argv.get(i);
+				}
+				option.setter.accept(t, value);
+			}
+			return t;
+		}
+
+		/**
+		 * Writes the form described by {@link CliArgsBuilder#writeTo(DataOutput)}.
+		 */
+		static void write(CliArgsBuilder t, DataOutput out) throws IOException {
+			long set = 0;
+			for (long bits = t.setOptions; bits != 0; bits &= bits - 1) {
+				set |= 1L << TABLE[Long.numberOfTrailingZeros(bits)].id;
+			}
+			WireFormat.writeVarLong(out, set);
+			for (long bits = set; bits != 0; bits &= bits - 1) {
+				ArgBuilder option = BY_ID[Long.numberOfTrailingZeros(bits)];
+				switch (option.type) {
+				case BOOLEAN:
+					break;
+				case STRING:
+					WireFormat.writeString(out, (String) option.getter.apply(t));
+					break;
+				case COLL:
+					writeCollection(out, (Collection<?>) option.getter.apply(t));
+					break;
+				case MAP:
+					writeMap(out, (Map<?, ?>) option.getter.apply(t));
+					break;
+				}
+			}
+			writeCollection(out, t.goals);
+			writeCollection(out, t.phases);
+			writeMap(out, t.properties);
+		}
+
+		/**
+		 * The inverse of {@link #write(CliArgsBuilder, DataOutput)}.
+		 */
+		static CliArgsBuilder read(DataInput in) throws IOException {
+			CliArgsBuilder t = new CliArgsBuilder();
+			long set = WireFormat.readVarLong(in);
+			for (long bits = set; bits != 0; bits &= bits - 1) {
+				int id = Long.numberOfTrailingZeros(bits);
+				ArgBuilder option = BY_ID[id];
+				if (option == null) {
+					throw new IOException("Unknown option #" + id);
+				}
+				switch (option.type) {
+				case BOOLEAN:
+					option.setter.accept(t, null);
+					break;
+				case STRING:
+					option.setter.accept(t, WireFormat.readString(in));
+					break;
+				case COLL:
+					for (int n = WireFormat.readCount(in); n > 0; n--) {
+						option.setter.accept(t, WireFormat.readString(in));
+					}
+					break;
+				case MAP:
+					// system properties are the only map option; a key may contain '=', so
+					// entries are put as they were written rather than parsed like -D values
+					Map<String, String> map = t.getSystemProperties();
+					for (int n = WireFormat.readCount(in); n > 0; n--) {
+						map.put(WireFormat.readString(in), WireFormat.readString(in));
+					}
+					break;
+				}
+			}
+			for (int n = WireFormat.readCount(in); n > 0; n--) {
+				t.getGoals().add(WireFormat.readString(in));
+			}
+			for (int n = WireFormat.readCount(in); n > 0; n--) {
+				t.getPhases().add(WireFormat.readString(in));
+			}
+			for (int n = WireFormat.readCount(in); n > 0; n--) {
+				t.getProperties().put(WireFormat.readString(in), WireFormat.readString(in));
+			}
+			return t;
+		}
+
+		private static void writeCollection(DataOutput out, Collection<?> values) throws IOException {
+			int count = 0;
+			if (values != null) {
+				for (Object value : values) {
+					if (value != null) {
+						count++;
+					}
+				}
+			}
+			WireFormat.writeVarInt(out, count);
+			if (count > 0) {
+				for (Object value : values) {
+					if (value != null) {
+						WireFormat.writeString(out, String.valueOf(value));
+					}
+				}
+			}
+		}
+
+		private static void writeMap(DataOutput out, Map<?, ?> map) throws IOException {
+			WireFormat.writeVarInt(out, size(map));
+			if (map != null) {
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					WireFormat.writeString(out, String.valueOf(entry.getKey()));
+					WireFormat.writeString(out, entry.getValue() != null ? String.valueOf(entry.getValue()) : null);
+				}
+			}
+		}
+
+		private static void addAll(List<String> target, String joined) {
+			int start = 0;
+			for (int comma = joined.indexOf(','); start <= joined.length(); comma = joined.indexOf(',', start)) {
+				int end = comma < 0 ? joined.length() : comma;
+				if (end > start) {
+					target.add(joined.substring(start, end));
+				}
+				start = end + 1;
+			}
+		}
+
+		/**
+		 * A property without a value is {@code true}, as on the Maven command line.
+		 */
+		private static void put(Map<String, String> target, String property) {
+			int eq = property.indexOf('=');
+			if (eq < 0) {
+				target.put(property, "true");
+			} else {
+				target.put(property.substring(0, eq), property.substring(eq + 1));
+			}
+		}
+
+		private static int size(Collection<?> c) {
+			return c == null ? 0 : c.size();
+		}
+
+		private static int size(Map<?, ?> m) {
+			return m == null ? 0 : m.size();
+		}
+
 		@SuppressWarnings("rawtypes")
 		@Override
 		public boolean test(CliArgsBuilder t) {
@@ -140,11 +495,169 @@ public class CliArgsBuilder {
 
 	}
 
+	private static final int SHARED_PROPERTIES = 1;
+	private static final int SHARED_GOALS = 1 << 1;
+	private static final int SHARED_PHASES = 1 << 2;
+	private static final int SHARED_SYSTEM_PROPERTIES = 1 << 3;
+	private static final int SHARED_ACTIVATE_PROFILES = 1 << 4;
+	private static final int SHARED_ALTERNATE_USER_TOOLCHAINS = 1 << 5;
+	private static final int SHARED_ALTERNATE_GLOBAL_TOOLCHAINS = 1 << 6;
+	private static final int SHARED_PROJECT_LIST = 1 << 7;
+
 	private Map<String, String> properties;
+	private long setOptions;
+	private boolean frozen;
+	private int hash;
+	/**
+	 * Collections still referenced from the snapshot this builder was derived
+	 * from; they are copied on first access through their getter.
+	 */
+	private int shared;
+
+	public CliArgsBuilder() {
+	}
+
+	private CliArgsBuilder(CliArgsBuilder source, boolean freeze) {
+		this.goals = source.goals;
+		this.phases = source.phases;
+		this.properties = source.properties;
+		this.alternatePomFile = source.alternatePomFile;
+		this.systemProperties = source.systemProperties;
+		this.offline = source.offline;
+		this.quiet = source.quiet;
+		this.debug = source.debug;
+		this.errors = source.errors;
+		this.nonRecursive = source.nonRecursive;
+		this.updateSnapshots = source.updateSnapshots;
+		this.activateProfiles = source.activateProfiles;
+		this.batchMode = source.batchMode;
+		this.supressSnapshotUpdates = source.supressSnapshotUpdates;
+		this.checksumFailurePolicy = source.checksumFailurePolicy;
+		this.checksumWarningPolicy = source.checksumWarningPolicy;
+		this.alternateUserSettings = source.alternateUserSettings;
+		this.alternateGlobalSettings = source.alternateGlobalSettings;
+		this.alternateUserToolchains = source.alternateUserToolchains;
+		this.alternateGlobalToolchains = source.alternateGlobalToolchains;
+		this.failFast = source.failFast;
+		this.failAtEnd = source.failAtEnd;
+		this.failNever = source.failNever;
+		this.resumeFrom = source.resumeFrom;
+		this.projectList = source.projectList;
+		this.alsoMake = source.alsoMake;
+		this.alsoMakeDependents = source.alsoMakeDependents;
+		this.logFile = source.logFile;
+		this.showVersion = source.showVersion;
+		this.encryptMasterPassword = source.encryptMasterPassword;
+		this.encryptPassword = source.encryptPassword;
+		this.threads = source.threads;
+		this.legacyLocalRepository = source.legacyLocalRepository;
+		this.builder = source.builder;
+		this.noTransferProgress = source.noTransferProgress;
+		this.instrumentation = source.instrumentation;
+		this.preResolution = source.preResolution;
+		this.threadTuner = source.threadTuner;
+		this.setOptions = source.setOptions;
+		if (freeze) {
+			int sharedBySource = source.frozen ? ~0 : source.shared;
+			this.goals = freeze(this.goals, (sharedBySource & SHARED_GOALS) != 0);
+			this.phases = freeze(this.phases, (sharedBySource & SHARED_PHASES) != 0);
+			this.properties = freeze(this.properties, (sharedBySource & SHARED_PROPERTIES) != 0);
+			this.systemProperties = freeze(this.systemProperties, (sharedBySource & SHARED_SYSTEM_PROPERTIES) != 0);
+			this.activateProfiles = freeze(this.activateProfiles, (sharedBySource & SHARED_ACTIVATE_PROFILES) != 0);
+			this.alternateUserToolchains = freeze(this.alternateUserToolchains,
+					(sharedBySource & SHARED_ALTERNATE_USER_TOOLCHAINS) != 0);
+			this.alternateGlobalToolchains = freeze(this.alternateGlobalToolchains,
+					(sharedBySource & SHARED_ALTERNATE_GLOBAL_TOOLCHAINS) != 0);
+			this.projectList = freeze(this.projectList, (sharedBySource & SHARED_PROJECT_LIST) != 0);
+			this.frozen = true;
+			this.hash = computeHashCode();
+		} else {
+			this.shared = (goals != null ? SHARED_GOALS : 0) | (phases != null ? SHARED_PHASES : 0)
+					| (properties != null ? SHARED_PROPERTIES : 0)
+					| (systemProperties != null ? SHARED_SYSTEM_PROPERTIES : 0)
+					| (activateProfiles != null ? SHARED_ACTIVATE_PROFILES : 0)
+					| (alternateUserToolchains != null ? SHARED_ALTERNATE_USER_TOOLCHAINS : 0)
+					| (alternateGlobalToolchains != null ? SHARED_ALTERNATE_GLOBAL_TOOLCHAINS : 0)
+					| (projectList != null ? SHARED_PROJECT_LIST : 0);
+		}
+	}
+
+	private static <T> Set<T> freeze(Set<T> set, boolean alreadyFrozen) {
+		if (alreadyFrozen) {
+			return set;
+		}
+		return set == null || set.isEmpty() ? null : Collections.unmodifiableSet(new LinkedHashSet<T>(set));
+	}
+
+	private static <T> List<T> freeze(List<T> list, boolean alreadyFrozen) {
+		if (alreadyFrozen) {
+			return list;
+		}
+		return list == null || list.isEmpty() ? null : Collections.unmodifiableList(new ArrayList<T>(list));
+	}
+
+	private static <K, V> Map<K, V> freeze(Map<K, V> map, boolean alreadyFrozen) {
+		if (alreadyFrozen) {
+			return map;
+		}
+		return map == null || map.isEmpty() ? null : Collections.unmodifiableMap(new LinkedHashMap<K, V>(map));
+	}
+
+	/**
+	 * Returns an immutable snapshot of this builder with a precomputed hash code,
+	 * suitable as a map or cache key. Empty collections are normalized away, so
+	 * snapshots of builders that render the same arguments are equal. Collections
+	 * this builder still shares with the snapshot it was {@link #derive()
+	 * derived} from are reused rather than copied.
+	 */
+	public CliArgsBuilder freeze() {
+		return this.frozen ? this : new CliArgsBuilder(this, true);
+	}
+
+	/**
+	 * Returns a mutable builder that starts out sharing every collection with the
+	 * snapshot of this builder; a collection is only copied once it is accessed
+	 * through its getter or replaced through its setter. Deriving many variants
+	 * from one template therefore only copies what each variant touches.
+	 */
+	public CliArgsBuilder derive() {
+		return new CliArgsBuilder(freeze(), false);
+	}
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	private void checkMutable() {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("CliArgsBuilder has been frozen");
+		}
+	}
+
+	private boolean unshare(int collection) {
+		if ((this.shared & collection) != 0) {
+			this.shared &= ~collection;
+			return true;
+		}
+		return false;
+	}
+
+	private void mark(ArgBuilder option, boolean set) {
+		if (set) {
+			this.setOptions |= option.bit();
+		} else {
+			this.setOptions &= ~option.bit();
+		}
+	}
 
 	public Map<String, String> getProperties() {
+		if (this.frozen) {
+			return this.properties != null ? this.properties : Collections.emptyMap();
+		}
 		if (this.properties == null) {
 			this.properties = new LinkedHashMap<String, String>();
+		} else if (unshare(SHARED_PROPERTIES)) {
+			this.properties = new LinkedHashMap<String, String>(this.properties);
 		}
 		return this.properties;
 	}
@@ -183,14 +696,26 @@ public class CliArgsBuilder {
 	private boolean legacyLocalRepository;
 	private String builder;
 	private boolean noTransferProgress;
+	/** Not an argument; read by embedded executors and left out of equality. */
+	private BuildInstrumentation instrumentation;
+	/** Not an argument; read by embedded executors and left out of equality. */
+	private DependencyPreResolver preResolution;
+	/** Not an argument; read by embedded executors and left out of equality. */
+	private ThreadTuner threadTuner;
 
 	public String getAlternatePomFile() {
 		return this.alternatePomFile;
 	}
 
 	public Map<String, String> getSystemProperties() {
+		if (this.frozen) {
+			return this.systemProperties != null ? this.systemProperties : Collections.emptyMap();
+		}
 		if (this.systemProperties == null) {
 			this.systemProperties = new LinkedHashMap<String, String>();
+			mark(ArgBuilder.SET_SYSTEM_PROPERTY, true);
+		} else if (unshare(SHARED_SYSTEM_PROPERTIES)) {
+			this.systemProperties = new LinkedHashMap<String, String>(this.systemProperties);
 		}
 		return this.systemProperties;
 	}
@@ -220,6 +745,15 @@ public class CliArgsBuilder {
 	}
 
 	public List<String> getActivateProfiles() {
+		if (this.frozen) {
+			return this.activateProfiles != null ? this.activateProfiles : Collections.emptyList();
+		}
+		if (this.activateProfiles == null) {
+			this.activateProfiles = new ArrayList<String>();
+			mark(ArgBuilder.ACTIVATE_PROFILES, true);
+		} else if (unshare(SHARED_ACTIVATE_PROFILES)) {
+			this.activateProfiles = new ArrayList<String>(this.activateProfiles);
+		}
 		return this.activateProfiles;
 	}
 
@@ -248,15 +782,27 @@ public class CliArgsBuilder {
 	}
 
 	public List<String> getAlternateUserToolchains() {
-		if (alternateUserToolchains == null) {
+		if (this.frozen) {
+			return this.alternateUserToolchains != null ? this.alternateUserToolchains : Collections.emptyList();
+		}
+		if (this.alternateUserToolchains == null) {
 			this.alternateUserToolchains = new ArrayList<String>();
+			mark(ArgBuilder.ALTERNATE_USER_TOOLCHAINS, true);
+		} else if (unshare(SHARED_ALTERNATE_USER_TOOLCHAINS)) {
+			this.alternateUserToolchains = new ArrayList<String>(this.alternateUserToolchains);
 		}
 		return this.alternateUserToolchains;
 	}
 
 	public List<String> getAlternateGlobalToolchains() {
-		if (alternateGlobalToolchains == null) {
+		if (this.frozen) {
+			return this.alternateGlobalToolchains != null ? this.alternateGlobalToolchains : Collections.emptyList();
+		}
+		if (this.alternateGlobalToolchains == null) {
 			this.alternateGlobalToolchains = new ArrayList<String>();
+			mark(ArgBuilder.ALTERNATE_GLOBAL_TOOLCHAINS, true);
+		} else if (unshare(SHARED_ALTERNATE_GLOBAL_TOOLCHAINS)) {
+			this.alternateGlobalToolchains = new ArrayList<String>(this.alternateGlobalToolchains);
 		}
 		return this.alternateGlobalToolchains;
 	}
@@ -278,8 +824,14 @@ public class CliArgsBuilder {
 	}
 
 	public List<String> getProjectList() {
-		if (projectList == null) {
-			projectList = new ArrayList<String>();
+		if (this.frozen) {
+			return this.projectList != null ? this.projectList : Collections.emptyList();
+		}
+		if (this.projectList == null) {
+			this.projectList = new ArrayList<String>();
+			mark(ArgBuilder.PROJECT_LIST, true);
+		} else if (unshare(SHARED_PROJECT_LIST)) {
+			this.projectList = new ArrayList<String>(this.projectList);
 		}
 		return this.projectList;
 	}
@@ -320,162 +872,274 @@ public class CliArgsBuilder {
 		return this.builder;
 	}
 
+	public BuildInstrumentation getInstrumentation() {
+		return this.instrumentation;
+	}
+
+	public DependencyPreResolver getPreResolution() {
+		return this.preResolution;
+	}
+
+	public ThreadTuner getThreadTuner() {
+		return this.threadTuner;
+	}
+
 	public boolean isNoTransferProgress() {
 		return this.noTransferProgress;
 	}
 
 	public Set<String> getGoals() {
+		if (this.frozen) {
+			return this.goals != null ? this.goals : Collections.emptySet();
+		}
 		if (this.goals == null) {
 			this.goals = new LinkedHashSet<String>();
+		} else if (unshare(SHARED_GOALS)) {
+			this.goals = new LinkedHashSet<String>(this.goals);
 		}
 		return this.goals;
 	}
 
 	public Set<String> getPhases() {
+		if (this.frozen) {
+			return this.phases != null ? this.phases : Collections.emptySet();
+		}
 		if (this.phases == null) {
 			this.phases = new LinkedHashSet<String>();
+		} else if (unshare(SHARED_PHASES)) {
+			this.phases = new LinkedHashSet<String>(this.phases);
 		}
 		return this.phases;
 	}
 
 	public void setProperties(Map<String, String> properties) {
+		checkMutable();
 		this.properties = properties;
+		this.shared &= ~SHARED_PROPERTIES;
 	}
 
 	public void setGoals(Set<String> goals) {
+		checkMutable();
 		this.goals = goals;
+		this.shared &= ~SHARED_GOALS;
 	}
 
 	public void setPhases(Set<String> phases) {
+		checkMutable();
 		this.phases = phases;
+		this.shared &= ~SHARED_PHASES;
 	}
 
 	public void setAlternatePomFile(String alternatePomFile) {
+		checkMutable();
 		this.alternatePomFile = alternatePomFile;
+		mark(ArgBuilder.ALTERNATE_POM_FILE, alternatePomFile != null);
 	}
 
 	public void setSystemProperties(Map<String, String> systemProperties) {
+		checkMutable();
 		this.systemProperties = systemProperties;
+		this.shared &= ~SHARED_SYSTEM_PROPERTIES;
+		mark(ArgBuilder.SET_SYSTEM_PROPERTY, systemProperties != null);
 	}
 
 	public void setOffline(boolean offline) {
+		checkMutable();
 		this.offline = offline;
+		mark(ArgBuilder.OFFLINE, offline);
 	}
 
 	public void setQuiet(boolean quiet) {
+		checkMutable();
 		this.quiet = quiet;
+		mark(ArgBuilder.QUIET, quiet);
 	}
 
 	public void setDebug(boolean debug) {
+		checkMutable();
 		this.debug = debug;
+		mark(ArgBuilder.DEBUG, debug);
 	}
 
 	public void setErrors(boolean errors) {
+		checkMutable();
 		this.errors = errors;
+		mark(ArgBuilder.ERRORS, errors);
 	}
 
 	public void setNonRecursive(boolean nonRecursive) {
+		checkMutable();
 		this.nonRecursive = nonRecursive;
+		mark(ArgBuilder.NON_RECURSIVE, nonRecursive);
 	}
 
 	public void setUpdateSnapshots(boolean updateSnapshots) {
+		checkMutable();
 		this.updateSnapshots = updateSnapshots;
+		mark(ArgBuilder.UPDATE_SNAPSHOTS, updateSnapshots);
 	}
 
 	public void setActivateProfiles(List<String> activateProfiles) {
+		checkMutable();
 		this.activateProfiles = activateProfiles;
+		this.shared &= ~SHARED_ACTIVATE_PROFILES;
+		mark(ArgBuilder.ACTIVATE_PROFILES, activateProfiles != null);
 	}
 
 	public void setBatchMode(boolean batchMode) {
+		checkMutable();
 		this.batchMode = batchMode;
+		mark(ArgBuilder.BATCH_MODE, batchMode);
 	}
 
 	public void setSupressSnapshotUpdates(boolean supressSnapshotUpdates) {
+		checkMutable();
 		this.supressSnapshotUpdates = supressSnapshotUpdates;
+		mark(ArgBuilder.SUPRESS_SNAPSHOT_UPDATES, supressSnapshotUpdates);
 	}
 
 	public void setChecksumFailurePolicy(boolean checksumFailurePolicy) {
+		checkMutable();
 		this.checksumFailurePolicy = checksumFailurePolicy;
+		mark(ArgBuilder.CHECKSUM_FAILURE_POLICY, checksumFailurePolicy);
 	}
 
 	public void setChecksumWarningPolicy(boolean checksumWarningPolicy) {
+		checkMutable();
 		this.checksumWarningPolicy = checksumWarningPolicy;
+		mark(ArgBuilder.CHECKSUM_WARNING_POLICY, checksumWarningPolicy);
 	}
 
 	public void setAlternateUserSettings(String alternateUserSettings) {
+		checkMutable();
 		this.alternateUserSettings = alternateUserSettings;
+		mark(ArgBuilder.ALTERNATE_USER_SETTINGS, alternateUserSettings != null);
 	}
 
 	public void setAlternateGlobalSettings(String alternateGlobalSettings) {
+		checkMutable();
 		this.alternateGlobalSettings = alternateGlobalSettings;
+		mark(ArgBuilder.ALTERNATE_GLOBAL_SETTINGS, alternateGlobalSettings != null);
 	}
 
 	public void setAlternateUserToolchains(List<String> alternateUserToolchains) {
+		checkMutable();
 		this.alternateUserToolchains = alternateUserToolchains;
+		this.shared &= ~SHARED_ALTERNATE_USER_TOOLCHAINS;
+		mark(ArgBuilder.ALTERNATE_USER_TOOLCHAINS, alternateUserToolchains != null);
 	}
 
 	public void setAlternateGlobalToolchains(List<String> alternateGlobalToolchains) {
+		checkMutable();
 		this.alternateGlobalToolchains = alternateGlobalToolchains;
+		this.shared &= ~SHARED_ALTERNATE_GLOBAL_TOOLCHAINS;
+		mark(ArgBuilder.ALTERNATE_GLOBAL_TOOLCHAINS, alternateGlobalToolchains != null);
 	}
 
 	public void setFailFast(boolean failFast) {
+		checkMutable();
 		this.failFast = failFast;
+		mark(ArgBuilder.FAIL_FAST, failFast);
 	}
 
 	public void setFailAtEnd(boolean failAtEnd) {
+		checkMutable();
 		this.failAtEnd = failAtEnd;
+		mark(ArgBuilder.FAIL_AT_END, failAtEnd);
 	}
 
 	public void setFailNever(boolean failNever) {
+		checkMutable();
 		this.failNever = failNever;
+		mark(ArgBuilder.FAIL_NEVER, failNever);
 	}
 
 	public void setResumeFrom(String resumeFrom) {
+		checkMutable();
 		this.resumeFrom = resumeFrom;
+		mark(ArgBuilder.RESUME_FROM, resumeFrom != null);
 	}
 
 	public void setProjectList(List<String> projectList) {
+		checkMutable();
 		this.projectList = projectList;
+		this.shared &= ~SHARED_PROJECT_LIST;
+		mark(ArgBuilder.PROJECT_LIST, projectList != null);
 	}
 
 	public void setAlsoMake(boolean alsoMake) {
+		checkMutable();
 		this.alsoMake = alsoMake;
+		mark(ArgBuilder.ALSO_MAKE, alsoMake);
 	}
 
 	public void setAlsoMakeDependents(boolean alsoMakeDependents) {
+		checkMutable();
 		this.alsoMakeDependents = alsoMakeDependents;
+		mark(ArgBuilder.ALSO_MAKE_DEPENDENTS, alsoMakeDependents);
 	}
 
 	public void setLogFile(String logFile) {
+		checkMutable();
 		this.logFile = logFile;
+		mark(ArgBuilder.LOG_FILE, logFile != null);
 	}
 
 	public void setShowVersion(boolean showVersion) {
+		checkMutable();
 		this.showVersion = showVersion;
+		mark(ArgBuilder.SHOW_VERSION, showVersion);
 	}
 
 	public void setEncryptMasterPassword(String encryptMasterPassword) {
+		checkMutable();
 		this.encryptMasterPassword = encryptMasterPassword;
+		mark(ArgBuilder.ENCRYPT_MASTER_PASSWORD, encryptMasterPassword != null);
 	}
 
 	public void setEncryptPassword(String encryptPassword) {
+		checkMutable();
 		this.encryptPassword = encryptPassword;
+		mark(ArgBuilder.ENCRYPT_PASSWORD, encryptPassword != null);
 	}
 
 	public void setThreads(String threads) {
+		checkMutable();
 		this.threads = threads;
+		mark(ArgBuilder.THREADS, threads != null);
 	}
 
 	public void setLegacyLocalRepository(boolean legacyLocalRepository) {
+		checkMutable();
 		this.legacyLocalRepository = legacyLocalRepository;
+		mark(ArgBuilder.LEGACY_LOCAL_REPOSITORY, legacyLocalRepository);
 	}
 
 	public void setBuilder(String builder) {
+		checkMutable();
 		this.builder = builder;
+		mark(ArgBuilder.BUILDER, builder != null);
 	}
 
 	public void setNoTransferProgress(boolean noTransferProgress) {
+		checkMutable();
 		this.noTransferProgress = noTransferProgress;
+		mark(ArgBuilder.NO_TRANSFER_PROGRESS, noTransferProgress);
+	}
+
+	public void setInstrumentation(BuildInstrumentation instrumentation) {
+		checkMutable();
+		this.instrumentation = instrumentation;
+	}
+
+	public void setPreResolution(DependencyPreResolver preResolution) {
+		checkMutable();
+		this.preResolution = preResolution;
+	}
+
+	public void setThreadTuner(ThreadTuner threadTuner) {
+		checkMutable();
+		this.threadTuner = threadTuner;
 	}
 
 	public CliArgsBuilder properties(Map<String, String> properties) {
@@ -672,8 +1336,43 @@ public class CliArgsBuilder {
 		return this;
 	}
 
+	/**
+	 * Records module, goal and phase timings into {@code instrumentation} when the
+	 * invocation runs on an {@link EmbeddedMavenExecutor}. It adds no command line
+	 * argument.
+	 */
+	public CliArgsBuilder instrumentation(BuildInstrumentation instrumentation) {
+		setInstrumentation(instrumentation);
+		return this;
+	}
+
+	/**
+	 * Resolves the dependencies and plugins of the whole reactor with
+	 * {@code preResolution} before the first module is built, when the invocation
+	 * runs on an {@link EmbeddedMavenExecutor}. It adds no command line argument.
+	 */
+	public CliArgsBuilder preResolution(DependencyPreResolver preResolution) {
+		setPreResolution(preResolution);
+		return this;
+	}
+
+	/**
+	 * Records the reactor into {@code threadTuner} and, unless {@code threads}
+	 * is set, runs with its {@link ThreadTuner#recommend() recommendation}, when
+	 * the invocation runs on an {@link EmbeddedMavenExecutor}. It adds no command
+	 * line argument itself.
+	 */
+	public CliArgsBuilder threadTuning(ThreadTuner threadTuner) {
+		setThreadTuner(threadTuner);
+		return this;
+	}
+
 	@Override
 	public int hashCode() {
+		return this.frozen ? this.hash : computeHashCode();
+	}
+
+	private int computeHashCode() {
 		return Objects.hash(activateProfiles, alsoMake, alsoMakeDependents, alternateGlobalSettings,
 				alternateGlobalToolchains, alternatePomFile, alternateUserSettings, alternateUserToolchains, batchMode,
 				builder, checksumFailurePolicy, checksumWarningPolicy, debug, encryptMasterPassword, encryptPassword,
@@ -691,6 +1390,9 @@ public class CliArgsBuilder {
 			return false;
 		}
 		CliArgsBuilder other = (CliArgsBuilder) obj;
+		if (this.frozen && other.frozen && this.hash != other.hash) {
+			return false;
+		}
 		return Objects.equals(activateProfiles, other.activateProfiles) && alsoMake == other.alsoMake
 				&& alsoMakeDependents == other.alsoMakeDependents
 				&& Objects.equals(alternateGlobalSettings, other.alternateGlobalSettings)
@@ -718,15 +1420,77 @@ public class CliArgsBuilder {
 	@Override
 	public String toString() {
 		List<String> l = ArgBuilder.toArgs(this);
-		if (getGoals() != null && !getGoals().isEmpty()) {
-			l.addAll(getGoals());
+		if (this.goals != null && !this.goals.isEmpty()) {
+			l.addAll(this.goals);
 		}
-		if (getPhases() != null && !getPhases().isEmpty()) {
-			l.addAll(getPhases());
+		if (this.phases != null && !this.phases.isEmpty()) {
+			l.addAll(this.phases);
 		}
 		return String.join(" ", l);
 	}
 
+	/**
+	 * @return one element per flag and per value, followed by goals and phases,
+	 *         ready to be handed to {@link MavenCli}
+	 */
+	public String[] toArgv() {
+		return ArgBuilder.toArgv(this);
+	}
+
+	/**
+	 * Parses a {@code mvn} command line, as found in CI configurations, into a
+	 * builder. Tokens are split the way a POSIX shell would split them, so
+	 * quoted values such as {@code -Dkey="a b"} keep their whitespace; a leading
+	 * {@code mvn} or {@code mvnw} launcher is skipped.
+	 *
+	 * @throws IllegalArgumentException for unbalanced quotes, options without a
+	 *                                  {@link CliArgsBuilder} counterpart or a
+	 *                                  missing option value
+	 */
+	public static CliArgsBuilder parse(String commandLine) {
+		List<String> tokens = CommandLineTokenizer.tokenize(commandLine);
+		if (!tokens.isEmpty() && CommandLineTokenizer.isLauncher(tokens.get(0))) {
+			tokens = tokens.subList(1, tokens.size());
+		}
+		return ArgBuilder.fromArgv(tokens);
+	}
+
+	/**
+	 * The inverse of {@link #toArgv()}: {@code fromArgv(b.toArgv()).toArgv()}
+	 * renders the same tokens as {@code b.toArgv()}.
+	 *
+	 * @throws IllegalArgumentException for options without a
+	 *                                  {@link CliArgsBuilder} counterpart or a
+	 *                                  missing option value
+	 */
+	public static CliArgsBuilder fromArgv(String... argv) {
+		return ArgBuilder.fromArgv(Arrays.asList(argv));
+	}
+
+	/**
+	 * Writes a compact binary form of this builder: a variable-length bitset of
+	 * the options that are set, which is all a flag needs, followed by the value
+	 * of every other set option as length-prefixed UTF-8 strings, lists and maps,
+	 * and finally goals, phases and properties. Options are identified by fixed
+	 * ids rather than their position, so data written by an older version stays
+	 * readable as options are added or reordered. The instrumentation,
+	 * pre-resolution and thread tuner attached to this builder are not written.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		ArgBuilder.write(this, out);
+	}
+
+	/**
+	 * The inverse of {@link #writeTo(DataOutput)}; the builder it returns renders
+	 * the same {@link #toArgv()}.
+	 *
+	 * @throws IOException for truncated input or options this version does not
+	 *                     know
+	 */
+	public static CliArgsBuilder readFrom(DataInput in) throws IOException {
+		return ArgBuilder.read(in);
+	}
+
 	public static void main(String[] args) {
 		CliArgsBuilder b = new CliArgsBuilder();
 		System.out.println(b.systemProperty("herp", "derp").systemProperty("jerp", "lerple gerple").goals("herfy","lerfy").quiet());
@@ -0,0 +1,437 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Merges invocations that only differ in their project list ({@code -pl}) into
+ * a single reactor run, so the project model is built once for all of them.
+ * <p>
+ * The first invocation for a combination of arguments and working directory
+ * opens a batch and waits for the batching window; invocations arriving in the
+ * meantime join it. The batch then runs once with the union of the project
+ * lists, or the whole reactor if any member has none, and with
+ * {@code --fail-at-end} so that one member's failure does not skip the others'
+ * modules. Each caller receives a {@link ReactorResult} covering the modules its
+ * own selection, including {@code -am}/{@code -amd}, resolves to. Output of a
+ * merged run goes to every caller's streams.
+ * <p>
+ * Per-module outcomes require an {@link EmbeddedMavenExecutor} delegate; with
+ * other delegates each caller receives the exit code of the merged run. If a
+ * merged run fails before any module starts, for example because one member
+ * selects a module that does not exist, every member is run on its own.
+ * Project lists with exclusions are never merged.
+ */
+public class CoalescingMavenExecutor implements MavenExecutor {
+
+	private static final class Key {
+		private final CliArgsBuilder args;
+		private final File workingDirectory;
+		private final BuildInstrumentation instrumentation;
+		private final DependencyPreResolver preResolution;
+		private final ThreadTuner threadTuner;
+
+		private Key(CliArgsBuilder args, File workingDirectory) {
+			CliArgsBuilder shared = args.derive();
+			shared.setProjectList(null);
+			this.args = shared.freeze();
+			this.workingDirectory = workingDirectory;
+			this.instrumentation = args.getInstrumentation();
+			this.preResolution = args.getPreResolution();
+			this.threadTuner = args.getThreadTuner();
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * args.hashCode() + workingDirectory.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return args.equals(other.args) && workingDirectory.equals(other.workingDirectory)
+					&& instrumentation == other.instrumentation && preResolution == other.preResolution
+					&& threadTuner == other.threadTuner;
+		}
+	}
+
+	private static class Request {
+		private final CliArgsBuilder args;
+		private final PrintStream out;
+		private final PrintStream err;
+		private final CompletableFuture<BuildResult> result = new CompletableFuture<BuildResult>();
+
+		private Request(CliArgsBuilder args, PrintStream out, PrintStream err) {
+			this.args = args;
+			this.out = out;
+			this.err = err;
+		}
+	}
+
+	private static class Batch {
+		private final List<Request> requests = new ArrayList<Request>();
+	}
+
+	/** Records the reactor and the outcome of each of its projects. */
+	private static class ReactorListener extends AbstractExecutionListener {
+		private volatile List<MavenProject> projects;
+		private volatile ProjectDependencyGraph graph;
+		private final Map<MavenProject, ReactorResult.Outcome> outcomes = new ConcurrentHashMap<>();
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		@Override
+		public void sessionStarted(ExecutionEvent event) {
+			this.projects = event.getSession().getProjects();
+			this.graph = event.getSession().getProjectDependencyGraph();
+		}
+
+		@Override
+		public void projectStarted(ExecutionEvent event) {
+			started.set(true);
+		}
+
+		@Override
+		public void projectSucceeded(ExecutionEvent event) {
+			outcomes.put(event.getProject(), ReactorResult.Outcome.SUCCESS);
+		}
+
+		@Override
+		public void projectFailed(ExecutionEvent event) {
+			outcomes.put(event.getProject(), ReactorResult.Outcome.FAILURE);
+		}
+
+		@Override
+		public void projectSkipped(ExecutionEvent event) {
+			outcomes.put(event.getProject(), ReactorResult.Outcome.SKIPPED);
+		}
+	}
+
+	private static class FanOutStream extends OutputStream {
+		private final Collection<PrintStream> targets;
+
+		private FanOutStream(Collection<PrintStream> targets) {
+			this.targets = targets;
+		}
+
+		@Override
+		public void write(int b) {
+			for (PrintStream target : targets) {
+				target.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			for (PrintStream target : targets) {
+				target.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() {
+			for (PrintStream target : targets) {
+				target.flush();
+			}
+		}
+	}
+
+	private final MavenExecutor delegate;
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final Map<Key, Batch> open = new HashMap<Key, Batch>();
+
+	private final LongAdder invocations = new LongAdder();
+	private final LongAdder reactorRuns = new LongAdder();
+	private final LongAdder reruns = new LongAdder();
+
+	/**
+	 * @param window       how long the first invocation of a batch waits for
+	 *                     others to join
+	 * @param maxBatchSize a batch runs as soon as it has this many members
+	 */
+	public CoalescingMavenExecutor(MavenExecutor delegate, long window, TimeUnit unit, int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be positive");
+		}
+		this.delegate = Objects.requireNonNull(delegate, "delegate");
+		this.windowNanos = unit.toNanos(window);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public BuildResult execute(CliArgsBuilder builder, File workingDirectory, PrintStream out, PrintStream err) {
+		// reading the project list of the caller's builder would initialize it, and race with the caller
+		CliArgsBuilder args = Objects.requireNonNull(builder, "args").freeze();
+		invocations.increment();
+		File dir = (workingDirectory != null ? workingDirectory : new File(System.getProperty("user.dir")))
+				.getAbsoluteFile();
+		if (hasExclusions(args.getProjectList())) {
+			reactorRuns.increment();
+			return delegate.execute(args, dir, out, err);
+		}
+		Key key = new Key(args, dir);
+		Request request = new Request(args, out, err);
+		Batch batch;
+		boolean leader;
+		synchronized (open) {
+			batch = open.get(key);
+			leader = batch == null;
+			if (leader) {
+				batch = new Batch();
+				open.put(key, batch);
+			}
+			batch.requests.add(request);
+			if (batch.requests.size() >= maxBatchSize) {
+				open.remove(key);
+				open.notifyAll();
+			}
+		}
+		if (leader) {
+			awaitWindow(key, batch);
+			run(key, batch.requests);
+		}
+		try {
+			return request.result.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private static boolean hasExclusions(List<String> projectList) {
+		for (String selector : projectList) {
+			if (selector.startsWith("!") || selector.startsWith("-")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the batch once the window has passed or it is full; members can only
+	 * join while it is open.
+	 */
+	private void awaitWindow(Key key, Batch batch) {
+		long deadline = System.nanoTime() + windowNanos;
+		synchronized (open) {
+			try {
+				for (long remaining = windowNanos; open.get(key) == batch && remaining > 0; remaining = deadline
+						- System.nanoTime()) {
+					TimeUnit.NANOSECONDS.timedWait(open, remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			open.remove(key, batch);
+		}
+	}
+
+	private void run(Key key, List<Request> requests) {
+		try {
+			CliArgsBuilder merged = requests.size() == 1 ? requests.get(0).args : merge(key, requests);
+			ReactorListener listener = new ReactorListener();
+			BuildResult result = runWith(listener, merged, key.workingDirectory, requests);
+			reactorRuns.increment();
+			if (!result.isSuccess() && requests.size() > 1 && !listener.started.get()) {
+				for (Request request : requests) {
+					reruns.increment();
+					reactorRuns.increment();
+					complete(request, () -> delegate.execute(request.args, key.workingDirectory, request.out,
+							request.err));
+				}
+				return;
+			}
+			for (Request request : requests) {
+				request.result.complete(slice(request, listener, result, key.workingDirectory, requests.size()));
+			}
+		} catch (RuntimeException | Error e) {
+			for (Request request : requests) {
+				request.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static void complete(Request request, Supplier<BuildResult> action) {
+		try {
+			request.result.complete(action.get());
+		} catch (RuntimeException | Error e) {
+			request.result.completeExceptionally(e);
+		}
+	}
+
+	private static CliArgsBuilder merge(Key key, List<Request> requests) {
+		CliArgsBuilder merged = key.args.derive();
+		Set<String> projects = new LinkedHashSet<String>();
+		for (Request request : requests) {
+			List<String> selectors = request.args.getProjectList();
+			if (selectors.isEmpty()) {
+				projects = null;
+				break;
+			}
+			projects.addAll(selectors);
+		}
+		if (projects != null) {
+			merged.setProjectList(new ArrayList<String>(projects));
+		}
+		if (!merged.isFailNever()) {
+			merged.setFailFast(false);
+			merged.setFailAtEnd(true);
+		}
+		return merged;
+	}
+
+	private BuildResult runWith(ReactorListener listener, CliArgsBuilder args, File dir, List<Request> requests) {
+		Set<PrintStream> outs = Collections.newSetFromMap(new IdentityHashMap<PrintStream, Boolean>());
+		Set<PrintStream> errs = Collections.newSetFromMap(new IdentityHashMap<PrintStream, Boolean>());
+		for (Request request : requests) {
+			if (request.out != null) {
+				outs.add(request.out);
+			}
+			if (request.err != null) {
+				errs.add(request.err);
+			}
+		}
+		PrintStream out = fanOut(outs);
+		PrintStream err = fanOut(errs);
+		InvocationContext current = InvocationContext.current();
+		InvocationContext context = current != null ? current.fork() : new InvocationContext();
+		try {
+			return context.addListener(listener).run(() -> delegate.execute(args, dir, out, err));
+		} finally {
+			if (out != null) {
+				out.flush();
+			}
+			if (err != null) {
+				err.flush();
+			}
+		}
+	}
+
+	private static PrintStream fanOut(Set<PrintStream> targets) {
+		if (targets.isEmpty()) {
+			return null;
+		}
+		if (targets.size() == 1) {
+			return targets.iterator().next();
+		}
+		return new PrintStream(new FanOutStream(new ArrayList<PrintStream>(targets)), true);
+	}
+
+	/**
+	 * @return the part of {@code result} covering the modules {@code request}
+	 *         selects, or the merged exit code if they cannot be determined
+	 */
+	private static BuildResult slice(Request request, ReactorListener listener, BuildResult result, File dir,
+			int batchSize) {
+		List<MavenProject> projects = listener.projects;
+		if (projects == null) {
+			return new ReactorResult(result.getExitCode(), result.getDurationNanos(), result.isColdStart(),
+					Collections.emptyMap(), batchSize);
+		}
+		Set<MavenProject> selected = new LinkedHashSet<MavenProject>();
+		List<String> selectors = request.args.getProjectList();
+		if (selectors.isEmpty()) {
+			selected.addAll(projects);
+		} else {
+			for (String selector : selectors) {
+				MavenProject project = find(projects, selector, dir);
+				if (project == null) {
+					return new ReactorResult(result.getExitCode(), result.getDurationNanos(), result.isColdStart(),
+							Collections.emptyMap(), batchSize);
+				}
+				selected.add(project);
+				if (request.args.isAlsoMake()) {
+					selected.addAll(listener.graph.getUpstreamProjects(project, true));
+				}
+				if (request.args.isAlsoMakeDependents()) {
+					selected.addAll(listener.graph.getDownstreamProjects(project, true));
+				}
+			}
+		}
+		Map<String, ReactorResult.Outcome> modules = new LinkedHashMap<String, ReactorResult.Outcome>();
+		boolean success = true;
+		for (MavenProject project : projects) {
+			if (selected.contains(project)) {
+				ReactorResult.Outcome outcome = listener.outcomes.getOrDefault(project, ReactorResult.Outcome.SKIPPED);
+				modules.put(project.getGroupId() + ":" + project.getArtifactId(), outcome);
+				success &= outcome == ReactorResult.Outcome.SUCCESS;
+			}
+		}
+		int exitCode = batchSize == 1 ? result.getExitCode() : success ? 0 : 1;
+		return new ReactorResult(exitCode, result.getDurationNanos(), result.isColdStart(),
+				Collections.unmodifiableMap(modules), batchSize);
+	}
+
+	/**
+	 * Resolves a {@code -pl} selector the way Maven does: {@code :artifactId},
+	 * {@code groupId:artifactId} or a path relative to the working directory.
+	 */
+	private static MavenProject find(List<MavenProject> projects, String selector, File dir) {
+		File path = selector.indexOf(':') < 0 ? new File(new File(dir, selector).toURI().normalize()) : null;
+		for (MavenProject project : projects) {
+			if (path == null) {
+				if (selector.equals(":" + project.getArtifactId())
+						|| selector.equals(project.getGroupId() + ":" + project.getArtifactId())) {
+					return project;
+				}
+			} else if (path.isFile() ? path.equals(project.getFile()) : path.equals(project.getBasedir())) {
+				return project;
+			}
+		}
+		return null;
+	}
+
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	/**
+	 * @return Maven runs actually made; the difference to
+	 *         {@link #getInvocations()} is the work saved
+	 */
+	public long getReactorRuns() {
+		return reactorRuns.sum();
+	}
+
+	/**
+	 * @return invocations that had to be run on their own after their merged run
+	 *         failed before building any module
+	 */
+	public long getReruns() {
+		return reruns.sum();
+	}
+
+}
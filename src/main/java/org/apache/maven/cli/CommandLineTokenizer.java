@@ -0,0 +1,125 @@
+package org.apache.maven.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a command line into arguments following POSIX shell quoting: single
+ * quotes are literal, double quotes allow {@code \"}, {@code \\}, {@code \$}
+ * and {@code \`} escapes, a backslash outside quotes escapes the next
+ * character and a backslash before a line break continues the line. A single
+ * pass over the characters, without regular expressions.
+ */
+final class CommandLineTokenizer {
+
+	private static final String[] LAUNCHERS = { "mvn", "mvnw", "mvn.cmd", "mvnw.cmd", "mvn.bat" };
+
+	private CommandLineTokenizer() {
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a quote is not closed
+	 */
+	static List<String> tokenize(CharSequence commandLine) {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		boolean inToken = false;
+		int length = commandLine.length();
+		for (int i = 0; i < length; i++) {
+			char c = commandLine.charAt(i);
+			switch (c) {
+			case '\'':
+				int close = indexOf(commandLine, '\'', i + 1);
+				token.append(commandLine, i + 1, close);
+				i = close;
+				inToken = true;
+				break;
+			case '"':
+				i = doubleQuoted(commandLine, i + 1, token);
+				inToken = true;
+				break;
+			case '\\':
+				if (i + 1 < length) {
+					char next = commandLine.charAt(++i);
+					if (next == '\r' && i + 1 < length && commandLine.charAt(i + 1) == '\n') {
+						i++;
+					} else if (next != '\n' && next != '\r') {
+						token.append(next);
+						inToken = true;
+					}
+				}
+				break;
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				if (inToken) {
+					tokens.add(token.toString());
+					token.setLength(0);
+					inToken = false;
+				}
+				break;
+			default:
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) {
+			tokens.add(token.toString());
+		}
+		return tokens;
+	}
+
+	/**
+	 * Appends the content of a double-quoted section starting at {@code start} and
+	 * returns the index of the closing quote.
+	 */
+	private static int doubleQuoted(CharSequence commandLine, int start, StringBuilder token) {
+		int length = commandLine.length();
+		for (int i = start; i < length; i++) {
+			char c = commandLine.charAt(i);
+			if (c == '"') {
+				return i;
+			}
+			if (c == '\\' && i + 1 < length) {
+				char next = commandLine.charAt(i + 1);
+				if (next == '"' || next == '\\' || next == '$' || next == '`') {
+					token.append(next);
+					i++;
+					continue;
+				}
+				if (next == '\n') {
+					i++;
+					continue;
+				}
+			}
+			token.append(c);
+		}
+		throw new IllegalArgumentException("Unbalanced \" in: " + commandLine);
+	}
+
+	private static int indexOf(CharSequence commandLine, char c, int start) {
+		for (int i = start; i < commandLine.length(); i++) {
+			if (commandLine.charAt(i) == c) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unbalanced " + c + " in: " + commandLine);
+	}
+
+	/**
+	 * @return {@code true} if {@code token} names a Maven launcher, with or
+	 *         without a path
+	 */
+	static boolean isLauncher(String token) {
+		int slash = Math.max(token.lastIndexOf('/'), token.lastIndexOf('\\'));
+		String name = token.substring(slash + 1);
+		for (String launcher : LAUNCHERS) {
+			if (launcher.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,322 @@
+package org.apache.maven.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.eclipse.sisu.space.BeanScanning;
+import org.eclipse.sisu.space.QualifiedTypeBinder;
+import org.eclipse.sisu.space.QualifiedTypeVisitor;
+import org.eclipse.sisu.space.SpaceModule;
+import org.eclipse.sisu.space.URLClassSpace;
+
+import com.google.inject.spi.Elements;
+
+/**
+ * A precomputed index of the JSR-330 components Sisu finds through
+ * {@value #SISU_INDEX} on the class path of the embedded runtime, so a
+ * container can bind them without reading their class files first.
+ * <p>
+ * At boot, Sisu reads the class file of every class an index file lists to
+ * find out whether it is a qualified component, and only then loads and binds
+ * it. {@link #generate(ClassLoader)} runs that scan once, at build time, and
+ * records the components it found in scan order; {@link #publish} binds them
+ * the same way Sisu would. Classes the scan did not take as JSR-330
+ * components, such as Plexus annotated ones, stay in a reduced Sisu index that
+ * the container still scans. {@link #load(ClassLoader)} only returns an index
+ * whose fingerprint of the Sisu index files matches the class path, so another
+ * Maven version boots the normal way.
+ * <p>
+ * Plexus components from {@code META-INF/plexus/components.xml} are not
+ * indexed; Plexus already binds them without reading their class files.
+ */
+public final class ComponentIndex {
+
+	/** Where the build puts the index and {@link #load(ClassLoader)} looks for it. */
+	public static final String RESOURCE = "META-INF/mbetter/components.index";
+
+	static final String SISU_INDEX = "META-INF/sisu/javax.inject.Named";
+
+	private static final int MAGIC = 0x4d424349;
+	private static final int VERSION = 1;
+
+	private final long fingerprint;
+	private final List<String> components;
+	private final List<String> scanned;
+	private final byte[] reducedIndex;
+
+	private ComponentIndex(long fingerprint, List<String> components, List<String> scanned) {
+		this.fingerprint = fingerprint;
+		this.components = Collections.unmodifiableList(components);
+		this.scanned = Collections.unmodifiableList(scanned);
+		this.reducedIndex = scanned.isEmpty() ? null
+				: (String.join("\n", scanned) + "\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Scans the Sisu index files visible to {@code loader} the way a container
+	 * booting from it would.
+	 *
+	 * @throws IOException if an index file cannot be read
+	 */
+	public static ComponentIndex generate(ClassLoader loader) throws IOException {
+		Set<String> named = new LinkedHashSet<String>();
+		long fingerprint = fingerprint(loader, named);
+		Set<String> components = new LinkedHashSet<String>();
+		Elements.getElements(new SpaceModule(new URLClassSpace(loader), BeanScanning.INDEX)
+				.with(binder -> new QualifiedTypeVisitor((type, source) -> components.add(type.getName()))));
+		List<String> scanned = new ArrayList<String>();
+		for (String name : named) {
+			if (!components.contains(name)) {
+				scanned.add(name);
+			}
+		}
+		return new ComponentIndex(fingerprint, new ArrayList<String>(components), scanned);
+	}
+
+	/**
+	 * @return the index the build put into {@link #RESOURCE}, or {@code null} if
+	 *         there is none or the Sisu index files of {@code loader} differ from
+	 *         the ones it was generated from
+	 */
+	public static ComponentIndex load(ClassLoader loader) {
+		try (InputStream in = loader.getResourceAsStream(RESOURCE)) {
+			if (in == null) {
+				return null;
+			}
+			ComponentIndex index = read(in);
+			return index != null && index.fingerprint == fingerprint(loader, null) ? index : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the index in {@code in}, or {@code null} if it was written by
+	 *         another version
+	 */
+	static ComponentIndex read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+			return null;
+		}
+		long fingerprint = data.readLong();
+		List<String> components = readNames(data);
+		return new ComponentIndex(fingerprint, components, readNames(data));
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(fingerprint);
+		writeNames(data, components);
+		writeNames(data, scanned);
+		data.flush();
+	}
+
+	private static List<String> readNames(DataInputStream data) throws IOException {
+		String[] names = new String[WireFormat.readCount(data)];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = WireFormat.readString(data);
+		}
+		return List.of(names);
+	}
+
+	private static void writeNames(DataOutputStream data, List<String> names) throws IOException {
+		WireFormat.writeVarInt(data, names.size());
+		for (String name : names) {
+			WireFormat.writeString(data, name);
+		}
+	}
+
+	/**
+	 * Writes the index to {@code file}, replacing it atomically.
+	 */
+	public void write(Path file) throws IOException {
+		Path target = file.toAbsolutePath();
+		Files.createDirectories(target.getParent());
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				writeTo(out);
+			}
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * @return the classes of the indexed components, in scan order
+	 */
+	List<String> getComponents() {
+		return this.components;
+	}
+
+	/**
+	 * @return the classes that are left to Sisu's scan
+	 */
+	List<String> getScanned() {
+		return this.scanned;
+	}
+
+	/**
+	 * @return a class loader delegating to {@code parent} that, while
+	 *         {@link IndexedClassLoader#setIndexed(boolean) indexed}, shows a
+	 *         container realm built on it only the Sisu index entries of
+	 *         {@link #getScanned()}
+	 */
+	IndexedClassLoader classLoader(ClassLoader parent) {
+		return new IndexedClassLoader(parent, reducedIndex);
+	}
+
+	/**
+	 * Binds the indexed components in {@code container}, whose realm has to be
+	 * built on {@link #classLoader(ClassLoader)}. Has to be called before anything
+	 * is looked up. The components get an injector of their own, which ranks
+	 * above the core one but below everything added to the container later.
+	 */
+	void publish(DefaultPlexusContainer container) {
+		ClassLoader realm = container.getContainerRealm();
+		container.addPlexusInjector(Collections.emptyList(), binder -> {
+			QualifiedTypeBinder types = new QualifiedTypeBinder(binder);
+			for (String component : components) {
+				Class<?> type;
+				try {
+					type = realm.loadClass(component);
+				} catch (ClassNotFoundException | LinkageError e) {
+					// Sisu skips components it cannot load as well
+					continue;
+				}
+				types.hear(type, RESOURCE);
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "ComponentIndex [components=" + components.size() + ", scanned=" + scanned.size() + "]";
+	}
+
+	/**
+	 * A CRC-32 over every Sisu index file visible to {@code loader}, in class path
+	 * order.
+	 *
+	 * @param named receives the class names they list, or {@code null}
+	 */
+	private static long fingerprint(ClassLoader loader, Set<String> named) throws IOException {
+		CRC32 crc = new CRC32();
+		Enumeration<URL> indexes = loader.getResources(SISU_INDEX);
+		while (indexes.hasMoreElements()) {
+			URLConnection connection = indexes.nextElement().openConnection();
+			connection.setUseCaches(false);
+			byte[] content;
+			try (InputStream in = connection.getInputStream()) {
+				content = in.readAllBytes();
+			}
+			crc.update(content);
+			if (named != null) {
+				for (String line : new String(content, StandardCharsets.UTF_8).split("\\R")) {
+					String name = line.trim();
+					if (!name.isEmpty() && !name.startsWith("#")) {
+						named.add(name);
+					}
+				}
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * The parent of a container realm: hides the Sisu index files of the class
+	 * path behind one listing only the components left to Sisu.
+	 */
+	static final class IndexedClassLoader extends ClassLoader {
+		private final URL reducedIndex;
+		private volatile boolean indexed = true;
+
+		IndexedClassLoader(ClassLoader parent, byte[] reducedIndex) {
+			super(parent);
+			this.reducedIndex = reducedIndex == null ? null : inMemory(reducedIndex);
+		}
+
+		boolean isIndexed() {
+			return this.indexed;
+		}
+
+		/**
+		 * @param indexed {@code false} to show the Sisu index files of the class
+		 *                path again, for a container that has to scan them all
+		 */
+		void setIndexed(boolean indexed) {
+			this.indexed = indexed;
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			if (indexed && SISU_INDEX.equals(name)) {
+				return reducedIndex == null ? Collections.emptyEnumeration()
+						: Collections.enumeration(List.of(reducedIndex));
+			}
+			return super.getResources(name);
+		}
+
+		private static URL inMemory(byte[] content) {
+			try {
+				return new URL("mbetter", null, -1, "/" + SISU_INDEX, new URLStreamHandler() {
+					@Override
+					protected URLConnection openConnection(URL url) {
+						return new URLConnection(url) {
+							@Override
+							public void connect() {
+								this.connected = true;
+							}
+
+							@Override
+							public InputStream getInputStream() {
+								return new ByteArrayInputStream(content);
+							}
+						};
+					}
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Generates the index from the class path of this JVM.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: ComponentIndex output");
+			System.exit(2);
+		}
+		ComponentIndex index = generate(ComponentIndex.class.getClassLoader());
+		index.write(Paths.get(args[0]));
+		System.out.println("Indexed " + index.components.size() + " components, " + index.scanned.size()
+				+ " left to scan, in " + args[0]);
+	}
+
+}
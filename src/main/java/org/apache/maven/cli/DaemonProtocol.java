@@ -0,0 +1,89 @@
+package org.apache.maven.cli;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * The wire format spoken between {@link MavenDaemonClient} and
+ * {@link MavenDaemon}. A client sends requests, one at a time, each made of
+ * {@link #MAGIC}, {@link #VERSION}, the token of the daemon, the working
+ * directory and the {@link CliArgsBuilder#writeTo(java.io.DataOutput) binary
+ * form} of the arguments. The daemon answers each with any number of
+ * {@link #OUT} and {@link #ERR} frames, a tag followed by a length-prefixed
+ * chunk of at most {@link #MAX_FRAME_BYTES} bytes of output, and ends it with a
+ * {@link #RESULT} or {@link #FAILURE} frame. A request with the wrong token is
+ * answered with a {@link #FAILURE} frame and the connection is closed.
+ */
+final class DaemonProtocol {
+
+	static final int MAGIC = 0x4d424452;
+	static final int VERSION = 2;
+
+	static final int MAX_FRAME_BYTES = 64 * 1024;
+
+	static final byte OUT = 1;
+	static final byte ERR = 2;
+	/** Exit code, duration in nanoseconds, cold start and cache hit flags. */
+	static final byte RESULT = 3;
+	/** The message of an exception thrown by the executor. */
+	static final byte FAILURE = 4;
+
+	private DaemonProtocol() {
+	}
+
+	static void writeRequest(DataOutput out, String token, String workingDirectory, CliArgsBuilder args)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		WireFormat.writeString(out, token);
+		WireFormat.writeString(out, workingDirectory);
+		args.writeTo(out);
+	}
+
+	/**
+	 * Checks the header of the next request.
+	 *
+	 * @throws IOException if the peer does not speak this protocol version
+	 */
+	static void readHeader(DataInput in) throws IOException {
+		int magic = in.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("Not a daemon request: 0x" + Integer.toHexString(magic));
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported protocol version " + version);
+		}
+	}
+
+	/**
+	 * Reads the token of a request, which follows the header.
+	 *
+	 * @return whether it is {@code token}
+	 */
+	static boolean readToken(DataInput in, String token) throws IOException {
+		String presented = WireFormat.readString(in);
+		return presented != null && MessageDigest.isEqual(presented.getBytes(StandardCharsets.UTF_8),
+				token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static void writeResult(DataOutput out, BuildResult result) throws IOException {
+		out.writeByte(RESULT);
+		out.writeInt(result.getExitCode());
+		out.writeLong(result.getDurationNanos());
+		out.writeBoolean(result.isColdStart());
+		out.writeBoolean(result.isCacheHit());
+	}
+
+	static BuildResult readResult(DataInput in) throws IOException {
+		int exitCode = in.readInt();
+		long durationNanos = in.readLong();
+		boolean coldStart = in.readBoolean();
+		boolean cacheHit = in.readBoolean();
+		return new BuildResult(exitCode, durationNanos, coldStart, cacheHit);
+	}
+
+}
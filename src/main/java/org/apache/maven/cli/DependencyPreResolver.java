@@ -0,0 +1,394 @@
+package org.apache.maven.cli;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.DefaultLifecycles;
+import org.apache.maven.lifecycle.Lifecycle;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
+
+/**
+ * Resolves the dependencies and build plugins of the whole reactor in parallel
+ * before the first module is built, instead of one module at a time as the
+ * build reaches them. Attach it to an invocation with
+ * {@link CliArgsBuilder#preResolution(DependencyPreResolver)}.
+ * <p>
+ * The dependency graph of every module and plugin is collected first, then
+ * every artifact in it that is not part of the reactor is resolved, with at
+ * most {@code concurrency} requests in flight per stage. Both stages use the
+ * repository session of the invocation, so {@code --offline},
+ * {@code --update-snapshots} and {@code --no-snapshot-updates} apply exactly
+ * as they do to the build. Failures are only counted: whatever could not be
+ * resolved up front is reported by the build itself.
+ */
+public class DependencyPreResolver {
+
+	private static final String SYSTEM_SCOPE = "system";
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+
+	public static final class Report {
+		private final int projects;
+		private final int collected;
+		private final int artifacts;
+		private final int downloaded;
+		private final int failed;
+		private final long downloadedBytes;
+		private final long collectNanos;
+		private final long resolveNanos;
+
+		Report(int projects, int collected, int artifacts, int downloaded, int failed, long downloadedBytes,
+				long collectNanos, long resolveNanos) {
+			this.projects = projects;
+			this.collected = collected;
+			this.artifacts = artifacts;
+			this.downloaded = downloaded;
+			this.failed = failed;
+			this.downloadedBytes = downloadedBytes;
+			this.collectNanos = collectNanos;
+			this.resolveNanos = resolveNanos;
+		}
+
+		public int getProjects() {
+			return this.projects;
+		}
+
+		/**
+		 * @return the dependency graphs collected, one per module and build plugin
+		 */
+		public int getCollected() {
+			return this.collected;
+		}
+
+		/**
+		 * @return the distinct artifacts resolved, failures included
+		 */
+		public int getArtifacts() {
+			return this.artifacts;
+		}
+
+		/**
+		 * @return the files fetched from remote repositories by both stages: POMs,
+		 *         metadata and artifacts
+		 */
+		public int getDownloaded() {
+			return this.downloaded;
+		}
+
+		public int getFailed() {
+			return this.failed;
+		}
+
+		public long getDownloadedBytes() {
+			return this.downloadedBytes;
+		}
+
+		public long getDuration(TimeUnit unit) {
+			return unit.convert(collectNanos + resolveNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public long getCollectDuration(TimeUnit unit) {
+			return unit.convert(collectNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public long getResolveDuration(TimeUnit unit) {
+			return unit.convert(resolveNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return artifacts resolved per second during the resolve stage
+		 */
+		public double getArtifactsPerSecond() {
+			return resolveNanos == 0 ? 0 : artifacts * 1e9 / resolveNanos;
+		}
+
+		/**
+		 * @return bytes downloaded per second over both stages
+		 */
+		public double getBytesPerSecond() {
+			long nanos = collectNanos + resolveNanos;
+			return nanos == 0 ? 0 : downloadedBytes * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"Report [projects=%d, collected=%d, artifacts=%d, downloaded=%d, failed=%d, bytes=%d, "
+							+ "collectMillis=%d, resolveMillis=%d, artifactsPerSecond=%.1f, bytesPerSecond=%.0f]",
+					projects, collected, artifacts, downloaded, failed, downloadedBytes,
+					getCollectDuration(TimeUnit.MILLISECONDS), getResolveDuration(TimeUnit.MILLISECONDS),
+					getArtifactsPerSecond(), getBytesPerSecond());
+		}
+	}
+
+	private final int concurrency;
+	private volatile Report lastReport;
+
+	public DependencyPreResolver() {
+		this(DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * @param concurrency the number of collect or resolve requests in flight
+	 */
+	public DependencyPreResolver(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		}
+		this.concurrency = concurrency;
+	}
+
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	/**
+	 * @return the report of the most recent invocation, {@code null} before the
+	 *         first one
+	 */
+	public Report getLastReport() {
+		return this.lastReport;
+	}
+
+	/**
+	 * @return a listener pre-resolving the reactor of a single invocation when
+	 *         its session starts
+	 */
+	ExecutionListener newListener() {
+		return new AbstractExecutionListener() {
+			@Override
+			public void sessionStarted(ExecutionEvent event) {
+				lastReport = resolve(event.getSession());
+			}
+		};
+	}
+
+	@SuppressWarnings("deprecation")
+	Report resolve(MavenSession session) {
+		RepositorySystem system;
+		try {
+			system = session.getContainer().lookup(RepositorySystem.class);
+		} catch (ComponentLookupException e) {
+			return new Report(0, 0, 0, 0, 0, 0, 0, 0);
+		}
+		LongAdder downloaded = new LongAdder();
+		LongAdder bytes = new LongAdder();
+		TransferListener transfers = new AbstractTransferListener() {
+			@Override
+			public void transferSucceeded(TransferEvent event) {
+				if (event.getRequestType() != TransferEvent.RequestType.PUT) {
+					downloaded.increment();
+					bytes.add(event.getTransferredBytes());
+				}
+			}
+		};
+		DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession(
+				session.getRepositorySession());
+		repositorySession.setTransferListener(
+				ChainedTransferListener.newInstance(repositorySession.getTransferListener(), transfers));
+		Set<String> phases = phases(session);
+		List<MavenProject> projects = session.getProjects();
+		Set<String> reactor = ConcurrentHashMap.newKeySet();
+		for (MavenProject project : projects) {
+			reactor.add(project.getGroupId() + ':' + project.getArtifactId() + ':' + project.getVersion());
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency, task -> {
+			Thread thread = new Thread(task, "maven-preresolve-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			long start = System.nanoTime();
+			Map<String, ArtifactRequest> requests = new ConcurrentHashMap<String, ArtifactRequest>();
+			List<Future<?>> collects = new ArrayList<Future<?>>();
+			for (MavenProject project : projects) {
+				for (CollectRequest request : collectRequests(project, phases, repositorySession)) {
+					collects.add(pool.submit(() -> collect(system, repositorySession, request, reactor, requests)));
+				}
+			}
+			await(collects);
+			long collected = System.nanoTime();
+
+			LongAdder failed = new LongAdder();
+			List<Future<?>> resolves = new ArrayList<Future<?>>();
+			for (ArtifactRequest request : requests.values()) {
+				resolves.add(pool.submit(() -> {
+					try {
+						system.resolveArtifact(repositorySession, request);
+					} catch (ArtifactResolutionException | RuntimeException e) {
+						failed.increment();
+					}
+				}));
+			}
+			await(resolves);
+			long resolved = System.nanoTime();
+			return new Report(projects.size(), collects.size(), requests.size(), downloaded.intValue(),
+					failed.intValue(), bytes.sum(), collected - start, resolved - collected);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the lifecycle phases the invocation runs, up to and including those
+	 *         it names
+	 */
+	@SuppressWarnings("deprecation")
+	private static Set<String> phases(MavenSession session) {
+		Set<String> phases = new HashSet<String>();
+		DefaultLifecycles lifecycles;
+		try {
+			lifecycles = session.getContainer().lookup(DefaultLifecycles.class);
+		} catch (ComponentLookupException e) {
+			return phases;
+		}
+		for (String task : session.getGoals()) {
+			Lifecycle lifecycle = lifecycles.getPhaseToLifecycleMap().get(task);
+			if (lifecycle != null) {
+				List<String> all = lifecycle.getPhases();
+				phases.addAll(all.subList(0, all.indexOf(task) + 1));
+			}
+		}
+		return phases;
+	}
+
+	/**
+	 * @return one request for the dependencies of {@code project} and one per
+	 *         build plugin with a known version that runs in {@code phases}
+	 */
+	private static List<CollectRequest> collectRequests(MavenProject project, Set<String> phases,
+			RepositorySystemSession session) {
+		ArtifactTypeRegistry types = session.getArtifactTypeRegistry();
+		List<CollectRequest> requests = new ArrayList<CollectRequest>();
+		CollectRequest dependencies = new CollectRequest();
+		Artifact artifact = project.getArtifact();
+		if (artifact != null) {
+			dependencies.setRootArtifact(RepositoryUtils.toArtifact(artifact));
+		}
+		dependencies.setRepositories(project.getRemoteProjectRepositories());
+		for (org.apache.maven.model.Dependency dependency : project.getDependencies()) {
+			if (!SYSTEM_SCOPE.equals(dependency.getScope())) {
+				dependencies.addDependency(RepositoryUtils.toDependency(dependency, types));
+			}
+		}
+		if (project.getDependencyManagement() != null) {
+			for (org.apache.maven.model.Dependency managed : project.getDependencyManagement().getDependencies()) {
+				dependencies.addManagedDependency(RepositoryUtils.toDependency(managed, types));
+			}
+		}
+		requests.add(dependencies);
+		for (Plugin plugin : project.getBuildPlugins()) {
+			if (plugin.getVersion() == null || !runsIn(plugin, phases)) {
+				continue;
+			}
+			CollectRequest request = new CollectRequest();
+			request.setRoot(new Dependency(
+					new DefaultArtifact(plugin.getGroupId(), plugin.getArtifactId(), "jar", plugin.getVersion()),
+					"runtime"));
+			for (org.apache.maven.model.Dependency dependency : plugin.getDependencies()) {
+				if (!SYSTEM_SCOPE.equals(dependency.getScope())) {
+					request.addDependency(RepositoryUtils.toDependency(dependency, types));
+				}
+			}
+			request.setRepositories(project.getRemotePluginRepositories());
+			requests.add(request);
+		}
+		return requests;
+	}
+
+	/**
+	 * @return whether an execution of {@code plugin} is bound to one of
+	 *         {@code phases}; one without a phase may be bound by its mojo, so it
+	 *         counts
+	 */
+	private static boolean runsIn(Plugin plugin, Set<String> phases) {
+		for (PluginExecution execution : plugin.getExecutions()) {
+			if (execution.getPhase() == null || phases.contains(execution.getPhase())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void collect(RepositorySystem system, RepositorySystemSession session, CollectRequest request,
+			Set<String> reactor, Map<String, ArtifactRequest> requests) {
+		CollectResult result;
+		try {
+			result = system.collectDependencies(session, request);
+		} catch (DependencyCollectionException e) {
+			// whatever was collected before the failure is still worth resolving
+			result = e.getResult();
+		} catch (RuntimeException e) {
+			return;
+		}
+		if (result == null || result.getRoot() == null) {
+			return;
+		}
+		List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+		nodes.add(result.getRoot());
+		while (!nodes.isEmpty()) {
+			DependencyNode node = nodes.remove(nodes.size() - 1);
+			nodes.addAll(node.getChildren());
+			Dependency dependency = node.getDependency();
+			if (dependency == null || SYSTEM_SCOPE.equals(dependency.getScope())) {
+				continue;
+			}
+			org.eclipse.aether.artifact.Artifact artifact = dependency.getArtifact();
+			if (reactor.contains(artifact.getGroupId() + ':' + artifact.getArtifactId() + ':' + artifact.getVersion())) {
+				continue;
+			}
+			requests.putIfAbsent(artifact.toString(), new ArtifactRequest(artifact, node.getRepositories(), null));
+		}
+	}
+
+	private static void await(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// counted by the task itself
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+}
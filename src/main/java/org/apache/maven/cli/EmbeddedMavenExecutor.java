@@ -0,0 +1,297 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.Maven;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+
+/**
+ * Runs {@link CliArgsBuilder} invocations in-process against a single embedded
+ * Maven whose container is booted by the first call and reused afterwards.
+ * Invocations on one executor are serialized; the system properties they set
+ * and the output they print are only seen by the invocation itself, so
+ * invocations on different executors can run concurrently. Arguments are
+ * checked by an {@link ArgsValidator} first, which throws an
+ * {@link InvalidArgsException} without starting Maven.
+ */
+public class EmbeddedMavenExecutor implements MavenExecutor, AutoCloseable {
+
+	private static final String DOT_MVN = ".mvn";
+
+	private final WarmMavenCli cli;
+	private ArgsValidator validator = ArgsValidator.defaults();
+	private long coldStartNanos = -1;
+	private long lastInvocationNanos = -1;
+	private long warmInvocationCount;
+	private long warmInvocationNanos;
+	private boolean closed;
+
+	public EmbeddedMavenExecutor() {
+		this(Thread.currentThread().getContextClassLoader());
+	}
+
+	public EmbeddedMavenExecutor(ClassLoader classLoader) {
+		this(classLoader, null);
+	}
+
+	/**
+	 * @param componentIndex the components to bind at boot without scanning their
+	 *                       class files, usually
+	 *                       {@link ComponentIndex#load(ClassLoader)}; {@code null}
+	 *                       scans them all
+	 */
+	public EmbeddedMavenExecutor(ClassLoader classLoader, ComponentIndex componentIndex) {
+		this.cli = componentIndex != null ? new WarmMavenCli(classLoader, componentIndex)
+				: new WarmMavenCli(new ClassWorld("plexus.core", classLoader));
+	}
+
+	@Override
+	public synchronized BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out,
+			PrintStream err) {
+		Objects.requireNonNull(args, "args");
+		if (closed) {
+			throw new IllegalStateException("executor has been closed");
+		}
+		File dir = (workingDirectory != null ? workingDirectory : new File(System.getProperty("user.dir")))
+				.getAbsoluteFile();
+		validator.check(args, dir);
+		PrintStream logFile = openLogFile(dir, args.getLogFile());
+		// MavenCli would redirect System.out and System.err to the -l file for the whole JVM
+		CliArgsBuilder argv = args;
+		if (logFile != null) {
+			argv = args.derive();
+			argv.setLogFile(null);
+		}
+		ThreadTuner tuner = args.getThreadTuner();
+		if (tuner != null && (args.getThreads() == null || args.getThreads().isBlank())) {
+			int recommended = tuner.recommend();
+			if (recommended > 0) {
+				argv = argv == args ? args.derive() : argv;
+				argv.setThreads(Integer.toString(recommended));
+			}
+		}
+		int threads = degreeOfConcurrency(argv.getThreads());
+		CliRequest request = new CliRequest(argv.toArgv(), cli.getClassWorld());
+		request.workingDirectory = dir.getPath();
+		request.multiModuleProjectDirectory = findMultiModuleProjectDirectory(dir, args.getAlternatePomFile());
+
+		boolean coldStart = !cli.isWarm();
+		ClassLoader oldContextClassLoader = Thread.currentThread().getContextClassLoader();
+		long start = System.nanoTime();
+		int exitCode;
+		try {
+			exitCode = OutputRouter.run(logFile != null ? logFile : out, logFile != null ? logFile : err,
+					OutputRouter.threshold(args.isDebug(), args.isQuiet()),
+					() -> SystemPropertiesOverlay.run(dir, () -> doMain(request, args, threads)));
+		} finally {
+			Thread.currentThread().setContextClassLoader(oldContextClassLoader);
+			if (logFile != null) {
+				logFile.close();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		record(coldStart, elapsed);
+		return new BuildResult(exitCode, elapsed, coldStart);
+	}
+
+	private int doMain(CliRequest request, CliArgsBuilder args, int threads) {
+		BuildInstrumentation instrumentation = args.getInstrumentation();
+		DependencyPreResolver preResolution = args.getPreResolution();
+		ThreadTuner tuner = args.getThreadTuner();
+		InvocationContext current = InvocationContext.current();
+		if (current == null && instrumentation == null && preResolution == null && tuner == null) {
+			return cli.doMain(request);
+		}
+		InvocationContext context = current != null ? current.fork() : new InvocationContext();
+		if (preResolution != null) {
+			context.addListener(preResolution.newListener());
+		}
+		if (instrumentation != null) {
+			context.addListener(instrumentation.newListener());
+		}
+		if (tuner != null) {
+			context.addListener(tuner.newListener(threads));
+		}
+		int exitCode = context.run(() -> cli.doMain(request));
+		// with -fn Maven reports success although cancelling failed the projects it had not built
+		return exitCode == 0 && context.isAborted() ? 1 : exitCode;
+	}
+
+	/**
+	 * @return the threads Maven builds with for {@code threads}, {@code 1} if it
+	 *         would reject the value
+	 */
+	private static int degreeOfConcurrency(String threads) {
+		try {
+			return Threads.degreeOfConcurrency(threads, Runtime.getRuntime().availableProcessors());
+		} catch (IllegalArgumentException e) {
+			return 1;
+		}
+	}
+
+	private void record(boolean coldStart, long elapsed) {
+		this.lastInvocationNanos = elapsed;
+		if (coldStart) {
+			if (cli.isWarm()) {
+				this.coldStartNanos = elapsed;
+			}
+		} else {
+			this.warmInvocationCount++;
+			this.warmInvocationNanos += elapsed;
+		}
+	}
+
+	/**
+	 * @return a stream writing to the {@code -l} file, resolved against the
+	 *         working directory, or {@code null} without one
+	 */
+	private static PrintStream openLogFile(File workingDirectory, String logFile) {
+		if (logFile == null || logFile.isBlank()) {
+			return null;
+		}
+		File file = new File(logFile);
+		if (!file.isAbsolute()) {
+			file = new File(workingDirectory, logFile);
+		}
+		try {
+			return new PrintStream(new FileOutputStream(file), false);
+		} catch (FileNotFoundException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Mirrors the {@code mvn} launcher: the nearest ancestor containing a
+	 * {@code .mvn} directory, or the project directory itself.
+	 */
+	static File findMultiModuleProjectDirectory(File workingDirectory, String alternatePomFile) {
+		File start = workingDirectory;
+		if (alternatePomFile != null && !alternatePomFile.isBlank()) {
+			File pom = new File(alternatePomFile);
+			if (!pom.isAbsolute()) {
+				pom = new File(workingDirectory, alternatePomFile);
+			}
+			start = pom.isDirectory() ? pom : pom.getAbsoluteFile().getParentFile();
+		}
+		for (File dir = start; dir != null; dir = dir.getParentFile()) {
+			if (new File(dir, DOT_MVN).isDirectory()) {
+				return dir;
+			}
+		}
+		return start;
+	}
+
+	public synchronized ArgsValidator getValidator() {
+		return this.validator;
+	}
+
+	/**
+	 * Sets the rules every invocation is checked against before Maven starts;
+	 * {@link ArgsValidator#defaults()} unless changed.
+	 */
+	public synchronized void setValidator(ArgsValidator validator) {
+		this.validator = Objects.requireNonNull(validator, "validator");
+	}
+
+	public synchronized boolean isWarm() {
+		return cli.isWarm();
+	}
+
+	/**
+	 * @return {@code true} if the warm container was booted from a
+	 *         {@link ComponentIndex}
+	 */
+	public synchronized boolean isIndexed() {
+		return cli.isIndexed();
+	}
+
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * @return {@code false} once closed, or when the warm container can no longer
+	 *         resolve the Maven component
+	 */
+	public synchronized boolean isHealthy() {
+		if (closed) {
+			return false;
+		}
+		DefaultPlexusContainer container = cli.getContainer();
+		if (container == null) {
+			return true;
+		}
+		try {
+			return container.lookup(Maven.class) != null;
+		} catch (ComponentLookupException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the latency of the invocation that booted the container, or
+	 *         {@code -1} if it has not happened yet
+	 */
+	public synchronized long getColdStartNanos() {
+		return this.coldStartNanos;
+	}
+
+	public synchronized long getLastInvocationNanos() {
+		return this.lastInvocationNanos;
+	}
+
+	public synchronized long getWarmInvocationCount() {
+		return this.warmInvocationCount;
+	}
+
+	/**
+	 * @return the mean latency of invocations that reused the container, or
+	 *         {@code -1} if there were none
+	 */
+	public synchronized long getAverageWarmNanos() {
+		return this.warmInvocationCount == 0 ? -1 : this.warmInvocationNanos / this.warmInvocationCount;
+	}
+
+	/**
+	 * @return the project models kept across invocations and their hit rate
+	 */
+	public ProjectModelCache getModelCache() {
+		return cli.getModelCache();
+	}
+
+	/**
+	 * @return the plugin class realms kept across invocations and how often
+	 *         they were reused
+	 */
+	public SharedPluginRealmCache getPluginRealmCache() {
+		return cli.getPluginRealmCache();
+	}
+
+	WarmMavenCli getCli() {
+		return this.cli;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			cli.dispose();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "EmbeddedMavenExecutor [warm=" + cli.isWarm() + ", coldStartMillis="
+				+ TimeUnit.NANOSECONDS.toMillis(coldStartNanos) + ", warmInvocations=" + warmInvocationCount
+				+ ", averageWarmMillis=" + TimeUnit.NANOSECONDS.toMillis(getAverageWarmNanos()) + "]";
+	}
+
+}
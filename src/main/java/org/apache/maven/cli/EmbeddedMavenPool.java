@@ -0,0 +1,540 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of warm {@link EmbeddedMavenExecutor}s that
+ * {@link CliArgsBuilder} jobs are leased against, so concurrent builds from
+ * one JVM neither serialize on a single container nor boot a new one each.
+ */
+public class EmbeddedMavenPool implements MavenExecutor, AutoCloseable {
+
+	public static class Config {
+		private int maxSize = Runtime.getRuntime().availableProcessors();
+		private long idleTimeoutNanos = TimeUnit.MINUTES.toNanos(10);
+		private int maxBuildsPerInstance = 100;
+		private long leaseTimeoutNanos = -1;
+		private Predicate<EmbeddedMavenExecutor> healthCheck = EmbeddedMavenExecutor::isHealthy;
+		private ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		private ArgsValidator validator = ArgsValidator.defaults();
+		private ComponentIndex componentIndex;
+		private Supplier<EmbeddedMavenExecutor> factory;
+
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+
+		public long getIdleTimeoutNanos() {
+			return this.idleTimeoutNanos;
+		}
+
+		public int getMaxBuildsPerInstance() {
+			return this.maxBuildsPerInstance;
+		}
+
+		public long getLeaseTimeoutNanos() {
+			return this.leaseTimeoutNanos;
+		}
+
+		public Predicate<EmbeddedMavenExecutor> getHealthCheck() {
+			return this.healthCheck;
+		}
+
+		public ClassLoader getClassLoader() {
+			return this.classLoader;
+		}
+
+		public ArgsValidator getValidator() {
+			return this.validator;
+		}
+
+		public ComponentIndex getComponentIndex() {
+			return this.componentIndex;
+		}
+
+		Supplier<EmbeddedMavenExecutor> getFactory() {
+			return this.factory;
+		}
+
+		public Config maxSize(int maxSize) {
+			if (maxSize < 1) {
+				throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		/**
+		 * Idle instances are disposed after this long; zero or less keeps them
+		 * forever.
+		 */
+		public Config idleTimeout(long timeout, TimeUnit unit) {
+			this.idleTimeoutNanos = unit.toNanos(timeout);
+			return this;
+		}
+
+		/**
+		 * Instances are disposed after running this many builds; zero or less never
+		 * recycles them.
+		 */
+		public Config maxBuildsPerInstance(int maxBuilds) {
+			this.maxBuildsPerInstance = maxBuilds;
+			return this;
+		}
+
+		/**
+		 * How long {@link EmbeddedMavenPool#execute} waits for an instance; less than
+		 * zero waits forever.
+		 */
+		public Config leaseTimeout(long timeout, TimeUnit unit) {
+			this.leaseTimeoutNanos = timeout < 0 ? -1 : unit.toNanos(timeout);
+			return this;
+		}
+
+		public Config healthCheck(Predicate<EmbeddedMavenExecutor> healthCheck) {
+			this.healthCheck = Objects.requireNonNull(healthCheck, "healthCheck");
+			return this;
+		}
+
+		public Config classLoader(ClassLoader classLoader) {
+			this.classLoader = classLoader;
+			return this;
+		}
+
+		/**
+		 * The rules every pooled instance checks invocations against.
+		 */
+		public Config validator(ArgsValidator validator) {
+			this.validator = Objects.requireNonNull(validator, "validator");
+			return this;
+		}
+
+		/**
+		 * Boots every instance from {@code componentIndex}, usually
+		 * {@link ComponentIndex#load(ClassLoader)} of the {@link #classLoader}, so
+		 * creating one skips scanning the indexed components; {@code null} scans
+		 * them.
+		 */
+		public Config componentIndex(ComponentIndex componentIndex) {
+			this.componentIndex = componentIndex;
+			return this;
+		}
+
+		/**
+		 * Creates instances in place of the {@link #classLoader} and
+		 * {@link #componentIndex}, so tests can pool executors that do not boot
+		 * Maven; {@code null} restores the default.
+		 */
+		Config factory(Supplier<EmbeddedMavenExecutor> factory) {
+			this.factory = factory;
+			return this;
+		}
+	}
+
+	public static class Metrics {
+		private final int size;
+		private final int idle;
+		private final long leases;
+		private final long hits;
+		private final long coldCreations;
+		private final long recycled;
+		private final long evicted;
+		private final long unhealthy;
+		private final long totalWaitNanos;
+		private final long maxWaitNanos;
+		private final long totalLeaseNanos;
+		private final long maxLeaseNanos;
+
+		Metrics(int size, int idle, long leases, long hits, long coldCreations, long recycled, long evicted,
+				long unhealthy, long totalWaitNanos, long maxWaitNanos, long totalLeaseNanos, long maxLeaseNanos) {
+			this.size = size;
+			this.idle = idle;
+			this.leases = leases;
+			this.hits = hits;
+			this.coldCreations = coldCreations;
+			this.recycled = recycled;
+			this.evicted = evicted;
+			this.unhealthy = unhealthy;
+			this.totalWaitNanos = totalWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+			this.totalLeaseNanos = totalLeaseNanos;
+			this.maxLeaseNanos = maxLeaseNanos;
+		}
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public int getIdle() {
+			return this.idle;
+		}
+
+		public long getLeases() {
+			return this.leases;
+		}
+
+		/**
+		 * @return leases served by an instance that was already warm
+		 */
+		public long getHits() {
+			return this.hits;
+		}
+
+		public long getColdCreations() {
+			return this.coldCreations;
+		}
+
+		public long getRecycled() {
+			return this.recycled;
+		}
+
+		public long getEvicted() {
+			return this.evicted;
+		}
+
+		public long getUnhealthy() {
+			return this.unhealthy;
+		}
+
+		public long getTotalWaitNanos() {
+			return this.totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos() {
+			return this.maxWaitNanos;
+		}
+
+		public long getAverageWaitNanos() {
+			return this.leases == 0 ? 0 : this.totalWaitNanos / this.leases;
+		}
+
+		public long getTotalLeaseNanos() {
+			return this.totalLeaseNanos;
+		}
+
+		public long getMaxLeaseNanos() {
+			return this.maxLeaseNanos;
+		}
+
+		public long getAverageLeaseNanos() {
+			return this.leases == 0 ? 0 : this.totalLeaseNanos / this.leases;
+		}
+
+		public double getHitRatio() {
+			return this.leases == 0 ? 0d : (double) this.hits / this.leases;
+		}
+
+		@Override
+		public String toString() {
+			return "Metrics [size=" + size + ", idle=" + idle + ", leases=" + leases + ", hits=" + hits
+					+ ", coldCreations=" + coldCreations + ", recycled=" + recycled + ", evicted=" + evicted
+					+ ", unhealthy=" + unhealthy + ", averageWaitMillis="
+					+ TimeUnit.NANOSECONDS.toMillis(getAverageWaitNanos()) + ", averageLeaseMillis="
+					+ TimeUnit.NANOSECONDS.toMillis(getAverageLeaseNanos()) + "]";
+		}
+	}
+
+	/**
+	 * Exclusive use of one pooled executor until {@link #close()}.
+	 */
+	public class Lease implements MavenExecutor, AutoCloseable {
+		private final Pooled pooled;
+		private final long leasedAt = System.nanoTime();
+		private boolean released;
+
+		private Lease(Pooled pooled) {
+			this.pooled = pooled;
+		}
+
+		public EmbeddedMavenExecutor getExecutor() {
+			return this.pooled.executor;
+		}
+
+		@Override
+		public BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out, PrintStream err) {
+			if (released) {
+				throw new IllegalStateException("lease has been released");
+			}
+			pooled.builds++;
+			return pooled.executor.execute(args, workingDirectory, out, err);
+		}
+
+		@Override
+		public void close() {
+			if (!released) {
+				released = true;
+				release(pooled, System.nanoTime() - leasedAt);
+			}
+		}
+	}
+
+	private static class Pooled {
+		private final EmbeddedMavenExecutor executor;
+		private int builds;
+		private long idleSince;
+
+		private Pooled(EmbeddedMavenExecutor executor) {
+			this.executor = executor;
+		}
+	}
+
+	private final Config config;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final ArrayDeque<Pooled> idle = new ArrayDeque<Pooled>();
+	private final ScheduledExecutorService evictor;
+	private int size;
+	private boolean closed;
+
+	private final LongAdder leases = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder coldCreations = new LongAdder();
+	private final LongAdder recycled = new LongAdder();
+	private final LongAdder evicted = new LongAdder();
+	private final LongAdder unhealthy = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder totalLeaseNanos = new LongAdder();
+	private final AtomicLong maxLeaseNanos = new AtomicLong();
+
+	public EmbeddedMavenPool() {
+		this(new Config());
+	}
+
+	public EmbeddedMavenPool(Config config) {
+		this.config = Objects.requireNonNull(config, "config");
+		if (config.getIdleTimeoutNanos() > 0) {
+			long period = Math.max(TimeUnit.SECONDS.toNanos(1), config.getIdleTimeoutNanos() / 2);
+			this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "embedded-maven-pool-evictor");
+				t.setDaemon(true);
+				return t;
+			});
+			this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.NANOSECONDS);
+		} else {
+			this.evictor = null;
+		}
+	}
+
+	public Config getConfig() {
+		return this.config;
+	}
+
+	@Override
+	public BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out, PrintStream err) {
+		// rejected before waiting for an instance; the instance checks again for direct leases
+		config.getValidator().check(args, workingDirectory);
+		try (Lease lease = config.getLeaseTimeoutNanos() < 0 ? lease()
+				: lease(config.getLeaseTimeoutNanos(), TimeUnit.NANOSECONDS)) {
+			return lease.execute(args, workingDirectory, out, err);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for an embedded maven instance", e);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	public Lease lease() throws InterruptedException {
+		try {
+			return lease(-1, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param timeout how long to wait for an instance; less than zero waits
+	 *                forever
+	 */
+	public Lease lease(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long start = System.nanoTime();
+		long remaining = timeout < 0 ? Long.MAX_VALUE : unit.toNanos(timeout);
+		Pooled pooled = null;
+		boolean create = false;
+		while (pooled == null) {
+			lock.lockInterruptibly();
+			try {
+				while (!closed && idle.isEmpty() && size >= config.getMaxSize()) {
+					if (timeout < 0) {
+						available.await();
+					} else if (remaining <= 0) {
+						throw new TimeoutException("no embedded maven instance available within " + timeout + " " + unit);
+					} else {
+						remaining = available.awaitNanos(remaining);
+					}
+				}
+				if (closed) {
+					throw new IllegalStateException("pool has been closed");
+				}
+				pooled = idle.pollFirst();
+				if (pooled == null) {
+					size++;
+					create = true;
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (create) {
+				try {
+					EmbeddedMavenExecutor executor = config.getFactory() != null ? config.getFactory().get()
+							: new EmbeddedMavenExecutor(config.getClassLoader(), config.getComponentIndex());
+					executor.setValidator(config.getValidator());
+					pooled = new Pooled(executor);
+				} catch (RuntimeException | Error e) {
+					discarded();
+					throw e;
+				}
+				coldCreations.increment();
+			} else if (!isHealthy(pooled)) {
+				unhealthy.increment();
+				destroy(pooled);
+				pooled = null;
+			} else {
+				hits.increment();
+			}
+		}
+		long waited = System.nanoTime() - start;
+		leases.increment();
+		totalWaitNanos.add(waited);
+		maxWaitNanos.accumulateAndGet(waited, Math::max);
+		return new Lease(pooled);
+	}
+
+	private boolean isHealthy(Pooled pooled) {
+		try {
+			return config.getHealthCheck().test(pooled.executor);
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	private void release(Pooled pooled, long leaseNanos) {
+		totalLeaseNanos.add(leaseNanos);
+		maxLeaseNanos.accumulateAndGet(leaseNanos, Math::max);
+		int maxBuilds = config.getMaxBuildsPerInstance();
+		if (maxBuilds > 0 && pooled.builds >= maxBuilds) {
+			recycled.increment();
+			destroy(pooled);
+			return;
+		}
+		lock.lock();
+		try {
+			if (!closed) {
+				pooled.idleSince = System.nanoTime();
+				idle.addFirst(pooled);
+				available.signal();
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		destroy(pooled);
+	}
+
+	private void destroy(Pooled pooled) {
+		try {
+			pooled.executor.close();
+		} finally {
+			discarded();
+		}
+	}
+
+	private void discarded() {
+		lock.lock();
+		try {
+			size--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Disposes instances that have been idle for longer than the configured idle
+	 * timeout. Runs periodically on its own when the timeout is positive.
+	 */
+	public void evictIdle() {
+		long timeout = config.getIdleTimeoutNanos();
+		if (timeout <= 0) {
+			return;
+		}
+		List<Pooled> expired = new ArrayList<Pooled>();
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			for (Iterator<Pooled> it = idle.descendingIterator(); it.hasNext();) {
+				Pooled pooled = it.next();
+				if (now - pooled.idleSince >= timeout) {
+					it.remove();
+					expired.add(pooled);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		for (Pooled pooled : expired) {
+			evicted.increment();
+			destroy(pooled);
+		}
+	}
+
+	public Metrics getMetrics() {
+		int currentSize;
+		int currentIdle;
+		lock.lock();
+		try {
+			currentSize = size;
+			currentIdle = idle.size();
+		} finally {
+			lock.unlock();
+		}
+		return new Metrics(currentSize, currentIdle, leases.sum(), hits.sum(), coldCreations.sum(), recycled.sum(),
+				evicted.sum(), unhealthy.sum(), totalWaitNanos.sum(), maxWaitNanos.get(), totalLeaseNanos.sum(),
+				maxLeaseNanos.get());
+	}
+
+	/**
+	 * Disposes idle instances immediately; leased ones are disposed when their
+	 * lease is released.
+	 */
+	@Override
+	public void close() {
+		List<Pooled> toClose;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			toClose = new ArrayList<Pooled>(idle);
+			idle.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		for (Pooled pooled : toClose) {
+			destroy(pooled);
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.NoLocalRepositoryManagerException;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.localrepo.LocalRepositoryManagerFactory;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * Puts a {@link LocalRepositoryIndex} in front of the enhanced local
+ * repository manager, for local repositories that have an index. An indexed
+ * artifact is answered with a single existence check instead of also reading
+ * and locking its {@code _remote.repositories}; everything else is passed
+ * through and the files it finds or installs are added to the index, which is
+ * written back when the embedder shuts down.
+ */
+class IndexedLocalRepositoryManagerFactory implements LocalRepositoryManagerFactory {
+
+	private static final String TRACKING_FILENAME = "aether.enhancedLocalRepository.trackingFilename";
+	private static final String LOCAL_REPOSITORY_KEY = "";
+
+	/** Ahead of the enhanced manager the index is built from. */
+	private static final float PRIORITY = 20;
+
+	/** Pending index updates that trigger writing the index before shutdown. */
+	private static final int FLUSH_THRESHOLD = 4096;
+
+	private static class IndexedLocalRepositoryManager implements LocalRepositoryManager {
+		private final LocalRepositoryManager delegate;
+		private final LocalRepositoryIndex index;
+		private final File basedir;
+
+		private IndexedLocalRepositoryManager(LocalRepositoryManager delegate, LocalRepositoryIndex index) {
+			this.delegate = delegate;
+			this.index = index;
+			this.basedir = delegate.getRepository().getBasedir();
+		}
+
+		@Override
+		public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+			String path = delegate.getPathForRemoteArtifact(request.getArtifact(), null, request.getContext());
+			LocalRepositoryIndex.Entry entry = index.find(path);
+			File file = new File(basedir, path);
+			if (entry == null || !file.isFile()) {
+				LocalArtifactResult result = delegate.find(session, request);
+				if (result.getFile() != null || entry != null) {
+					update(path);
+				}
+				return result;
+			}
+			LocalArtifactResult result = new LocalArtifactResult(request);
+			result.setFile(file);
+			List<String> repositories = entry.getRepositories();
+			if (repositories == null || repositories.contains(LOCAL_REPOSITORY_KEY)) {
+				// untracked files are assumed to be built locally, just like the enhanced manager does
+				result.setAvailable(true);
+				return result;
+			}
+			for (RemoteRepository repository : request.getRepositories()) {
+				if (repository.isRepositoryManager()) {
+					// keyed by a digest of the mirrored repositories, only the enhanced manager knows it
+					return delegate.find(session, request);
+				}
+				if (repositories.contains(repository.getId())) {
+					result.setAvailable(true);
+					result.setRepository(repository);
+					return result;
+				}
+			}
+			// the tracking file may have been updated since the file was indexed
+			result = delegate.find(session, request);
+			if (result.isAvailable()) {
+				update(path);
+			}
+			return result;
+		}
+
+		@Override
+		public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+			delegate.add(session, request);
+			Artifact artifact = request.getArtifact();
+			update(request.getRepository() == null ? delegate.getPathForLocalArtifact(artifact)
+					: delegate.getPathForRemoteArtifact(artifact, request.getRepository(), null));
+			if (index.getPendingUpdates() >= FLUSH_THRESHOLD) {
+				flush(index);
+			}
+		}
+
+		private void update(String path) {
+			try {
+				index.update(path);
+			} catch (UncheckedIOException e) {
+				// stays as indexed, the next rebuild or check finds it
+			}
+		}
+
+		@Override
+		public LocalRepository getRepository() {
+			return delegate.getRepository();
+		}
+
+		@Override
+		public String getPathForLocalArtifact(Artifact artifact) {
+			return delegate.getPathForLocalArtifact(artifact);
+		}
+
+		@Override
+		public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository, String context) {
+			return delegate.getPathForRemoteArtifact(artifact, repository, context);
+		}
+
+		@Override
+		public String getPathForLocalMetadata(Metadata metadata) {
+			return delegate.getPathForLocalMetadata(metadata);
+		}
+
+		@Override
+		public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository, String context) {
+			return delegate.getPathForRemoteMetadata(metadata, repository, context);
+		}
+
+		@Override
+		public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+			return delegate.find(session, request);
+		}
+
+		@Override
+		public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+			delegate.add(session, request);
+		}
+
+		@Override
+		public String toString() {
+			return delegate.toString();
+		}
+	}
+
+	private final LocalRepositoryManagerFactory delegate;
+	private final Map<Path, LocalRepositoryIndex> indexes = new ConcurrentHashMap<Path, LocalRepositoryIndex>();
+
+	IndexedLocalRepositoryManagerFactory(LocalRepositoryManagerFactory delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public LocalRepositoryManager newInstance(RepositorySystemSession session, LocalRepository repository)
+			throws NoLocalRepositoryManagerException {
+		LocalRepositoryManager manager = delegate.newInstance(session, repository);
+		Path basedir = manager.getRepository().getBasedir().toPath();
+		String trackingFilename = ConfigUtils.getString(session, LocalRepositoryIndex.TRACKING_FILE,
+				TRACKING_FILENAME);
+		if (!LocalRepositoryIndex.TRACKING_FILE.equals(trackingFilename) || !LocalRepositoryIndex.exists(basedir)) {
+			return manager;
+		}
+		LocalRepositoryIndex index;
+		try {
+			index = indexes.computeIfAbsent(basedir, dir -> {
+				try {
+					return LocalRepositoryIndex.open(dir);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			return manager;
+		}
+		return new IndexedLocalRepositoryManager(manager, index);
+	}
+
+	@Override
+	public float getPriority() {
+		return PRIORITY;
+	}
+
+	/**
+	 * @return the index of every repository used so far
+	 */
+	Map<Path, LocalRepositoryIndex> getIndexes() {
+		return this.indexes;
+	}
+
+	/**
+	 * Writes the pending updates of every index; failures leave the previous
+	 * index file in place.
+	 */
+	void flush() {
+		for (LocalRepositoryIndex index : indexes.values()) {
+			flush(index);
+		}
+	}
+
+	private static void flush(LocalRepositoryIndex index) {
+		try {
+			index.flush();
+		} catch (IOException | UncheckedIOException e) {
+			// the updates stay pending and are retried by the next flush
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.apache.maven.cli;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when an {@link ArgsValidator} rejects an invocation before Maven is
+ * started.
+ */
+public class InvalidArgsException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient List<ArgsValidator.Violation> violations;
+
+	public InvalidArgsException(List<ArgsValidator.Violation> violations) {
+		super(violations.stream().map(String::valueOf).collect(Collectors.joining("; ")));
+		this.violations = Collections.unmodifiableList(violations);
+	}
+
+	public List<ArgsValidator.Violation> getViolations() {
+		return this.violations;
+	}
+
+}
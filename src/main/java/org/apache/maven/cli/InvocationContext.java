@@ -0,0 +1,127 @@
+package org.apache.maven.cli;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+
+/**
+ * State of one embedded invocation that has to reach Maven's execution
+ * listener: a cooperative cancellation flag and additional listeners. It is
+ * bound to the thread that calls {@link MavenExecutor#execute}; the embedded
+ * executor picks it up when Maven publishes the execution request, so it
+ * applies to every thread of a parallel build.
+ */
+final class InvocationContext {
+
+	private static final ThreadLocal<InvocationContext> CURRENT = new ThreadLocal<InvocationContext>();
+
+	private final InvocationContext parent;
+	private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<ExecutionListener>();
+	private volatile boolean cancelled;
+	private volatile boolean aborted;
+
+	InvocationContext() {
+		this(null);
+	}
+
+	private InvocationContext(InvocationContext parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * @return the context bound to the calling thread, or {@code null}
+	 */
+	static InvocationContext current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return a context for a single invocation made on behalf of this one: it is
+	 *         cancelled along with this context and reports to this context's
+	 *         listeners before its own
+	 */
+	InvocationContext fork() {
+		return new InvocationContext(this);
+	}
+
+	/**
+	 * Runs {@code action} with this context bound to the calling thread.
+	 */
+	<T> T run(Supplier<T> action) {
+		InvocationContext previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return action.get();
+		} finally {
+			if (previous != null) {
+				CURRENT.set(previous);
+			} else {
+				CURRENT.remove();
+			}
+		}
+	}
+
+	InvocationContext addListener(ExecutionListener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Makes the build fail before its next project or mojo starts.
+	 */
+	void cancel() {
+		this.cancelled = true;
+	}
+
+	boolean isCancelled() {
+		return this.cancelled || (this.parent != null && this.parent.isCancelled());
+	}
+
+	/**
+	 * @return {@code true} if a listener of this context has failed a project or
+	 *         mojo because the build was cancelled
+	 */
+	boolean isAborted() {
+		return this.aborted;
+	}
+
+	/**
+	 * @return a listener that reports to this context's listeners, aborts started
+	 *         projects and mojos once cancelled and then forwards to
+	 *         {@code delegate}
+	 */
+	ExecutionListener wrap(ExecutionListener delegate) {
+		List<ExecutionListener> listeners = new ArrayList<ExecutionListener>();
+		for (InvocationContext context = this; context != null; context = context.parent) {
+			listeners.addAll(0, context.listeners);
+		}
+		return (ExecutionListener) Proxy.newProxyInstance(ExecutionListener.class.getClassLoader(),
+				new Class<?>[] { ExecutionListener.class }, (proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						return method.invoke(this, args);
+					}
+					ExecutionEvent.Type type = ((ExecutionEvent) args[0]).getType();
+					if (isCancelled() && (type == ExecutionEvent.Type.ProjectStarted
+							|| type == ExecutionEvent.Type.MojoStarted)) {
+						aborted = true;
+						throw new CancellationException("build cancelled");
+					}
+					try {
+						for (ExecutionListener listener : listeners) {
+							method.invoke(listener, args);
+						}
+						return delegate != null ? method.invoke(delegate, args) : null;
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+}
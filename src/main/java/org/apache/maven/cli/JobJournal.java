@@ -0,0 +1,541 @@
+package org.apache.maven.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A durable queue of {@link CliArgsBuilder} jobs. Every job is appended once,
+ * in the {@link CliArgsBuilder#writeTo(java.io.DataOutput) binary form} of its
+ * arguments, and every change of its {@link State} is appended as a small
+ * record after it, so nothing is ever rewritten in place.
+ * <p>
+ * The journal is a directory of fixed-size, memory-mapped segments; a new one
+ * is started when the current one is full. Opening a journal replays the
+ * segments without decoding any arguments, which happens on the first
+ * {@link Job#getArgs()}; jobs that were running when the journal was last
+ * closed are queued again. Done jobs are only kept on disk until
+ * {@link #compact()} copies the unfinished jobs of all full segments into the
+ * current one and deletes those segments, which happens on its own whenever
+ * most of the jobs in full segments are done.
+ * <p>
+ * Records reach the operating system as they are appended, so they survive the
+ * process; {@link #sync()} also forces them to the device. Thread-safe.
+ */
+public class JobJournal implements AutoCloseable {
+
+	public enum State {
+		QUEUED, RUNNING, DONE
+	}
+
+	/**
+	 * A job that is not done, as of the moment it was looked up.
+	 */
+	public final class Job {
+		private final long id;
+		private final long enqueuedAt;
+		private final String workingDirectory;
+		private Segment segment;
+		private int argsOffset;
+		private int argsLength;
+		private CliArgsBuilder args;
+		private State state = State.QUEUED;
+
+		private Job(long id, long enqueuedAt, String workingDirectory) {
+			this.id = id;
+			this.enqueuedAt = enqueuedAt;
+			this.workingDirectory = workingDirectory;
+		}
+
+		public long getId() {
+			return this.id;
+		}
+
+		/**
+		 * @return when the job was enqueued, in milliseconds since the epoch
+		 */
+		public long getEnqueuedAt() {
+			return this.enqueuedAt;
+		}
+
+		/**
+		 * @return the directory the job runs from, or {@code null} for the default
+		 */
+		public File getWorkingDirectory() {
+			return workingDirectory != null ? new File(workingDirectory) : null;
+		}
+
+		public State getState() {
+			synchronized (JobJournal.this) {
+				return this.state;
+			}
+		}
+
+		/**
+		 * @return the frozen arguments, decoded from the journal on first access
+		 */
+		public CliArgsBuilder getArgs() {
+			synchronized (JobJournal.this) {
+				if (this.args == null) {
+					byte[] bytes = new byte[argsLength];
+					segment.buffer.duplicate().position(argsOffset).get(bytes);
+					try {
+						this.args = CliArgsBuilder.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)))
+								.freeze();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return this.args;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Job [id=" + id + ", state=" + getState() + ", workingDirectory=" + workingDirectory + "]";
+		}
+	}
+
+	private static final class Segment {
+		private final long sequence;
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private int position;
+		/** Jobs whose enqueue record is in this segment, and how many are not done. */
+		private int jobs;
+		private int live;
+
+		private Segment(long sequence, Path file, MappedByteBuffer buffer) {
+			this.sequence = sequence;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	static final String SEGMENT_SUFFIX = ".journal";
+	public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+	private static final int MAGIC = 0x4d424a4a;
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	/** Record length before and CRC-32 after the body. */
+	private static final int FRAMING = 8;
+	private static final byte ENQUEUE = 1;
+	private static final byte TRANSITION = 2;
+	private static final State[] STATES = State.values();
+
+	private final Path directory;
+	private final int segmentBytes;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final TreeMap<Long, Job> jobs = new TreeMap<Long, Job>();
+	private long nextId = 1;
+	private long completed;
+	private boolean compacting;
+	private boolean closed;
+
+	public JobJournal(File directory) {
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param segmentBytes the size of each segment file; a single job has to fit
+	 *                     into one
+	 */
+	public JobJournal(File directory, int segmentBytes) {
+		if (segmentBytes <= HEADER + FRAMING) {
+			throw new IllegalArgumentException("segment size must exceed " + (HEADER + FRAMING) + " bytes");
+		}
+		this.directory = directory.toPath().toAbsolutePath();
+		this.segmentBytes = segmentBytes;
+		try {
+			Files.createDirectories(this.directory);
+			replay();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void replay() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		for (Path file : files) {
+			Segment segment = map(file, -1);
+			if (segment == null) {
+				continue;
+			}
+			segments.add(segment);
+			scan(segment);
+		}
+		for (Job job : jobs.values()) {
+			if (job.state == State.RUNNING) {
+				job.state = State.QUEUED;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of {@code segment} up to the first empty or torn one,
+	 * which is where appending continues.
+	 */
+	private void scan(Segment segment) {
+		MappedByteBuffer buffer = segment.buffer;
+		int position = HEADER;
+		CRC32 crc = new CRC32();
+		while (position + FRAMING <= buffer.capacity()) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || position + FRAMING + length > buffer.capacity()) {
+				break;
+			}
+			int body = position + 4;
+			crc.reset();
+			crc.update(buffer.duplicate().position(body).limit(body + length));
+			if ((int) crc.getValue() != buffer.getInt(body + length)) {
+				break;
+			}
+			byte kind = buffer.get(body);
+			long id = buffer.getLong(body + 1);
+			nextId = Math.max(nextId, id + 1);
+			if (kind == ENQUEUE) {
+				long enqueuedAt = buffer.getLong(body + 9);
+				int directoryLength = buffer.getInt(body + 17);
+				String workingDirectory = null;
+				if (directoryLength >= 0) {
+					byte[] bytes = new byte[directoryLength];
+					buffer.duplicate().position(body + 21).get(bytes);
+					workingDirectory = new String(bytes, StandardCharsets.UTF_8);
+				}
+				int argsOffset = body + 21 + Math.max(0, directoryLength);
+				Job replaced = jobs.get(id);
+				if (replaced != null) {
+					// copied by a compaction that could not delete the old segment
+					replaced.segment.live--;
+				}
+				Job job = new Job(id, enqueuedAt, workingDirectory);
+				place(job, segment, argsOffset, body + length - argsOffset);
+				jobs.put(id, job);
+			} else if (kind == TRANSITION) {
+				Job job = jobs.get(id);
+				if (job != null) {
+					transition(job, STATES[buffer.get(body + 9)]);
+				}
+			}
+			position = body + length + 4;
+		}
+		segment.position = position;
+	}
+
+	private void place(Job job, Segment segment, int argsOffset, int argsLength) {
+		job.segment = segment;
+		job.argsOffset = argsOffset;
+		job.argsLength = argsLength;
+		segment.jobs++;
+		segment.live++;
+	}
+
+	private void transition(Job job, State state) {
+		job.state = state;
+		if (state == State.DONE) {
+			jobs.remove(job.id);
+			job.segment.live--;
+			completed++;
+		}
+	}
+
+	/**
+	 * @param sequence the sequence number of a new segment, or {@code -1} to map
+	 *                 an existing one
+	 * @return {@code null} for an existing file that is not a segment
+	 */
+	private Segment map(Path file, long sequence) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long size = sequence < 0 ? channel.size() : segmentBytes;
+			if (size < HEADER) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (sequence < 0) {
+				if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+					return null;
+				}
+				return new Segment(buffer.getLong(8), file, buffer);
+			}
+			buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, sequence);
+			Segment segment = new Segment(sequence, file, buffer);
+			segment.position = HEADER;
+			return segment;
+		}
+	}
+
+	private Segment active() throws IOException {
+		if (segments.isEmpty()) {
+			return roll();
+		}
+		return segments.get(segments.size() - 1);
+	}
+
+	private Segment roll() throws IOException {
+		long sequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).sequence + 1;
+		if (!segments.isEmpty()) {
+			segments.get(segments.size() - 1).buffer.force();
+		}
+		Segment segment = map(directory.resolve(String.format("%016x", sequence) + SEGMENT_SUFFIX), sequence);
+		segments.add(segment);
+		return segment;
+	}
+
+	/**
+	 * Appends a record with the given body, starting a new segment if it does not
+	 * fit into the current one.
+	 *
+	 * @return the offset of the body
+	 */
+	private int append(byte[] body, Segment[] written) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("journal has been closed");
+		}
+		if (HEADER + FRAMING + body.length > segmentBytes) {
+			throw new IllegalArgumentException("record of " + body.length + " bytes exceeds the segment size");
+		}
+		Segment segment = active();
+		if (segment.position + FRAMING + body.length > segment.buffer.capacity()) {
+			segment = roll();
+			if (!compacting && shouldCompact()) {
+				compact();
+				segment = active();
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		MappedByteBuffer buffer = segment.buffer;
+		int position = segment.position;
+		buffer.duplicate().position(position + 4).put(body);
+		buffer.putInt(position + 4 + body.length, (int) crc.getValue());
+		// the length goes in last, so a torn record is never mistaken for a complete one
+		buffer.putInt(position, body.length);
+		segment.position = position + FRAMING + body.length;
+		written[0] = segment;
+		return position + 4;
+	}
+
+	/**
+	 * Appends a job in the {@link State#QUEUED} state.
+	 *
+	 * @param workingDirectory the directory it runs from, or {@code null}
+	 * @return the id of the job
+	 */
+	public synchronized long enqueue(CliArgsBuilder args, File workingDirectory) {
+		long id = nextId++;
+		long now = System.currentTimeMillis();
+		String dir = workingDirectory != null ? workingDirectory.getAbsolutePath() : null;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			DataOutputStream data = new DataOutputStream(bytes);
+			int argsStart = writeEnqueue(data, id, now, dir);
+			args.writeTo(data);
+			byte[] body = bytes.toByteArray();
+			Segment[] written = new Segment[1];
+			int offset = append(body, written);
+			Job job = new Job(id, now, dir);
+			job.args = args.freeze();
+			place(job, written[0], offset + argsStart, body.length - argsStart);
+			jobs.put(id, job);
+			return id;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the offset of the arguments within the body
+	 */
+	private static int writeEnqueue(DataOutputStream data, long id, long enqueuedAt, String workingDirectory)
+			throws IOException {
+		data.writeByte(ENQUEUE);
+		data.writeLong(id);
+		data.writeLong(enqueuedAt);
+		if (workingDirectory == null) {
+			data.writeInt(-1);
+		} else {
+			byte[] dir = workingDirectory.getBytes(StandardCharsets.UTF_8);
+			data.writeInt(dir.length);
+			data.write(dir);
+		}
+		return data.size();
+	}
+
+	public void markRunning(long id) {
+		update(id, State.RUNNING);
+	}
+
+	public void markDone(long id) {
+		update(id, State.DONE);
+	}
+
+	/**
+	 * Puts a running job back into the queue, for example after its build was
+	 * cancelled.
+	 */
+	public void requeue(long id) {
+		update(id, State.QUEUED);
+	}
+
+	private synchronized void update(long id, State state) {
+		Job job = jobs.get(id);
+		if (job == null) {
+			throw new IllegalArgumentException("no unfinished job " + id);
+		}
+		try {
+			appendTransition(id, state);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		transition(job, state);
+	}
+
+	private void appendTransition(long id, State state) throws IOException {
+		byte[] body = ByteBuffer.allocate(10).put(TRANSITION).putLong(id).put((byte) state.ordinal()).array();
+		append(body, new Segment[1]);
+	}
+
+	/**
+	 * @return the unfinished job with {@code id}, or {@code null} if it is done or
+	 *         unknown
+	 */
+	public synchronized Job get(long id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * @return the queued jobs, oldest first
+	 */
+	public synchronized List<Job> queued() {
+		List<Job> queued = new ArrayList<Job>();
+		for (Job job : jobs.values()) {
+			if (job.state == State.QUEUED) {
+				queued.add(job);
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * @return the jobs that are not done
+	 */
+	public synchronized int size() {
+		return jobs.size();
+	}
+
+	/**
+	 * @return jobs marked done since the journal was opened, including those
+	 *         replayed as done
+	 */
+	public synchronized long getCompleted() {
+		return this.completed;
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	private boolean shouldCompact() {
+		int jobsInFull = 0;
+		int liveInFull = 0;
+		for (int i = 0; i < segments.size() - 1; i++) {
+			jobsInFull += segments.get(i).jobs;
+			liveInFull += segments.get(i).live;
+		}
+		return segments.size() > 1 && liveInFull * 2 <= jobsInFull;
+	}
+
+	/**
+	 * Copies the unfinished jobs of every full segment into the current one and
+	 * deletes the full segments.
+	 */
+	public synchronized void compact() {
+		if (segments.size() < 2) {
+			return;
+		}
+		compacting = true;
+		try {
+			List<Segment> full = new ArrayList<Segment>(segments.subList(0, segments.size() - 1));
+			for (Job job : jobs.values()) {
+				if (!full.contains(job.segment)) {
+					continue;
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + job.argsLength);
+				DataOutputStream data = new DataOutputStream(bytes);
+				int argsStart = writeEnqueue(data, job.id, job.enqueuedAt, job.workingDirectory);
+				byte[] args = new byte[job.argsLength];
+				job.segment.buffer.duplicate().position(job.argsOffset).get(args);
+				data.write(args);
+				byte[] body = bytes.toByteArray();
+				Segment[] written = new Segment[1];
+				int offset = append(body, written);
+				job.segment.live--;
+				place(job, written[0], offset + argsStart, args.length);
+				if (job.state != State.QUEUED) {
+					appendTransition(job.id, job.state);
+				}
+			}
+			active().buffer.force();
+			for (Segment segment : full) {
+				segments.remove(segment);
+				try {
+					Files.deleteIfExists(segment.file);
+				} catch (IOException e) {
+					// replaying it is harmless, its jobs were copied; the next compaction retries
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			compacting = false;
+		}
+	}
+
+	/**
+	 * Forces every appended record to the storage device.
+	 */
+	public synchronized void sync() {
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			sync();
+			closed = true;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "JobJournal [directory=" + directory + ", unfinished=" + jobs.size() + ", completed=" + completed
+				+ ", segments=" + segments.size() + "]";
+	}
+
+}
@@ -0,0 +1,745 @@
+package org.apache.maven.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * A memory-mapped index of a local repository: every artifact file with its
+ * size, modification time, SHA-1 (from its {@code .sha1} file) and the
+ * repositories {@code _remote.repositories} says it came from. Lookups are a
+ * binary search over the mapped file, without touching the repository.
+ * <p>
+ * The index is created by {@link #rebuild(Path)}. Afterwards it is kept up to
+ * date incrementally: {@link #update(String)} re-reads a single file into an
+ * in-memory overlay that {@link #flush()} merges into a new index file.
+ * {@link #check(boolean)} compares the index with the repository. Both are
+ * also available from the command line:
+ *
+ * <pre>
+ * LocalRepositoryIndex rebuild|check [--checksums] [localRepository]
+ * </pre>
+ *
+ * Thread-safe.
+ */
+public class LocalRepositoryIndex {
+
+	static final String INDEX_FILE = "_local-repository.idx";
+	static final String TRACKING_FILE = "_remote.repositories";
+
+	private static final int MAGIC = 0x4c524958;
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int RECORD = 40;
+	private static final int SHA1_LENGTH = 20;
+	private static final String[] SIDECAR_SUFFIXES = { ".sha1", ".md5", ".sha256", ".sha512", ".lastUpdated",
+			".part", ".lock" };
+
+	public static final class Entry {
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final byte[] sha1;
+		private final List<String> repositories;
+
+		Entry(String path, long size, long lastModified, byte[] sha1, List<String> repositories) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha1 = sha1;
+			this.repositories = repositories;
+		}
+
+		/**
+		 * @return the path relative to the repository, with {@code /} separators
+		 */
+		public String getPath() {
+			return this.path;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		public long getLastModified() {
+			return this.lastModified;
+		}
+
+		/**
+		 * @return the SHA-1 recorded next to the file, {@code null} if there is none
+		 */
+		public String getSha1() {
+			return sha1 == null ? null : SourceFingerprint.hex(sha1);
+		}
+
+		/**
+		 * @return the ids of the repositories the file was downloaded from, the empty
+		 *         string for a local install; {@code null} if the file is not tracked
+		 */
+		public List<String> getRepositories() {
+			return this.repositories;
+		}
+
+		private boolean sameAs(Entry other) {
+			return size == other.size && lastModified == other.lastModified && Arrays.equals(sha1, other.sha1)
+					&& (repositories == null ? other.repositories == null : repositories.equals(other.repositories));
+		}
+
+		@Override
+		public String toString() {
+			return path + " [size=" + size + ", sha1=" + getSha1() + ", repositories=" + repositories + "]";
+		}
+	}
+
+	public static final class Report {
+		private final List<String> missing = new ArrayList<String>();
+		private final List<String> unindexed = new ArrayList<String>();
+		private final List<String> changed = new ArrayList<String>();
+		private final List<String> corrupt = new ArrayList<String>();
+
+		/**
+		 * @return indexed files that no longer exist
+		 */
+		public List<String> getMissing() {
+			return this.missing;
+		}
+
+		/**
+		 * @return files that are not in the index
+		 */
+		public List<String> getUnindexed() {
+			return this.unindexed;
+		}
+
+		/**
+		 * @return files whose size, modification time, checksum file or tracking
+		 *         differs from the index
+		 */
+		public List<String> getChanged() {
+			return this.changed;
+		}
+
+		/**
+		 * @return files whose content does not match their SHA-1, only filled when
+		 *         checksums are verified
+		 */
+		public List<String> getCorrupt() {
+			return this.corrupt;
+		}
+
+		public boolean isConsistent() {
+			return missing.isEmpty() && unindexed.isEmpty() && changed.isEmpty() && corrupt.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Report [missing=" + missing.size() + ", unindexed=" + unindexed.size() + ", changed="
+					+ changed.size() + ", corrupt=" + corrupt.size() + "]";
+		}
+	}
+
+	/** Marks a path removed in the overlay. */
+	private static final Entry REMOVED = new Entry(null, -1, -1, null, null);
+
+	private final Path repository;
+	private final Map<String, Entry> overlay = new ConcurrentHashMap<String, Entry>();
+	private volatile ByteBuffer buffer;
+
+	private LocalRepositoryIndex(Path repository, ByteBuffer buffer) {
+		this.repository = repository;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @return the index of {@code repository}, empty if it has not been built
+	 * @throws IOException if the index file exists but cannot be read
+	 */
+	public static LocalRepositoryIndex open(Path repository) throws IOException {
+		Path file = repository.resolve(INDEX_FILE);
+		return new LocalRepositoryIndex(repository.toAbsolutePath(), Files.isRegularFile(file) ? read(file) : null);
+	}
+
+	/**
+	 * @return whether {@code repository} has an index file
+	 */
+	public static boolean exists(Path repository) {
+		return Files.isRegularFile(repository.resolve(INDEX_FILE));
+	}
+
+	/**
+	 * Indexes every file of {@code repository} and replaces its index file.
+	 */
+	public static LocalRepositoryIndex rebuild(Path repository) throws IOException {
+		Path root = repository.toAbsolutePath();
+		TreeMap<byte[], Entry> entries = new TreeMap<byte[], Entry>(LocalRepositoryIndex::compare);
+		for (Entry entry : scan(root)) {
+			entries.put(utf8(entry.path), entry);
+		}
+		write(root, entries.values());
+		return open(root);
+	}
+
+	private static ByteBuffer read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not a local repository index: " + file);
+			}
+			return buffer;
+		}
+	}
+
+	private static int count(ByteBuffer buffer) {
+		return buffer == null ? 0 : buffer.getInt(8);
+	}
+
+	public Path getRepository() {
+		return this.repository;
+	}
+
+	/**
+	 * @return the number of indexed files, including pending updates
+	 */
+	public int size() {
+		ByteBuffer buffer = this.buffer;
+		int count = count(buffer);
+		int size = count;
+		for (Map.Entry<String, Entry> pending : overlay.entrySet()) {
+			boolean indexed = indexOf(buffer, count, utf8(pending.getKey())) >= 0;
+			if (pending.getValue() == REMOVED) {
+				size -= indexed ? 1 : 0;
+			} else {
+				size += indexed ? 0 : 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param path relative to the repository, with {@code /} separators
+	 * @return the indexed file, {@code null} if it is not in the index
+	 */
+	public Entry find(String path) {
+		Entry pending = overlay.get(path);
+		if (pending != null) {
+			return pending == REMOVED ? null : pending;
+		}
+		ByteBuffer buffer = this.buffer;
+		int index = indexOf(buffer, count(buffer), utf8(path));
+		return index < 0 ? null : entry(buffer, index);
+	}
+
+	/**
+	 * @return the versions of an artifact that have at least one file in the
+	 *         repository, in ascending order
+	 */
+	public List<String> getVersions(String groupId, String artifactId) {
+		String prefix = groupId.replace('.', '/') + '/' + artifactId + '/';
+		byte[] key = utf8(prefix);
+		Set<String> versions = new LinkedHashSet<String>();
+		ByteBuffer buffer = this.buffer;
+		int count = count(buffer);
+		for (int i = lowerBound(buffer, count, key); i < count; i++) {
+			String path = path(buffer, i);
+			if (!path.startsWith(prefix)) {
+				break;
+			}
+			if (!overlay.containsKey(path)) {
+				addVersion(versions, path, prefix, artifactId);
+			}
+		}
+		for (Map.Entry<String, Entry> pending : overlay.entrySet()) {
+			if (pending.getValue() != REMOVED && pending.getKey().startsWith(prefix)) {
+				addVersion(versions, pending.getKey(), prefix, artifactId);
+			}
+		}
+		List<String> sorted = new ArrayList<String>(versions);
+		sorted.sort((a, b) -> new ComparableVersion(a).compareTo(new ComparableVersion(b)));
+		return sorted;
+	}
+
+	private static void addVersion(Set<String> versions, String path, String prefix, String artifactId) {
+		int slash = path.indexOf('/', prefix.length());
+		if (slash > prefix.length() && path.indexOf('/', slash + 1) < 0
+				&& path.startsWith(artifactId + '-', slash + 1)) {
+			versions.add(path.substring(prefix.length(), slash));
+		}
+	}
+
+	/**
+	 * Re-reads a single file into the index, or drops it if it no longer exists.
+	 * Takes effect immediately and is persisted by the next {@link #flush()}.
+	 *
+	 * @param path relative to the repository, with {@code /} separators
+	 */
+	public void update(String path) {
+		Path file = repository.resolve(path);
+		Entry entry;
+		try {
+			entry = entry(path, file, Files.readAttributes(file, BasicFileAttributes.class),
+					tracking(file.getParent()));
+		} catch (NoSuchFileException e) {
+			entry = REMOVED;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Entry indexed = find(path);
+		if (entry == REMOVED ? indexed != null : indexed == null || !indexed.sameAs(entry)) {
+			overlay.put(path, entry);
+		}
+	}
+
+	/**
+	 * @return the number of updates not yet written to the index file
+	 */
+	public int getPendingUpdates() {
+		return overlay.size();
+	}
+
+	/**
+	 * Merges the pending updates into a new index file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (overlay.isEmpty()) {
+			return;
+		}
+		Map<String, Entry> pending = new HashMap<String, Entry>(overlay);
+		TreeMap<byte[], Entry> updates = new TreeMap<byte[], Entry>(LocalRepositoryIndex::compare);
+		for (Map.Entry<String, Entry> update : pending.entrySet()) {
+			updates.put(utf8(update.getKey()), update.getValue());
+		}
+		ByteBuffer buffer = this.buffer;
+		int count = count(buffer);
+		List<Entry> merged = new ArrayList<Entry>(count + updates.size());
+		Iterator<Map.Entry<byte[], Entry>> it = updates.entrySet().iterator();
+		Map.Entry<byte[], Entry> next = it.hasNext() ? it.next() : null;
+		for (int i = 0; i < count; i++) {
+			byte[] path = pathBytes(buffer, i);
+			while (next != null && compare(next.getKey(), path) < 0) {
+				add(merged, next.getValue());
+				next = it.hasNext() ? it.next() : null;
+			}
+			if (next != null && compare(next.getKey(), path) == 0) {
+				add(merged, next.getValue());
+				next = it.hasNext() ? it.next() : null;
+			} else {
+				merged.add(entry(buffer, i));
+			}
+		}
+		for (; next != null; next = it.hasNext() ? it.next() : null) {
+			add(merged, next.getValue());
+		}
+		write(repository, merged);
+		this.buffer = read(repository.resolve(INDEX_FILE));
+		for (Map.Entry<String, Entry> update : pending.entrySet()) {
+			overlay.remove(update.getKey(), update.getValue());
+		}
+	}
+
+	private static void add(List<Entry> entries, Entry entry) {
+		if (entry != REMOVED) {
+			entries.add(entry);
+		}
+	}
+
+	/**
+	 * Compares the index with the repository.
+	 *
+	 * @param checksums whether to also hash every file and compare it with its
+	 *                  recorded SHA-1
+	 */
+	public Report check(boolean checksums) throws IOException {
+		Report report = new Report();
+		Set<String> seen = new LinkedHashSet<String>();
+		for (Entry actual : scan(repository)) {
+			seen.add(actual.path);
+			Entry indexed = find(actual.path);
+			if (indexed == null) {
+				report.unindexed.add(actual.path);
+			} else if (!indexed.sameAs(actual)) {
+				report.changed.add(actual.path);
+			}
+			if (checksums && actual.sha1 != null
+					&& !Arrays.equals(actual.sha1, sha1(repository.resolve(actual.path)))) {
+				report.corrupt.add(actual.path);
+			}
+		}
+		ByteBuffer buffer = this.buffer;
+		int count = count(buffer);
+		for (int i = 0; i < count; i++) {
+			String path = path(buffer, i);
+			if (!seen.contains(path) && find(path) != null) {
+				report.missing.add(path);
+			}
+		}
+		for (Map.Entry<String, Entry> pending : overlay.entrySet()) {
+			if (pending.getValue() != REMOVED && !seen.contains(pending.getKey())
+					&& indexOf(buffer, count, utf8(pending.getKey())) < 0) {
+				report.missing.add(pending.getKey());
+			}
+		}
+		return report;
+	}
+
+	private static List<Entry> scan(Path root) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			private final Map<Path, Map<String, List<String>>> tracking = new HashMap<>();
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				return dir.equals(root) || !dir.getFileName().toString().startsWith(".") ? FileVisitResult.CONTINUE
+						: FileVisitResult.SKIP_SUBTREE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile() && isIndexed(file.getFileName().toString()) && !file.getParent().equals(root)) {
+					Map<String, List<String>> repositories = tracking.computeIfAbsent(file.getParent(),
+							LocalRepositoryIndex::tracking);
+					String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+					entries.add(entry(path, file, attrs, repositories));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+				tracking.remove(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return entries;
+	}
+
+	static boolean isIndexed(String fileName) {
+		if (fileName.equals(TRACKING_FILE) || fileName.startsWith(".") || fileName.endsWith(".properties")) {
+			return false;
+		}
+		for (String suffix : SIDECAR_SUFFIXES) {
+			if (fileName.endsWith(suffix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Entry entry(String path, Path file, BasicFileAttributes attrs,
+			Map<String, List<String>> tracking) {
+		return new Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis(), readSha1(file),
+				tracking.get(file.getFileName().toString()));
+	}
+
+	/**
+	 * @return the repository ids per file name from the tracking file of
+	 *         {@code dir}
+	 */
+	private static Map<String, List<String>> tracking(Path dir) {
+		Path file = dir.resolve(TRACKING_FILE);
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		} catch (NoSuchFileException e) {
+			return Collections.emptyMap();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Map<String, List<String>> tracking = new HashMap<String, List<String>>();
+		for (String key : properties.stringPropertyNames()) {
+			int separator = key.indexOf('>');
+			if (separator > 0) {
+				tracking.computeIfAbsent(key.substring(0, separator), k -> new ArrayList<String>())
+						.add(key.substring(separator + 1));
+			}
+		}
+		for (List<String> repositories : tracking.values()) {
+			Collections.sort(repositories);
+		}
+		return tracking;
+	}
+
+	private static byte[] readSha1(Path file) {
+		Path sidecar = file.resolveSibling(file.getFileName() + ".sha1");
+		String content;
+		try {
+			content = new String(Files.readAllBytes(sidecar), StandardCharsets.US_ASCII).trim();
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (content.length() < SHA1_LENGTH * 2) {
+			return null;
+		}
+		byte[] sha1 = new byte[SHA1_LENGTH];
+		for (int i = 0; i < SHA1_LENGTH; i++) {
+			int high = Character.digit(content.charAt(2 * i), 16);
+			int low = Character.digit(content.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0) {
+				return null;
+			}
+			sha1[i] = (byte) (high << 4 | low);
+		}
+		return sha1;
+	}
+
+	private static byte[] sha1(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return digest.digest();
+	}
+
+	/*
+	 * File layout: a header (magic, version, record count, reserved), fixed size
+	 * records sorted by path and a heap of strings and checksums. A record holds
+	 * the offset and length of its path, the size, the modification time, the
+	 * offset of its SHA-1 (-1 if none) and the offset and length of its
+	 * repository ids joined by ',' (length -1 if not tracked).
+	 */
+
+	private static void write(Path repository, Iterable<Entry> sorted) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		sorted.forEach(entries::add);
+		ByteBuffer records = ByteBuffer.allocate(HEADER + entries.size() * RECORD);
+		records.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(0);
+		ByteArrayOutputStream heap = new ByteArrayOutputStream(entries.size() * 64);
+		for (Entry entry : entries) {
+			byte[] path = utf8(entry.path);
+			records.putInt(heap.size()).putInt(path.length);
+			heap.write(path, 0, path.length);
+			records.putLong(entry.size).putLong(entry.lastModified);
+			if (entry.sha1 != null) {
+				records.putInt(heap.size());
+				heap.write(entry.sha1, 0, SHA1_LENGTH);
+			} else {
+				records.putInt(-1);
+			}
+			if (entry.repositories != null) {
+				byte[] repositories = utf8(String.join(",", entry.repositories));
+				records.putInt(heap.size()).putInt(repositories.length);
+				heap.write(repositories, 0, repositories.length);
+			} else {
+				records.putInt(0).putInt(-1);
+			}
+			records.putInt(0);
+		}
+		records.flip();
+		Path target = repository.resolve(INDEX_FILE);
+		Path temp = repository.resolve(INDEX_FILE + '.' + Long.toHexString(System.nanoTime()) + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			while (records.hasRemaining()) {
+				channel.write(records);
+			}
+			ByteBuffer strings = ByteBuffer.wrap(heap.toByteArray());
+			while (strings.hasRemaining()) {
+				channel.write(strings);
+			}
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static int heapStart(int count) {
+		return HEADER + count * RECORD;
+	}
+
+	private static int record(int index) {
+		return HEADER + index * RECORD;
+	}
+
+	private static byte[] pathBytes(ByteBuffer buffer, int index) {
+		int record = record(index);
+		byte[] path = new byte[buffer.getInt(record + 4)];
+		int offset = heapStart(buffer.getInt(8)) + buffer.getInt(record);
+		for (int i = 0; i < path.length; i++) {
+			path[i] = buffer.get(offset + i);
+		}
+		return path;
+	}
+
+	private static String path(ByteBuffer buffer, int index) {
+		return new String(pathBytes(buffer, index), StandardCharsets.UTF_8);
+	}
+
+	private static Entry entry(ByteBuffer buffer, int index) {
+		int record = record(index);
+		int heap = heapStart(buffer.getInt(8));
+		byte[] sha1 = null;
+		int sha1Offset = buffer.getInt(record + 24);
+		if (sha1Offset >= 0) {
+			sha1 = new byte[SHA1_LENGTH];
+			for (int i = 0; i < SHA1_LENGTH; i++) {
+				sha1[i] = buffer.get(heap + sha1Offset + i);
+			}
+		}
+		List<String> repositories = null;
+		int repositoriesLength = buffer.getInt(record + 32);
+		if (repositoriesLength >= 0) {
+			byte[] joined = new byte[repositoriesLength];
+			int offset = heap + buffer.getInt(record + 28);
+			for (int i = 0; i < repositoriesLength; i++) {
+				joined[i] = buffer.get(offset + i);
+			}
+			repositories = Collections
+					.unmodifiableList(Arrays.asList(new String(joined, StandardCharsets.UTF_8).split(",", -1)));
+		}
+		return new Entry(path(buffer, index), buffer.getLong(record + 8), buffer.getLong(record + 16), sha1,
+				repositories);
+	}
+
+	/**
+	 * @return the index of {@code path}, or a negative value if it is not indexed
+	 */
+	private static int indexOf(ByteBuffer buffer, int count, byte[] path) {
+		int index = lowerBound(buffer, count, path);
+		return index < count && compareAt(buffer, index, path) == 0 ? index : -1;
+	}
+
+	/**
+	 * @return the first index whose path is not less than {@code key}
+	 */
+	private static int lowerBound(ByteBuffer buffer, int count, byte[] key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareAt(buffer, mid, key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Compares the path of a record with {@code key} in unsigned byte order,
+	 * without copying it out of the buffer.
+	 */
+	private static int compareAt(ByteBuffer buffer, int index, byte[] key) {
+		int record = record(index);
+		int offset = heapStart(buffer.getInt(8)) + buffer.getInt(record);
+		int length = buffer.getInt(record + 4);
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int c = (buffer.get(offset + i) & 0xff) - (key[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - key.length;
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private static byte[] utf8(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "LocalRepositoryIndex [repository=" + repository + ", files=" + count(buffer) + ", pending="
+				+ overlay.size() + "]";
+	}
+
+	public static void main(String[] args) throws IOException {
+		String command = null;
+		boolean checksums = false;
+		Path repository = Paths.get(System.getProperty("user.home"), ".m2", "repository");
+		for (String arg : args) {
+			if ("--checksums".equals(arg)) {
+				checksums = true;
+			} else if (command == null) {
+				command = arg;
+			} else {
+				repository = Paths.get(arg);
+			}
+		}
+		if ("rebuild".equals(command)) {
+			long start = System.nanoTime();
+			LocalRepositoryIndex index = rebuild(repository);
+			System.out.println("Indexed " + index.size() + " files of " + repository + " in "
+					+ (System.nanoTime() - start) / 1_000_000 + " ms");
+		} else if ("check".equals(command)) {
+			if (!exists(repository)) {
+				System.err.println("No index in " + repository);
+				System.exit(2);
+			}
+			Report report = open(repository).check(checksums);
+			for (String path : report.getMissing()) {
+				System.out.println("missing   " + path);
+			}
+			for (String path : report.getUnindexed()) {
+				System.out.println("unindexed " + path);
+			}
+			for (String path : report.getChanged()) {
+				System.out.println("changed   " + path);
+			}
+			for (String path : report.getCorrupt()) {
+				System.out.println("corrupt   " + path);
+			}
+			System.out.println(report);
+			System.exit(report.isConsistent() ? 0 : 1);
+		} else {
+			System.err.println("usage: LocalRepositoryIndex rebuild|check [--checksums] [localRepository]");
+			System.exit(2);
+		}
+	}
+
+}
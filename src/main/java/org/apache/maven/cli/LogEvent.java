@@ -0,0 +1,72 @@
+package org.apache.maven.cli;
+
+/**
+ * One line of build output, split into its Maven log level and message.
+ */
+public class LogEvent {
+
+	public enum Level {
+		DEBUG, INFO, WARNING, ERROR,
+		/** A line without a level prefix, such as forked process or test output. */
+		OUTPUT;
+
+		private final String prefix = "[" + name() + "] ";
+	}
+
+	private final Level level;
+	private final String message;
+	private final long timestamp;
+	private final boolean error;
+
+	/**
+	 * @param timestamp when the line was completed, in milliseconds since the
+	 *                  epoch
+	 * @param error     whether the line was written to standard error
+	 */
+	public LogEvent(Level level, String message, long timestamp, boolean error) {
+		this.level = level;
+		this.message = message;
+		this.timestamp = timestamp;
+		this.error = error;
+	}
+
+	/**
+	 * Splits a line as printed by Maven's console logger, which has had any ANSI
+	 * escape sequences removed.
+	 */
+	static LogEvent parse(String line, long timestamp, boolean error) {
+		if (line.startsWith("[")) {
+			for (Level level : Level.values()) {
+				if (line.startsWith(level.prefix)) {
+					return new LogEvent(level, line.substring(level.prefix.length()), timestamp, error);
+				}
+			}
+		}
+		return new LogEvent(Level.OUTPUT, line, timestamp, error);
+	}
+
+	public Level getLevel() {
+		return this.level;
+	}
+
+	public String getMessage() {
+		return this.message;
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public boolean isError() {
+		return this.error;
+	}
+
+	/**
+	 * @return the line as Maven printed it
+	 */
+	@Override
+	public String toString() {
+		return level == Level.OUTPUT ? message : level.prefix + message;
+	}
+
+}
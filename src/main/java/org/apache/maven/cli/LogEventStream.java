@@ -0,0 +1,118 @@
+package org.apache.maven.cli;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * An output stream that turns UTF-8 build output into {@link LogEvent}s, one
+ * per line, as it is written. Only the current line is buffered; lines longer
+ * than {@value #MAX_LINE_BYTES} bytes are split between two characters.
+ */
+public class LogEventStream extends OutputStream {
+
+	static final int MAX_LINE_BYTES = 64 * 1024;
+	private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;]*[A-Za-z]");
+
+	private final Consumer<LogEvent> sink;
+	private final boolean error;
+	private byte[] line = new byte[256];
+	private int length;
+
+	/**
+	 * @param sink  receives every completed line; it is shared by the standard
+	 *              output and error streams of an invocation and must be
+	 *              thread-safe
+	 * @param error whether this stream carries standard error
+	 */
+	public LogEventStream(Consumer<LogEvent> sink, boolean error) {
+		this.sink = Objects.requireNonNull(sink, "sink");
+		this.error = error;
+	}
+
+	@Override
+	public synchronized void write(int b) {
+		if (b == '\n') {
+			emit();
+		} else {
+			append((byte) b);
+		}
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if (b[i] == '\n') {
+				emit();
+			} else {
+				append(b[i]);
+			}
+		}
+	}
+
+	private void append(byte b) {
+		if (length == line.length) {
+			if (length == MAX_LINE_BYTES) {
+				split(characterBoundary(line, length, b));
+			} else {
+				line = Arrays.copyOf(line, Math.min(MAX_LINE_BYTES, length * 2));
+			}
+		}
+		line[length++] = b;
+	}
+
+	/**
+	 * Emits the first {@code end} bytes of the line and keeps the rest, the start
+	 * of a character the next byte completes, as the start of the next line.
+	 */
+	private void split(int end) {
+		int rest = length - end;
+		length = end;
+		emit();
+		System.arraycopy(line, end, line, 0, rest);
+		length = rest;
+	}
+
+	/**
+	 * @param next the byte following the first {@code end} bytes of {@code utf8}
+	 * @return the largest length of at most {@code end} bytes that does not end
+	 *         within a character, or {@code end} if the bytes are not valid UTF-8
+	 */
+	static int characterBoundary(byte[] utf8, int end, byte next) {
+		int boundary = end;
+		// a character is at most four bytes long, all but its first being 10xxxxxx
+		while (isContinuation(next) && boundary > 0 && end - boundary < 3) {
+			next = utf8[--boundary];
+		}
+		return boundary < end && boundary > 0 && (next & 0xC0) == 0xC0 ? boundary : end;
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+	private void emit() {
+		int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+		String text = new String(line, 0, end, StandardCharsets.UTF_8);
+		length = 0;
+		if (text.indexOf('\u001B') >= 0) {
+			text = ANSI_ESCAPE.matcher(text).replaceAll("");
+		}
+		sink.accept(LogEvent.parse(text, System.currentTimeMillis(), error));
+	}
+
+	/**
+	 * Emits the last line if it was not terminated.
+	 */
+	@Override
+	public synchronized void close() {
+		if (length > 0) {
+			emit();
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.apache.maven.cli;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link LogEvent} sink that keeps only the most recent events within a fixed
+ * number of bytes. Events are encoded into a direct buffer allocated once, so a
+ * long build neither grows the heap nor touches the disk, and the oldest events
+ * are overwritten first. Thread-safe.
+ */
+public class LogRingBuffer implements Consumer<LogEvent> {
+
+	/** Message length, timestamp, level and stream flag. */
+	private static final int HEADER_BYTES = 14;
+	private static final LogEvent.Level[] LEVELS = LogEvent.Level.values();
+
+	private final ByteBuffer buffer;
+	private final int capacity;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+	private int head;
+	private int tail;
+	private int used;
+	private int count;
+	private long dropped;
+
+	/**
+	 * @param capacityBytes the size of the buffer, at least large enough for one
+	 *                      event header
+	 */
+	public LogRingBuffer(int capacityBytes) {
+		if (capacityBytes <= HEADER_BYTES) {
+			throw new IllegalArgumentException("capacity must exceed " + HEADER_BYTES + " bytes");
+		}
+		this.capacity = capacityBytes;
+		this.buffer = ByteBuffer.allocateDirect(capacityBytes);
+	}
+
+	public static LogRingBuffer ofMegabytes(int megabytes) {
+		return new LogRingBuffer(Math.multiplyExact(megabytes, 1024 * 1024));
+	}
+
+	/**
+	 * Appends {@code event}, evicting the oldest events until it fits. Messages
+	 * larger than the whole buffer are truncated after the last character that
+	 * fits.
+	 */
+	@Override
+	public synchronized void accept(LogEvent event) {
+		byte[] message = event.getMessage().getBytes(StandardCharsets.UTF_8);
+		int length = message.length;
+		if (length > capacity - HEADER_BYTES) {
+			length = LogEventStream.characterBoundary(message, capacity - HEADER_BYTES,
+					message[capacity - HEADER_BYTES]);
+		}
+		int size = HEADER_BYTES + length;
+		while (capacity - used < size) {
+			int oldest = HEADER_BYTES + readInt(head);
+			head = (head + oldest) % capacity;
+			used -= oldest;
+			count--;
+			dropped++;
+		}
+		header.clear();
+		header.putInt(length).putLong(event.getTimestamp()).put((byte) event.getLevel().ordinal())
+				.put((byte) (event.isError() ? 1 : 0));
+		write(tail, header.array(), HEADER_BYTES);
+		write((tail + HEADER_BYTES) % capacity, message, length);
+		tail = (tail + size) % capacity;
+		used += size;
+		count++;
+	}
+
+	/**
+	 * @return the retained events, oldest first
+	 */
+	public synchronized List<LogEvent> snapshot() {
+		List<LogEvent> events = new ArrayList<LogEvent>(count);
+		byte[] record = new byte[HEADER_BYTES];
+		int position = head;
+		for (int i = 0; i < count; i++) {
+			read(position, record, HEADER_BYTES);
+			ByteBuffer fields = ByteBuffer.wrap(record);
+			int length = fields.getInt();
+			long timestamp = fields.getLong();
+			LogEvent.Level level = LEVELS[fields.get()];
+			boolean error = fields.get() != 0;
+			byte[] message = new byte[length];
+			read((position + HEADER_BYTES) % capacity, message, length);
+			events.add(new LogEvent(level, new String(message, StandardCharsets.UTF_8), timestamp, error));
+			position = (position + HEADER_BYTES + length) % capacity;
+		}
+		return events;
+	}
+
+	/**
+	 * @return at most the last {@code max} retained events, oldest first
+	 */
+	public List<LogEvent> tail(int max) {
+		List<LogEvent> events = snapshot();
+		return events.subList(Math.max(0, events.size() - max), events.size());
+	}
+
+	/**
+	 * @return the retained events rendered as Maven printed them
+	 */
+	public String render() {
+		StringBuilder sb = new StringBuilder();
+		for (LogEvent event : snapshot()) {
+			sb.append(event).append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+
+	public synchronized void clear() {
+		head = 0;
+		tail = 0;
+		used = 0;
+		count = 0;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public synchronized int getUsedBytes() {
+		return this.used;
+	}
+
+	public synchronized int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return events evicted to make room for newer ones
+	 */
+	public synchronized long getDroppedEvents() {
+		return this.dropped;
+	}
+
+	private void write(int position, byte[] source, int length) {
+		int first = Math.min(length, capacity - position);
+		ByteBuffer view = buffer.duplicate();
+		view.position(position);
+		view.put(source, 0, first);
+		if (first < length) {
+			view.position(0);
+			view.put(source, first, length - first);
+		}
+	}
+
+	private void read(int position, byte[] target, int length) {
+		int first = Math.min(length, capacity - position);
+		ByteBuffer view = buffer.duplicate();
+		view.position(position);
+		view.get(target, 0, first);
+		if (first < length) {
+			view.position(0);
+			view.get(target, first, length - first);
+		}
+	}
+
+	private int readInt(int position) {
+		byte[] bytes = new byte[4];
+		read(position, bytes, 4);
+		return ByteBuffer.wrap(bytes).getInt();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LogRingBuffer [events=" + count + ", usedBytes=" + used + "/" + capacity + ", dropped=" + dropped
+				+ "]";
+	}
+
+}
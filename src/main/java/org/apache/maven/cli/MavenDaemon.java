@@ -0,0 +1,323 @@
+package org.apache.maven.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps warm embedded Maven instances alive and runs the {@link CliArgsBuilder}
+ * requests that {@link MavenDaemonClient}s send to it over a localhost socket,
+ * streaming their output back as it is printed. Each connection is served on
+ * its own thread and may send any number of requests, one after the other.
+ * <p>
+ * Any local user can connect to the socket, so each request carries a secret
+ * token the daemon generates when it starts. The daemon writes the token to a
+ * file only its owner can read, by default {@link #defaultTokenFile(int)}, and
+ * deletes it when closed; requests with another token are refused.
+ * <p>
+ * A build whose client disconnects is cancelled the next time it prints, see
+ * {@link AsyncMavenExecutor} for what cancelling a running build means.
+ */
+public class MavenDaemon implements AutoCloseable {
+
+	public static final int DEFAULT_PORT = 18_732;
+
+	private static final int TOKEN_BYTES = 32;
+
+	/**
+	 * Writes each chunk it is given as one frame; a failed write cancels the
+	 * invocation whose output it carries.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final byte tag;
+		private final InvocationContext context;
+
+		private FrameOutputStream(DataOutputStream out, byte tag, InvocationContext context) {
+			this.out = out;
+			this.tag = tag;
+			this.context = context;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (len == 0 || context.isCancelled()) {
+				return;
+			}
+			synchronized (out) {
+				try {
+					for (int end = off + len; off < end; off += DaemonProtocol.MAX_FRAME_BYTES) {
+						int length = Math.min(end - off, DaemonProtocol.MAX_FRAME_BYTES);
+						out.writeByte(tag);
+						WireFormat.writeVarInt(out, length);
+						out.write(b, off, length);
+					}
+					out.flush();
+				} catch (IOException e) {
+					context.cancel();
+				}
+			}
+		}
+	}
+
+	private final MavenExecutor executor;
+	private final EmbeddedMavenPool owned;
+	private final ServerSocket server;
+	private final String token;
+	private final Path tokenFile;
+	/**
+	 * A thread per connection; connections are kept open between requests, so a
+	 * bounded pool would starve clients, and the builds they run block in
+	 * monitors, which would pin the carriers of virtual threads.
+	 */
+	private final ExecutorService connections = Executors
+			.newCachedThreadPool(AsyncMavenExecutor.daemonThreads("maven-daemon-connection-"));
+	private final Thread acceptor;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private volatile boolean closed;
+
+	/**
+	 * Runs requests on a default {@link EmbeddedMavenPool}, which is closed along
+	 * with the daemon.
+	 *
+	 * @param port the port to listen on, or {@code 0} for any free one
+	 */
+	public MavenDaemon(int port) throws IOException {
+		this(new EmbeddedMavenPool(), port, true, null);
+	}
+
+	/**
+	 * @param executor runs the requests; it is not closed by {@link #close()}
+	 * @param port     the port to listen on, or {@code 0} for any free one
+	 */
+	public MavenDaemon(MavenExecutor executor, int port) throws IOException {
+		this(executor, port, false, null);
+	}
+
+	/**
+	 * @param executor  runs the requests; it is not closed by {@link #close()}
+	 * @param port      the port to listen on, or {@code 0} for any free one
+	 * @param tokenFile where the token is written, or {@code null} for
+	 *                  {@link #defaultTokenFile(int)}
+	 */
+	public MavenDaemon(MavenExecutor executor, int port, Path tokenFile) throws IOException {
+		this(executor, port, false, tokenFile);
+	}
+
+	private MavenDaemon(MavenExecutor executor, int port, boolean owned, Path tokenFile) throws IOException {
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.owned = owned ? (EmbeddedMavenPool) executor : null;
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		try {
+			this.token = newToken();
+			this.tokenFile = tokenFile != null ? tokenFile : defaultTokenFile(server.getLocalPort());
+			writeToken(this.tokenFile, token);
+		} catch (IOException | RuntimeException e) {
+			server.close();
+			throw e;
+		}
+		this.acceptor = new Thread(this::accept, "maven-daemon-" + server.getLocalPort());
+		this.acceptor.start();
+	}
+
+	/**
+	 * @return {@code ~/.m2/mbetter/daemon-<port>.token}
+	 */
+	public static Path defaultTokenFile(int port) {
+		return Paths.get(System.getProperty("user.home"), ".m2", "mbetter", "daemon-" + port + ".token");
+	}
+
+	private static String newToken() {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder token = new StringBuilder(2 * TOKEN_BYTES);
+		for (byte b : bytes) {
+			token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return token.toString();
+	}
+
+	/**
+	 * Replaces {@code file} atomically with one only its owner can read and write.
+	 */
+	private static void writeToken(Path file, String token) throws IOException {
+		Path target = file.toAbsolutePath();
+		Files.createDirectories(target.getParent());
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			Files.deleteIfExists(tmp);
+			if (tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+				Files.createFile(tmp, PosixFilePermissions
+						.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+			} else {
+				File created = Files.createFile(tmp).toFile();
+				created.setReadable(false, false);
+				created.setWritable(false, false);
+				created.setReadable(true, true);
+				created.setWritable(true, true);
+			}
+			Files.write(tmp, token.getBytes(StandardCharsets.US_ASCII));
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * @return the file the token clients have to send is written to
+	 */
+	public Path getTokenFile() {
+		return tokenFile;
+	}
+
+	/**
+	 * @return requests received so far
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return requests the executor threw an exception for
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket socket = server.accept();
+				connections.execute(() -> serve(socket));
+			} catch (SocketException e) {
+				// closed
+			} catch (IOException e) {
+				// keep accepting
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket connection = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(connection.getOutputStream()))) {
+			connection.setTcpNoDelay(true);
+			while (!closed) {
+				try {
+					DaemonProtocol.readHeader(in);
+				} catch (EOFException e) {
+					return;
+				}
+				if (!DaemonProtocol.readToken(in, token)) {
+					out.writeByte(DaemonProtocol.FAILURE);
+					WireFormat.writeString(out, "Invalid daemon token");
+					out.flush();
+					return;
+				}
+				String workingDirectory = WireFormat.readString(in);
+				CliArgsBuilder args = CliArgsBuilder.readFrom(in);
+				requests.increment();
+				run(args, workingDirectory != null ? new File(workingDirectory) : null, out);
+			}
+		} catch (IOException e) {
+			// the client went away or does not speak the protocol
+		}
+	}
+
+	private void run(CliArgsBuilder args, File workingDirectory, DataOutputStream out) throws IOException {
+		InvocationContext context = new InvocationContext();
+		BuildResult result = null;
+		String failure = null;
+		try (PrintStream stdout = new PrintStream(new FrameOutputStream(out, DaemonProtocol.OUT, context), false);
+				PrintStream stderr = new PrintStream(new FrameOutputStream(out, DaemonProtocol.ERR, context), false)) {
+			result = context.run(() -> executor.execute(args, workingDirectory, stdout, stderr));
+		} catch (RuntimeException e) {
+			failures.increment();
+			failure = String.valueOf(e);
+		}
+		synchronized (out) {
+			if (result != null) {
+				DaemonProtocol.writeResult(out, result);
+			} else {
+				out.writeByte(DaemonProtocol.FAILURE);
+				WireFormat.writeString(out, failure);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Stops accepting connections and deletes the token file; builds that are
+	 * running finish.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+		Files.deleteIfExists(tokenFile);
+		connections.shutdown();
+		if (owned != null) {
+			owned.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MavenDaemon [port=" + getPort() + ", requests=" + getRequests() + ", failures=" + getFailures()
+				+ "]";
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		if (args.length > 1) {
+			System.err.println("usage: MavenDaemon [port]");
+			System.exit(2);
+		} else if (args.length == 1) {
+			port = Integer.parseInt(args[0]);
+		}
+		MavenDaemon daemon = new MavenDaemon(port);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				daemon.close();
+			} catch (IOException e) {
+				// exiting anyway
+			}
+		}));
+		System.out.println("Listening on localhost:" + daemon.getPort() + ", token in " + daemon.getTokenFile());
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.apache.maven.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs invocations on a {@link MavenDaemon} on this host instead of in the
+ * calling JVM. Each invocation opens its own connection, so one client can be
+ * used from several threads. The token each request carries is read from the
+ * token file of the daemon, see {@link MavenDaemon}.
+ * <p>
+ * {@link #main(String[])} takes the arguments of {@code mvn}, runs them from
+ * the current directory and exits with the exit code of the build; the port
+ * is read from the {@value #PORT_PROPERTY} system property.
+ */
+public class MavenDaemonClient implements MavenExecutor {
+
+	public static final String PORT_PROPERTY = "mbetter.daemon.port";
+
+	private final int port;
+	private final Path tokenFile;
+
+	public MavenDaemonClient() {
+		this(MavenDaemon.DEFAULT_PORT);
+	}
+
+	public MavenDaemonClient(int port) {
+		this(port, MavenDaemon.defaultTokenFile(port));
+	}
+
+	/**
+	 * @param tokenFile the token file of the daemon, see
+	 *                  {@link MavenDaemon#getTokenFile()}
+	 */
+	public MavenDaemonClient(int port, Path tokenFile) {
+		this.port = port;
+		this.tokenFile = tokenFile;
+	}
+
+	public int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * @param workingDirectory the directory the build is run from, or {@code null}
+	 *                         for the {@code user.dir} of this JVM
+	 * @throws UncheckedIOException  if the daemon cannot be reached, its token
+	 *                               file cannot be read or the connection breaks
+	 * @throws IllegalStateException if the executor of the daemon failed
+	 */
+	@Override
+	public BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out, PrintStream err) {
+		File dir = (workingDirectory != null ? workingDirectory : new File(System.getProperty("user.dir")))
+				.getAbsoluteFile();
+		PrintStream stdout = out != null ? out : System.out;
+		PrintStream stderr = err != null ? err : System.err;
+		try {
+			String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.US_ASCII).trim();
+			return execute(token, args, dir, stdout, stderr);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private BuildResult execute(String token, CliArgsBuilder args, File dir, PrintStream stdout, PrintStream stderr)
+			throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setTcpNoDelay(true);
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DaemonProtocol.writeRequest(request, token, dir.getPath(), args);
+			request.flush();
+			DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			byte[] chunk = new byte[8192];
+			while (true) {
+				byte tag = response.readByte();
+				switch (tag) {
+				case DaemonProtocol.OUT:
+				case DaemonProtocol.ERR:
+					int length = WireFormat.readLength(response, DaemonProtocol.MAX_FRAME_BYTES);
+					if (length > chunk.length) {
+						chunk = new byte[length];
+					}
+					response.readFully(chunk, 0, length);
+					(tag == DaemonProtocol.OUT ? stdout : stderr).write(chunk, 0, length);
+					break;
+				case DaemonProtocol.RESULT:
+					stdout.flush();
+					stderr.flush();
+					return DaemonProtocol.readResult(response);
+				case DaemonProtocol.FAILURE:
+					throw new IllegalStateException(
+							"Daemon failed to run the build: " + WireFormat.readString(response));
+				default:
+					throw new IOException("Unknown frame " + tag);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MavenDaemonClient [port=" + port + "]";
+	}
+
+	public static void main(String[] args) {
+		CliArgsBuilder builder;
+		try {
+			builder = CliArgsBuilder.fromArgv(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		MavenDaemonClient client = new MavenDaemonClient(Integer.getInteger(PORT_PROPERTY, MavenDaemon.DEFAULT_PORT));
+		System.exit(client.execute(builder, null).getExitCode());
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link CliArgsBuilder} against Maven without spawning a new process.
+ */
+public interface MavenExecutor {
+
+	/**
+	 * @param args             the invocation arguments
+	 * @param workingDirectory the directory the build is run from, or {@code null}
+	 *                         for {@code user.dir}
+	 * @param out              stream receiving standard output, or {@code null} for
+	 *                         the {@link System#out} of the calling thread
+	 * @param err              stream receiving standard error, or {@code null} for
+	 *                         the {@link System#err} of the calling thread
+	 */
+	BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out, PrintStream err);
+
+	default BuildResult execute(CliArgsBuilder args, File workingDirectory) {
+		return execute(args, workingDirectory, null, null);
+	}
+
+	/**
+	 * Streams the output of the invocation to {@code sink} line by line instead of
+	 * printing it.
+	 *
+	 * @param sink receives the events of both output streams and must be
+	 *             thread-safe, for example a {@link LogRingBuffer}
+	 */
+	default BuildResult execute(CliArgsBuilder args, File workingDirectory, Consumer<LogEvent> sink) {
+		try (PrintStream out = new PrintStream(new LogEventStream(sink, false), true, StandardCharsets.UTF_8);
+				PrintStream err = new PrintStream(new LogEventStream(sink, true), true, StandardCharsets.UTF_8)) {
+			return execute(args, workingDirectory, out, err);
+		}
+	}
+
+}
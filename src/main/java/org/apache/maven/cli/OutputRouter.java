@@ -0,0 +1,503 @@
+package org.apache.maven.cli;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Sends what an embedded invocation prints to the streams of that invocation
+ * without swapping {@link System#out} and {@link System#err} per build. Once
+ * installed, both are routing streams that forward every call, without taking
+ * a lock of their own, to the route of the invocation the calling thread, or
+ * the thread that started it, belongs to, and to the original streams
+ * otherwise. A thread that outlives the invocation that started it, such as a
+ * pooled worker a later invocation reuses, prints to the original streams from
+ * then on, and does not keep the finished route reachable.
+ * <p>
+ * A route assembles its output line by line and writes each line to its target
+ * in one call, so concurrent invocations sharing a target do not interleave
+ * within a line. It also applies the verbosity of its invocation: lines below
+ * its level, and the stack trace lines that follow them, are dropped. Maven's
+ * loggers are global, so they are kept at the most verbose level of all
+ * running invocations; see {@link #mostVerboseLevel()}.
+ */
+final class OutputRouter {
+
+	private static final ThreadLocal<Route> CURRENT = new InheritableThreadLocal<Route>();
+	private static final Set<Route> ACTIVE = ConcurrentHashMap.newKeySet();
+	private static final byte[] CAUSED_BY = "Caused by: ".getBytes(StandardCharsets.US_ASCII);
+
+	private static volatile PrintStream systemOut;
+	private static volatile PrintStream systemErr;
+	private static RoutingStream routedOut;
+	private static RoutingStream routedErr;
+
+	private OutputRouter() {
+	}
+
+	/**
+	 * Runs {@code action} with the output of the calling thread routed to
+	 * {@code out} and {@code err}.
+	 *
+	 * @param out   receives standard output, or {@code null} for the stream the
+	 *              calling thread prints to
+	 * @param err   receives standard error, or {@code null} for the stream the
+	 *              calling thread prints to
+	 * @param level the least severe level that is printed, see
+	 *              {@link #threshold(boolean, boolean)}
+	 */
+	static <T> T run(PrintStream out, PrintStream err, LogEvent.Level level, Supplier<T> action) {
+		install();
+		Route previous = active();
+		Route route = new Route(out != null ? out : previous != null ? previous.out : systemOut,
+				err != null ? err : previous != null ? previous.err : systemErr, level);
+		CURRENT.set(route);
+		ACTIVE.add(route);
+		try {
+			return action.get();
+		} finally {
+			ACTIVE.remove(route);
+			route.finish();
+			if (previous != null) {
+				CURRENT.set(previous);
+			} else {
+				CURRENT.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the route of the invocation the calling thread belongs to, or
+	 *         {@code null} if it belongs to none or that invocation has ended
+	 */
+	private static Route active() {
+		Route route = CURRENT.get();
+		if (route != null && route.out == null) {
+			CURRENT.remove();
+			return null;
+		}
+		return route;
+	}
+
+	/**
+	 * @return the most verbose level of the running invocations, or {@code INFO}
+	 *         if there are none
+	 */
+	static LogEvent.Level mostVerboseLevel() {
+		LogEvent.Level level = null;
+		for (Route route : ACTIVE) {
+			if (level == null || route.level.compareTo(level) < 0) {
+				level = route.level;
+			}
+		}
+		return level != null ? level : LogEvent.Level.INFO;
+	}
+
+	/**
+	 * (Re)installs the routing streams, taking whatever {@link System#out} and
+	 * {@link System#err} are at that point as the original streams if something
+	 * else replaced them.
+	 */
+	private static synchronized void install() {
+		if (routedOut == null) {
+			routedOut = new RoutingStream(false);
+			routedErr = new RoutingStream(true);
+		}
+		if (System.out != routedOut) {
+			systemOut = System.out;
+			System.setOut(routedOut);
+		}
+		if (System.err != routedErr) {
+			systemErr = System.err;
+			System.setErr(routedErr);
+		}
+	}
+
+	/**
+	 * Puts the original streams back as {@link System#out} and
+	 * {@link System#err} where the routing streams are still installed, so that
+	 * a test can replace them; the next invocation installs the routing streams
+	 * again.
+	 */
+	static synchronized void uninstall() {
+		if (routedOut != null && System.out == routedOut) {
+			System.setOut(systemOut);
+		}
+		if (routedErr != null && System.err == routedErr) {
+			System.setErr(systemErr);
+		}
+	}
+
+	/**
+	 * @return {@code DEBUG} for {@code -X}, {@code ERROR} for {@code -q} and
+	 *         {@code INFO} otherwise
+	 */
+	static LogEvent.Level threshold(boolean debug, boolean quiet) {
+		return debug ? LogEvent.Level.DEBUG : quiet ? LogEvent.Level.ERROR : LogEvent.Level.INFO;
+	}
+
+	/**
+	 * The output of one invocation. Its streams are cleared when it finishes, so
+	 * that threads that inherited the route let go of them.
+	 */
+	private static final class Route {
+
+		volatile PrintStream out;
+		volatile PrintStream err;
+		final LogEvent.Level level;
+
+		Route(PrintStream out, PrintStream err, LogEvent.Level level) {
+			this.level = level;
+			this.out = new PrintStream(new LineFilter(out, level), false);
+			this.err = new PrintStream(new LineFilter(err, level), false);
+		}
+
+		void finish() {
+			PrintStream out = this.out;
+			PrintStream err = this.err;
+			this.out = null;
+			this.err = null;
+			// closes the filters, which flush an unterminated last line but not their target
+			out.close();
+			err.close();
+		}
+
+	}
+
+	/**
+	 * Forwards complete lines that are at least as severe as the level of its
+	 * route to the target. Only the current line is buffered; lines longer than
+	 * {@value LogEventStream#MAX_LINE_BYTES} bytes are forwarded in parts.
+	 */
+	static final class LineFilter extends OutputStream {
+
+		private final PrintStream target;
+		private final LogEvent.Level level;
+		private byte[] line = new byte[256];
+		private int length;
+		private boolean continued;
+		private boolean dropping;
+
+		LineFilter(PrintStream target, LogEvent.Level level) {
+			this.target = target;
+			this.level = level;
+		}
+
+		@Override
+		public void write(int b) {
+			append((byte) b);
+			if (b == '\n') {
+				emit();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			int end = off + len;
+			for (int i = off; i < end; i++) {
+				append(b[i]);
+				if (b[i] == '\n') {
+					emit();
+				}
+			}
+		}
+
+		private void append(byte b) {
+			if (length == line.length) {
+				if (length == LogEventStream.MAX_LINE_BYTES) {
+					emit();
+					continued = true;
+				} else {
+					line = Arrays.copyOf(line, Math.min(LogEventStream.MAX_LINE_BYTES, length * 2));
+				}
+			}
+			line[length++] = b;
+		}
+
+		private void emit() {
+			if (!continued) {
+				LogEvent.Level lineLevel = levelOf(line, length);
+				if (lineLevel != null) {
+					dropping = lineLevel != LogEvent.Level.OUTPUT && lineLevel.compareTo(level) < 0;
+				}
+			}
+			continued = false;
+			if (!dropping && length > 0) {
+				target.write(line, 0, length);
+			}
+			length = 0;
+		}
+
+		@Override
+		public void flush() {
+			target.flush();
+		}
+
+		@Override
+		public void close() {
+			if (length > 0) {
+				emit();
+			}
+			target.flush();
+		}
+
+		/**
+		 * @return the level of a line as printed by Maven's console logger, which
+		 *         may contain ANSI escape sequences, {@code OUTPUT} for a line
+		 *         without a level prefix and {@code null} for a line continuing the
+		 *         previous message, such as a stack trace
+		 */
+		static LogEvent.Level levelOf(byte[] line, int length) {
+			if (length == 0) {
+				return LogEvent.Level.OUTPUT;
+			}
+			if (line[0] == '\t' || line[0] == ' ' || startsWith(line, length, CAUSED_BY)) {
+				return null;
+			}
+			if (line[0] == '[') {
+				for (LogEvent.Level level : LogEvent.Level.values()) {
+					if (level != LogEvent.Level.OUTPUT && isPrefix(line, length, level.name())) {
+						return level;
+					}
+				}
+			}
+			return LogEvent.Level.OUTPUT;
+		}
+
+		private static boolean startsWith(byte[] line, int length, byte[] prefix) {
+			if (length < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (line[i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isPrefix(byte[] line, int length, String name) {
+			int i = 1;
+			for (int c = 0; c < name.length(); c++) {
+				i = skipEscapes(line, i, length);
+				if (i >= length || line[i] != name.charAt(c)) {
+					return false;
+				}
+				i++;
+			}
+			i = skipEscapes(line, i, length);
+			return i < length && line[i] == ']';
+		}
+
+		private static int skipEscapes(byte[] line, int i, int length) {
+			while (i + 1 < length && line[i] == 0x1B && line[i + 1] == '[') {
+				i += 2;
+				while (i < length && !Character.isLetter(line[i])) {
+					i++;
+				}
+				i++;
+			}
+			return i;
+		}
+
+	}
+
+	/**
+	 * The stream installed as {@link System#out} or {@link System#err}. Closing
+	 * it from within an invocation only flushes the route.
+	 */
+	private static final class RoutingStream extends PrintStream {
+
+		private final boolean error;
+
+		RoutingStream(boolean error) {
+			super(OutputStream.nullOutputStream());
+			this.error = error;
+		}
+
+		private PrintStream target() {
+			Route route = CURRENT.get();
+			if (route != null) {
+				PrintStream target = error ? route.err : route.out;
+				if (target != null) {
+					return target;
+				}
+				CURRENT.remove();
+			}
+			return error ? systemErr : systemOut;
+		}
+
+		@Override
+		public void flush() {
+			target().flush();
+		}
+
+		@Override
+		public void close() {
+			if (active() != null) {
+				target().flush();
+			} else {
+				target().close();
+			}
+		}
+
+		@Override
+		public boolean checkError() {
+			return target().checkError();
+		}
+
+		@Override
+		public void write(int b) {
+			target().write(b);
+		}
+
+		@Override
+		public void write(byte[] buf, int off, int len) {
+			target().write(buf, off, len);
+		}
+
+		@Override
+		public void print(boolean b) {
+			target().print(b);
+		}
+
+		@Override
+		public void print(char c) {
+			target().print(c);
+		}
+
+		@Override
+		public void print(int i) {
+			target().print(i);
+		}
+
+		@Override
+		public void print(long l) {
+			target().print(l);
+		}
+
+		@Override
+		public void print(float f) {
+			target().print(f);
+		}
+
+		@Override
+		public void print(double d) {
+			target().print(d);
+		}
+
+		@Override
+		public void print(char[] s) {
+			target().print(s);
+		}
+
+		@Override
+		public void print(String s) {
+			target().print(s);
+		}
+
+		@Override
+		public void print(Object obj) {
+			target().print(obj);
+		}
+
+		@Override
+		public void println() {
+			target().println();
+		}
+
+		@Override
+		public void println(boolean x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(char x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(int x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(long x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(float x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(double x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(char[] x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(String x) {
+			target().println(x);
+		}
+
+		@Override
+		public void println(Object x) {
+			target().println(x);
+		}
+
+		@Override
+		public PrintStream printf(String format, Object... args) {
+			target().printf(format, args);
+			return this;
+		}
+
+		@Override
+		public PrintStream printf(Locale l, String format, Object... args) {
+			target().printf(l, format, args);
+			return this;
+		}
+
+		@Override
+		public PrintStream format(String format, Object... args) {
+			target().format(format, args);
+			return this;
+		}
+
+		@Override
+		public PrintStream format(Locale l, String format, Object... args) {
+			target().format(l, format, args);
+			return this;
+		}
+
+		@Override
+		public PrintStream append(CharSequence csq) {
+			target().append(csq);
+			return this;
+		}
+
+		@Override
+		public PrintStream append(CharSequence csq, int start, int end) {
+			target().append(csq, start, end);
+			return this;
+		}
+
+		@Override
+		public PrintStream append(char c) {
+			target().append(c);
+			return this;
+		}
+
+	}
+
+}
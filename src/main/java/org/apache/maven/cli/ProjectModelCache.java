@@ -0,0 +1,560 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelBuildingException;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.building.ModelCache;
+import org.apache.maven.model.building.ModelProblem;
+import org.apache.maven.model.building.ModelSource;
+import org.apache.maven.model.building.Result;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.model.resolution.InvalidRepositoryException;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+
+/**
+ * Keeps the models a warm embedder builds across invocations. What is cached
+ * is the first phase of model building: the POM read, its parents resolved and
+ * inherited, profiles activated and injected and the result interpolated. The
+ * second phase, which imports BOMs, injects management sections and fires the
+ * model building events, still runs on every build, so a changed BOM is always
+ * seen.
+ * <p>
+ * Entries are keyed by the POM path, the active and inactive profile ids, the
+ * external (settings) profiles and the request flags. An entry is reused only if
+ * the content of the POM and of every parent it was built from is unchanged,
+ * and so is every property it depends on: those referenced as {@code ${...}}
+ * from these files, those activating profiles, and the JDK and OS properties.
+ * Models that activate profiles on files, use {@code maven.build.timestamp} or
+ * declare a parent version range are not cached. Callers always get their own
+ * copy of a cached model. Thread-safe.
+ */
+public class ProjectModelCache {
+
+	private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^${}]+)\\}");
+	private static final String BUILD_TIMESTAMP = "maven.build.timestamp";
+	private static final String RAW = "raw";
+	private static final String SUPER_MODEL_ID = "";
+	private static final List<String> PLATFORM_PROPERTIES = Arrays.asList("java.version", "os.name", "os.arch",
+			"os.version");
+
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	private static class Cached {
+		private final CachedResult result;
+		private final Map<Path, byte[]> files;
+		private final Map<String, String> properties;
+
+		private Cached(CachedResult result, Map<Path, byte[]> files, Map<String, String> properties) {
+			this.result = result;
+			this.files = files;
+			this.properties = properties;
+		}
+	}
+
+	/** A first phase result, complete enough for the second phase. */
+	private static class CachedResult implements ModelBuildingResult {
+		private final List<String> modelIds = new ArrayList<String>();
+		private final Map<String, Model> rawModels = new HashMap<String, Model>();
+		private final Map<String, List<Profile>> activePomProfiles = new HashMap<String, List<Profile>>();
+		private List<Profile> activeExternalProfiles;
+		private Model effectiveModel;
+		private List<ModelProblem> problems;
+
+		private static CachedResult copyOf(ModelBuildingResult source) {
+			CachedResult copy = new CachedResult();
+			copy.effectiveModel = source.getEffectiveModel().clone();
+			for (String modelId : source.getModelIds()) {
+				copy.modelIds.add(modelId);
+				copy.rawModels.put(modelId, source.getRawModel(modelId).clone());
+				copy.activePomProfiles.put(modelId, cloneProfiles(source.getActivePomProfiles(modelId)));
+			}
+			copy.activeExternalProfiles = cloneProfiles(source.getActiveExternalProfiles());
+			copy.problems = new ArrayList<ModelProblem>(source.getProblems());
+			return copy;
+		}
+
+		private static List<Profile> cloneProfiles(List<Profile> profiles) {
+			List<Profile> clones = new ArrayList<Profile>(profiles.size());
+			for (Profile profile : profiles) {
+				clones.add(profile.clone());
+			}
+			return clones;
+		}
+
+		@Override
+		public List<String> getModelIds() {
+			return modelIds;
+		}
+
+		@Override
+		public Model getEffectiveModel() {
+			return effectiveModel;
+		}
+
+		@Override
+		public Model getRawModel() {
+			return rawModels.get(modelIds.get(0));
+		}
+
+		@Override
+		public Model getRawModel(String modelId) {
+			return rawModels.get(modelId);
+		}
+
+		@Override
+		public List<Profile> getActivePomProfiles(String modelId) {
+			return activePomProfiles.get(modelId);
+		}
+
+		@Override
+		public List<Profile> getActiveExternalProfiles() {
+			return activeExternalProfiles;
+		}
+
+		@Override
+		public List<ModelProblem> getProblems() {
+			return problems;
+		}
+	}
+
+	/**
+	 * Records the POMs a {@link ModelResolver} hands out, across the copies the
+	 * model builder makes of it.
+	 */
+	private static class RecordingModelResolver implements ModelResolver {
+		private final ModelResolver delegate;
+		private final List<ModelSource> resolved;
+
+		private RecordingModelResolver(ModelResolver delegate, List<ModelSource> resolved) {
+			this.delegate = delegate;
+			this.resolved = resolved;
+		}
+
+		private ModelSource record(ModelSource source) {
+			synchronized (resolved) {
+				resolved.add(source);
+			}
+			return source;
+		}
+
+		@Override
+		public ModelSource resolveModel(String groupId, String artifactId, String version)
+				throws UnresolvableModelException {
+			return record(delegate.resolveModel(groupId, artifactId, version));
+		}
+
+		@Override
+		public ModelSource resolveModel(Parent parent) throws UnresolvableModelException {
+			return record(delegate.resolveModel(parent));
+		}
+
+		@Override
+		public ModelSource resolveModel(Dependency dependency) throws UnresolvableModelException {
+			return record(delegate.resolveModel(dependency));
+		}
+
+		@Override
+		public void addRepository(Repository repository) throws InvalidRepositoryException {
+			delegate.addRepository(repository);
+		}
+
+		@Override
+		public void addRepository(Repository repository, boolean replace) throws InvalidRepositoryException {
+			delegate.addRepository(repository, replace);
+		}
+
+		@Override
+		public ModelResolver newCopy() {
+			return new RecordingModelResolver(delegate.newCopy(), resolved);
+		}
+	}
+
+	/**
+	 * Hides cached raw parents, so that every parent of a model that is about to
+	 * be cached is read through the request and recorded.
+	 */
+	private static class UncachedParents implements ModelCache {
+		private final ModelCache delegate;
+
+		private UncachedParents(ModelCache delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void put(String groupId, String artifactId, String version, String tag, Object data) {
+			delegate.put(groupId, artifactId, version, tag, data);
+		}
+
+		@Override
+		public Object get(String groupId, String artifactId, String version, String tag) {
+			return RAW.equals(tag) ? null : delegate.get(groupId, artifactId, version, tag);
+		}
+	}
+
+	private class CachingModelBuilder implements ModelBuilder {
+		private final ModelBuilder delegate;
+
+		private CachingModelBuilder(ModelBuilder delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public ModelBuildingResult build(ModelBuildingRequest request) throws ModelBuildingException {
+			String key = key(request);
+			if (key == null) {
+				bypassed.increment();
+				return delegate.build(request);
+			}
+			ModelBuildingResult result = lookup(key, request);
+			if (result == null) {
+				result = buildAndStore(key, request);
+			}
+			return request.isTwoPhaseBuilding() ? result : delegate.build(request, result);
+		}
+
+		@Override
+		public ModelBuildingResult build(ModelBuildingRequest request, ModelBuildingResult result)
+				throws ModelBuildingException {
+			return delegate.build(request, result);
+		}
+
+		@Override
+		public Result<? extends Model> buildRawModel(File pomFile, int validationLevel, boolean locationTracking) {
+			return delegate.buildRawModel(pomFile, validationLevel, locationTracking);
+		}
+
+		private ModelBuildingResult buildAndStore(String key, ModelBuildingRequest request)
+				throws ModelBuildingException {
+			List<ModelSource> resolved = new ArrayList<ModelSource>();
+			DefaultModelBuildingRequest firstPhase = new DefaultModelBuildingRequest(request);
+			firstPhase.setTwoPhaseBuilding(true);
+			firstPhase.setLocationTracking(request.isLocationTracking());
+			firstPhase.setWorkspaceModelResolver(request.getWorkspaceModelResolver());
+			if (request.getModelResolver() != null) {
+				firstPhase.setModelResolver(new RecordingModelResolver(request.getModelResolver(), resolved));
+			}
+			if (request.getModelCache() != null) {
+				firstPhase.setModelCache(new UncachedParents(request.getModelCache()));
+			}
+			ModelBuildingResult result = delegate.build(firstPhase);
+			Cached entry = newEntry(request, result, resolved);
+			if (entry == null) {
+				bypassed.increment();
+			} else {
+				synchronized (entries) {
+					entries.put(key, entry);
+				}
+			}
+			return result;
+		}
+	}
+
+	private final Map<String, Cached> entries;
+	private final SourceFingerprint fingerprint = new SourceFingerprint();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder bypassed = new LongAdder();
+
+	public ProjectModelCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries the number of models kept, the least recently used is
+	 *                   evicted first
+	 */
+	public ProjectModelCache(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		}
+		this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return a model builder answering from this cache and building through
+	 *         {@code delegate} on a miss
+	 */
+	ModelBuilder decorate(ModelBuilder delegate) {
+		return new CachingModelBuilder(delegate);
+	}
+
+	/**
+	 * @return {@code null} if the request cannot be cached
+	 */
+	private String key(ModelBuildingRequest request) {
+		if (request.getRawModel() != null) {
+			return null;
+		}
+		File pomFile = pomFile(request.getModelSource(), request.getPomFile());
+		if (pomFile == null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(pomFile.toPath().toAbsolutePath().normalize()).append('|');
+		key.append(request.getValidationLevel()).append('|');
+		key.append(request.isLocationTracking()).append('|');
+		key.append(request.getWorkspaceModelResolver() != null).append('|');
+		key.append(request.getActiveProfileIds()).append('|');
+		key.append(request.getInactiveProfileIds()).append('|');
+		if (!request.getProfiles().isEmpty()) {
+			Model profiles = new Model();
+			profiles.setProfiles(request.getProfiles());
+			StringWriter writer = new StringWriter();
+			try {
+				new MavenXpp3Writer().write(writer, profiles);
+			} catch (IOException e) {
+				return null;
+			}
+			key.append(SourceFingerprint
+					.hex(SourceFingerprint.sha256().digest(writer.toString().getBytes(StandardCharsets.UTF_8))));
+		}
+		return key.toString();
+	}
+
+	private static File pomFile(ModelSource source, File pomFile) {
+		if (source instanceof FileModelSource) {
+			return ((FileModelSource) source).getPomFile();
+		}
+		return source == null ? pomFile : null;
+	}
+
+	private ModelBuildingResult lookup(String key, ModelBuildingRequest request) {
+		Cached entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		if (!isValid(entry, request)) {
+			synchronized (entries) {
+				entries.remove(key, entry);
+			}
+			invalidations.increment();
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		CachedResult result = CachedResult.copyOf(entry.result);
+		// the first phase registers the repositories of the model with the resolver
+		ModelResolver resolver = request.getModelResolver();
+		if (resolver != null) {
+			for (Repository repository : result.getEffectiveModel().getRepositories()) {
+				try {
+					resolver.addRepository(repository, true);
+				} catch (InvalidRepositoryException e) {
+					// reported as a problem when the model was first built
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean isValid(Cached entry, ModelBuildingRequest request) {
+		for (Map.Entry<Path, byte[]> file : entry.files.entrySet()) {
+			try {
+				if (!Arrays.equals(file.getValue(), fingerprint.digest(file.getKey()))) {
+					return false;
+				}
+			} catch (UncheckedIOException e) {
+				return false;
+			}
+		}
+		for (Map.Entry<String, String> property : entry.properties.entrySet()) {
+			if (!property.getValue().equals(property(request, property.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return {@code null} if the result depends on something the cache cannot
+	 *         track
+	 */
+	private Cached newEntry(ModelBuildingRequest request, ModelBuildingResult result, List<ModelSource> resolved) {
+		Set<Path> files = new LinkedHashSet<Path>();
+		files.add(pomFile(request.getModelSource(), request.getPomFile()).toPath());
+		int unlocated = 0;
+		Set<String> properties = new LinkedHashSet<String>(PLATFORM_PROPERTIES);
+		for (String modelId : result.getModelIds()) {
+			if (SUPER_MODEL_ID.equals(modelId)) {
+				continue;
+			}
+			Model raw = result.getRawModel(modelId);
+			if (raw.getPomFile() != null) {
+				files.add(raw.getPomFile().toPath());
+			} else {
+				unlocated++;
+			}
+			Parent parent = raw.getParent();
+			if (parent != null && parent.getVersion() != null
+					&& (parent.getVersion().startsWith("[") || parent.getVersion().startsWith("("))) {
+				return null;
+			}
+			if (!addActivationProperties(raw.getProfiles(), properties)) {
+				return null;
+			}
+		}
+		if (!addActivationProperties(request.getProfiles(), properties)) {
+			return null;
+		}
+		synchronized (resolved) {
+			for (ModelSource source : resolved) {
+				File pomFile = pomFile(source, null);
+				if (pomFile == null) {
+					return null;
+				}
+				files.add(pomFile.toPath());
+			}
+			if (unlocated > resolved.size()) {
+				return null;
+			}
+		}
+		Map<Path, byte[]> digests = new LinkedHashMap<Path, byte[]>();
+		try {
+			for (Path file : files) {
+				Path normalized = file.toAbsolutePath().normalize();
+				digests.put(normalized, fingerprint.digest(normalized));
+				Matcher matcher = EXPRESSION.matcher(new String(Files.readAllBytes(normalized), StandardCharsets.UTF_8));
+				while (matcher.find()) {
+					properties.add(matcher.group(1));
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			return null;
+		}
+		if (properties.contains(BUILD_TIMESTAMP)) {
+			return null;
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		for (String property : properties) {
+			values.put(property, property(request, property));
+		}
+		return new Cached(CachedResult.copyOf(result), digests, values);
+	}
+
+	/**
+	 * @return {@code false} if a profile is activated on the presence of a file
+	 */
+	private static boolean addActivationProperties(List<Profile> profiles, Set<String> properties) {
+		for (Profile profile : profiles) {
+			Activation activation = profile.getActivation();
+			if (activation == null) {
+				continue;
+			}
+			if (activation.getFile() != null) {
+				return false;
+			}
+			if (activation.getProperty() != null && activation.getProperty().getName() != null) {
+				String name = activation.getProperty().getName();
+				properties.add(name.startsWith("!") ? name.substring(1) : name);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the user and the system value of {@code name}, either may be
+	 *         {@code null}
+	 */
+	private static String property(ModelBuildingRequest request, String name) {
+		return value(request.getUserProperties(), name) + "\u0000" + value(request.getSystemProperties(), name);
+	}
+
+	private static String value(Properties properties, String name) {
+		return properties == null ? null : properties.getProperty(name);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return lookups that found no entry or an outdated one
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return entries dropped because a POM or a property they depend on changed
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * @return builds that could not be cached
+	 */
+	public long getBypassed() {
+		return bypassed.sum();
+	}
+
+	/**
+	 * @return hits over lookups, {@code 0} before the first lookup
+	 */
+	public double getHitRatio() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ProjectModelCache [entries=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", invalidations=" + getInvalidations() + ", bypassed=" + getBypassed() + "]";
+	}
+
+}
@@ -0,0 +1,417 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * A persistent fingerprint index of every build input in a reactor, recorded
+ * at the last successful build. {@link #detect()} compares the working tree
+ * against it and {@link Changes#applyTo(CliArgsBuilder)} turns the modules that
+ * changed into the minimal {@code -pl}/{@code -amd} selection.
+ * <p>
+ * The index is a memory-mapped file of fixed-size records sorted by path hash,
+ * so a lookup is a binary search without deserializing anything. Files whose
+ * size and modification time match their record are not read; only the others
+ * are hashed. Instances are not thread-safe.
+ */
+public class ReactorChangeIndex {
+
+	private static final int MAGIC = 0x4d425249;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int RECORD_BYTES = 40;
+	private static final int PATH_HASH = 0;
+	private static final int SIZE = 8;
+	private static final int MODIFIED = 16;
+	private static final int CONTENT_HASH = 24;
+	private static final int MODULE_HASH = 32;
+	/** Selector Maven accepts for the root project. */
+	static final String ROOT_MODULE = ".";
+
+	/**
+	 * The result of {@link ReactorChangeIndex#detect()}.
+	 */
+	public static class Changes {
+		private final boolean full;
+		private final List<String> modules;
+		private final int changedFiles;
+		private final int scannedFiles;
+		private final int hashedFiles;
+		private final long[] records;
+
+		private Changes(boolean full, List<String> modules, int changedFiles, int scannedFiles, int hashedFiles,
+				long[] records) {
+			this.full = full;
+			this.modules = modules;
+			this.changedFiles = changedFiles;
+			this.scannedFiles = scannedFiles;
+			this.hashedFiles = hashedFiles;
+			this.records = records;
+		}
+
+		/**
+		 * @return {@code true} if nothing changed since the last successful build
+		 */
+		public boolean isEmpty() {
+			return !this.full && this.modules.isEmpty();
+		}
+
+		/**
+		 * @return {@code true} if the root POM, root sources or {@code .mvn} changed,
+		 *         or there is no baseline, so the whole reactor has to be built
+		 */
+		public boolean isFull() {
+			return this.full;
+		}
+
+		/**
+		 * @return the changed modules as paths relative to the reactor root
+		 */
+		public List<String> getModules() {
+			return this.modules;
+		}
+
+		public int getChangedFiles() {
+			return this.changedFiles;
+		}
+
+		public int getScannedFiles() {
+			return this.scannedFiles;
+		}
+
+		/**
+		 * @return files whose size or modification time differed from the index and
+		 *         that therefore had to be read
+		 */
+		public int getHashedFiles() {
+			return this.hashedFiles;
+		}
+
+		/**
+		 * Restricts {@code args} to the changed modules and everything depending on
+		 * them, or clears the project list when the whole reactor has to be built.
+		 * Callers should skip the build altogether when {@link #isEmpty()}.
+		 */
+		public CliArgsBuilder applyTo(CliArgsBuilder args) {
+			if (this.full) {
+				args.setProjectList(null);
+				args.setAlsoMakeDependents(false);
+			} else if (!this.modules.isEmpty()) {
+				args.setProjectList(new ArrayList<String>(this.modules));
+				args.alsoMakeDependents();
+			}
+			return args;
+		}
+
+		@Override
+		public String toString() {
+			return "Changes [full=" + full + ", modules=" + modules + ", changedFiles=" + changedFiles
+					+ ", scannedFiles=" + scannedFiles + ", hashedFiles=" + hashedFiles + "]";
+		}
+	}
+
+	private final Path root;
+	private final Path indexFile;
+	private MappedByteBuffer index;
+	private int count;
+
+	public ReactorChangeIndex(File reactorRoot, File indexFile) {
+		this.root = reactorRoot.toPath().toAbsolutePath().normalize();
+		this.indexFile = indexFile.toPath().toAbsolutePath();
+		load();
+	}
+
+	private void load() {
+		this.index = null;
+		this.count = 0;
+		if (!Files.isRegularFile(indexFile)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				return;
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int entries = mapped.getInt(8);
+			if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+					|| channel.size() != HEADER_BYTES + (long) entries * RECORD_BYTES) {
+				return;
+			}
+			this.index = mapped;
+			this.count = entries;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return {@code true} once a successful build has been recorded
+	 */
+	public boolean hasBaseline() {
+		return this.index != null;
+	}
+
+	/**
+	 * Compares the working tree against the last recorded successful build, with
+	 * only the profiles POMs activate by default. Without a baseline every module
+	 * counts as changed.
+	 */
+	public Changes detect() {
+		return detect(new CliArgsBuilder());
+	}
+
+	/**
+	 * Compares the working tree against the last recorded successful build, taking
+	 * the modules of the profiles {@code args} activates into account. Without a
+	 * baseline every module counts as changed.
+	 */
+	public Changes detect(CliArgsBuilder args) {
+		List<String> modules = modules(args);
+		Map<Long, String> moduleByHash = new HashMap<Long, String>();
+		for (String module : modules) {
+			moduleByHash.put(hash(module), module);
+		}
+		List<Path> inputs = SourceFingerprint.inputs(root);
+		long[] records = new long[inputs.size() * 5];
+		boolean[] seen = new boolean[count];
+		Set<String> changed = new LinkedHashSet<String>();
+		int changedFiles = 0;
+		int hashedFiles = 0;
+		try {
+			for (int i = 0; i < inputs.size(); i++) {
+				Path file = inputs.get(i);
+				String relative = relative(file);
+				String module = owningModule(relative, modules);
+				BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				long pathHash = hash(relative);
+				long size = attrs.size();
+				long modified = attrs.lastModifiedTime().toMillis();
+				int found = find(pathHash);
+				long contentHash;
+				if (found >= 0 && recordLong(found, SIZE) == size && recordLong(found, MODIFIED) == modified) {
+					contentHash = recordLong(found, CONTENT_HASH);
+				} else {
+					contentHash = ByteBuffer.wrap(SourceFingerprint.contentDigest(file)).getLong();
+					hashedFiles++;
+				}
+				if (found >= 0) {
+					seen[found] = true;
+				}
+				if (found < 0 || recordLong(found, CONTENT_HASH) != contentHash
+						|| recordLong(found, MODULE_HASH) != hash(module)) {
+					changedFiles++;
+					changed.add(module);
+				}
+				int r = i * 5;
+				records[r] = pathHash;
+				records[r + 1] = size;
+				records[r + 2] = modified;
+				records[r + 3] = contentHash;
+				records[r + 4] = hash(module);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (int i = 0; i < count; i++) {
+			if (!seen[i]) {
+				changedFiles++;
+				String module = moduleByHash.get(recordLong(i, MODULE_HASH));
+				changed.add(module != null ? module : ROOT_MODULE);
+			}
+		}
+		if (index == null) {
+			changed.add(ROOT_MODULE);
+		}
+		boolean full = changed.remove(ROOT_MODULE);
+		List<String> changedModules = new ArrayList<String>(changed);
+		Collections.sort(changedModules);
+		return new Changes(full, Collections.unmodifiableList(changedModules), changedFiles, inputs.size(),
+				hashedFiles, records);
+	}
+
+	/**
+	 * Records the state captured by {@code changes} as the new baseline. Call it
+	 * after the build restricted by those changes succeeded.
+	 */
+	public void commit(Changes changes) {
+		long[] records = changes.records;
+		int entries = records.length / 5;
+		Integer[] order = new Integer[entries];
+		for (int i = 0; i < entries; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(records[a * 5], records[b * 5]));
+		long bytes = HEADER_BYTES + (long) entries * RECORD_BYTES;
+		try {
+			Files.createDirectories(indexFile.getParent());
+			Path tmp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+				out.putInt(MAGIC).putInt(VERSION).putInt(entries).putInt(0);
+				for (int i = 0; i < entries; i++) {
+					int r = order[i] * 5;
+					for (int j = 0; j < 5; j++) {
+						out.putLong(records[r + j]);
+					}
+				}
+				out.force();
+			}
+			this.index = null;
+			Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		load();
+	}
+
+	private int find(long pathHash) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = recordLong(mid, PATH_HASH);
+			if (value < pathHash) {
+				low = mid + 1;
+			} else if (value > pathHash) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private long recordLong(int record, int field) {
+		return index.getLong(HEADER_BYTES + record * RECORD_BYTES + field);
+	}
+
+	private String relative(Path file) {
+		return root.relativize(file).toString().replace('\\', '/');
+	}
+
+	/**
+	 * Lists the modules of the reactor {@code args} builds, including those of
+	 * profiles that are active for certain: profiles {@code -P} activates, and
+	 * profiles active by default in a POM none of whose profiles {@code -P}
+	 * activates. Activation by property, JDK, OS or file is not evaluated. The
+	 * files of a module such a profile adds count towards the module declaring
+	 * the profile, which builds more than necessary but never selects a module
+	 * that is not part of the reactor.
+	 *
+	 * @return every module of the reactor as a path relative to the root, the
+	 *         root itself being {@value #ROOT_MODULE}
+	 */
+	List<String> modules(CliArgsBuilder args) {
+		Set<String> active = new HashSet<String>();
+		Set<String> inactive = new HashSet<String>();
+		for (String profile : args.freeze().getActivateProfiles()) {
+			String id = profile.trim();
+			if (id.startsWith("-") || id.startsWith("!")) {
+				inactive.add(id.substring(1));
+			} else if (id.startsWith("+")) {
+				active.add(id.substring(1));
+			} else if (!id.isEmpty()) {
+				active.add(id);
+			}
+		}
+		List<String> modules = new ArrayList<String>();
+		collectModules(root, ROOT_MODULE, modules, active, inactive);
+		return modules;
+	}
+
+	private void collectModules(Path dir, String relative, List<String> modules, Set<String> active,
+			Set<String> inactive) {
+		Path pom = dir.resolve(SourceFingerprint.POM);
+		if (!Files.isRegularFile(pom) || modules.contains(relative)) {
+			return;
+		}
+		modules.add(relative);
+		Model model;
+		try (Reader reader = Files.newBufferedReader(pom, StandardCharsets.UTF_8)) {
+			model = new MavenXpp3Reader().read(reader, false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (XmlPullParserException e) {
+			throw new IllegalStateException("cannot read " + pom, e);
+		}
+		for (String module : activeModules(model, active, inactive)) {
+			Path moduleDir = dir.resolve(module).normalize();
+			if (moduleDir.getFileName() != null && moduleDir.getFileName().toString().endsWith(".xml")) {
+				moduleDir = moduleDir.getParent();
+			}
+			collectModules(moduleDir, root.relativize(moduleDir).toString().replace('\\', '/'), modules, active,
+					inactive);
+		}
+	}
+
+	private static List<String> activeModules(Model model, Set<String> active, Set<String> inactive) {
+		List<String> modules = new ArrayList<String>(model.getModules());
+		boolean explicit = false;
+		for (Profile profile : model.getProfiles()) {
+			explicit |= active.contains(profile.getId()) && !inactive.contains(profile.getId());
+		}
+		for (Profile profile : model.getProfiles()) {
+			if (inactive.contains(profile.getId())) {
+				continue;
+			}
+			boolean byDefault = !explicit && profile.getActivation() != null
+					&& profile.getActivation().isActiveByDefault();
+			if (byDefault || active.contains(profile.getId())) {
+				modules.addAll(profile.getModules());
+			}
+		}
+		return modules;
+	}
+
+	private static String owningModule(String relativeFile, List<String> modules) {
+		String owner = ROOT_MODULE;
+		int longest = 0;
+		for (String module : modules) {
+			if (module.length() > longest && relativeFile.startsWith(module)
+					&& relativeFile.length() > module.length() && relativeFile.charAt(module.length()) == '/') {
+				owner = module;
+				longest = module.length();
+			}
+		}
+		return owner;
+	}
+
+	/**
+	 * 64-bit FNV-1a over the UTF-8 bytes of {@code value}.
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < bytes.length; i++) {
+			hash ^= bytes[i] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+}
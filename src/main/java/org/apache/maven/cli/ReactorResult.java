@@ -0,0 +1,50 @@
+package org.apache.maven.cli;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The share of a reactor run that belongs to one caller of a
+ * {@link CoalescingMavenExecutor}: the outcome of every module the caller's
+ * arguments selected. The exit code is {@code 0} only if all of them were built
+ * successfully.
+ */
+public class ReactorResult extends BuildResult {
+
+	public enum Outcome {
+		SUCCESS, FAILURE,
+		/** Not built, for example because a module it depends on failed. */
+		SKIPPED
+	}
+
+	private final Map<String, Outcome> modules;
+	private final int batchSize;
+
+	ReactorResult(int exitCode, long durationNanos, boolean coldStart, Map<String, Outcome> modules, int batchSize) {
+		super(exitCode, durationNanos, coldStart);
+		this.modules = modules;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the outcome per {@code groupId:artifactId}, in reactor order; empty
+	 *         if the run failed before the reactor was built
+	 */
+	public Map<String, Outcome> getModules() {
+		return this.modules;
+	}
+
+	/**
+	 * @return how many invocations shared the reactor run
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ReactorResult [exitCode=" + getExitCode() + ", durationMillis=" + getDuration(TimeUnit.MILLISECONDS)
+				+ ", batchSize=" + batchSize + ", modules=" + modules + "]";
+	}
+
+}
@@ -0,0 +1,481 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.PluginRealmCache;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.codehaus.plexus.classworlds.realm.NoSuchRealmException;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.WorkspaceRepository;
+
+/**
+ * Keeps plugin class realms in a warm container, so the next invocation finds
+ * the compiler, surefire and the rest with their classes already loaded and
+ * compiled.
+ * <p>
+ * A realm is keyed like Maven's own cache: by the plugin coordinates and its
+ * declared dependencies, the repositories, the parent realm, the imports and
+ * the dependency filter. The reactor is part of that key, so a realm built from
+ * repository artifacts only is also found by its coordinates alone from any
+ * reactor that does not contain one of those artifacts. The resolved dependency
+ * set is checked again on the first use in each invocation, and a realm is
+ * recreated once one of its files has changed. Realms that load classes from
+ * the reactor are not kept past the invocation that built them.
+ * <p>
+ * Every project using a realm holds a reference to it until its invocation
+ * ends. Beyond the configured bound, the least recently used realms nobody
+ * references are disposed. Invocations on one container are serialized.
+ */
+public class SharedPluginRealmCache implements PluginRealmCache, Disposable {
+
+	public static final int DEFAULT_MAX_REALMS = 128;
+
+	private static final class RealmKey implements Key {
+		private final Plugin plugin;
+		private final WorkspaceRepository workspace;
+		private final LocalRepository localRepository;
+		private final List<RemoteRepository> repositories;
+		private final ClassLoader parentRealm;
+		private final Map<String, ClassLoader> foreignImports;
+		private final DependencyFilter filter;
+		private final int hashCode;
+
+		private RealmKey(Plugin plugin, WorkspaceRepository workspace, LocalRepository localRepository,
+				List<RemoteRepository> repositories, ClassLoader parentRealm, Map<String, ClassLoader> foreignImports,
+				DependencyFilter filter) {
+			this.plugin = plugin;
+			this.workspace = workspace;
+			this.localRepository = localRepository;
+			this.repositories = repositories;
+			this.parentRealm = parentRealm;
+			this.foreignImports = foreignImports;
+			this.filter = filter;
+			this.hashCode = Objects.hash(coordinates(plugin), workspace, localRepository,
+					RepositoryUtils.repositoriesHashCode(repositories), System.identityHashCode(parentRealm),
+					foreignImports, filter);
+		}
+
+		private RealmKey withoutWorkspace() {
+			return new RealmKey(plugin, null, localRepository, repositories, parentRealm, foreignImports, filter);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof RealmKey)) {
+				return false;
+			}
+			RealmKey other = (RealmKey) obj;
+			return parentRealm == other.parentRealm && pluginEquals(plugin, other.plugin)
+					&& Objects.equals(workspace, other.workspace)
+					&& Objects.equals(localRepository, other.localRepository)
+					&& RepositoryUtils.repositoriesEquals(repositories, other.repositories)
+					&& Objects.equals(filter, other.filter) && Objects.equals(foreignImports, other.foreignImports);
+		}
+
+		@Override
+		public String toString() {
+			return plugin.getId();
+		}
+	}
+
+	private static final class Cached {
+		private final CacheRecord record;
+		private final List<RealmKey> keys = new ArrayList<RealmKey>(1);
+		private final long[] stamps;
+		private final boolean reactor;
+		private RealmKey sharedKey;
+		private long generation;
+		private int references;
+		private boolean retired;
+
+		private Cached(CacheRecord record, boolean reactor, long generation) {
+			this.record = record;
+			this.stamps = stamps(record.getArtifacts());
+			this.reactor = reactor;
+			this.generation = generation;
+		}
+	}
+
+	private final int maxRealms;
+	private final Map<RealmKey, Cached> byKey = new HashMap<RealmKey, Cached>();
+	private final Map<RealmKey, Cached> byCoordinates = new HashMap<RealmKey, Cached>();
+	private final Map<Cached, Cached> realms = new LinkedHashMap<Cached, Cached>(16, 0.75f, true);
+	private final Map<MavenProject, Set<Cached>> leases = new IdentityHashMap<MavenProject, Set<Cached>>();
+	private long generation;
+
+	private final LongAdder reused = new LongAdder();
+	private final LongAdder reusedAcrossReactors = new LongAdder();
+	private final LongAdder created = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public SharedPluginRealmCache() {
+		this(DEFAULT_MAX_REALMS);
+	}
+
+	/**
+	 * @param maxRealms realms retained once no project references them
+	 */
+	public SharedPluginRealmCache(int maxRealms) {
+		if (maxRealms < 1) {
+			throw new IllegalArgumentException("maxRealms must be positive: " + maxRealms);
+		}
+		this.maxRealms = maxRealms;
+	}
+
+	@Override
+	public Key createKey(Plugin plugin, ClassLoader parentRealm, Map<String, ClassLoader> foreignImports,
+			DependencyFilter dependencyFilter, List<RemoteRepository> repositories, RepositorySystemSession session) {
+		List<RemoteRepository> flattened = new ArrayList<RemoteRepository>(repositories.size());
+		for (RemoteRepository repository : repositories) {
+			if (repository.isRepositoryManager()) {
+				flattened.addAll(repository.getMirroredRepositories());
+			} else {
+				flattened.add(repository);
+			}
+		}
+		return new RealmKey(plugin.clone(), RepositoryUtils.getWorkspace(session), session.getLocalRepository(),
+				flattened, parentRealm,
+				foreignImports != null ? foreignImports : Collections.<String, ClassLoader>emptyMap(),
+				dependencyFilter);
+	}
+
+	@Override
+	public CacheRecord get(Key key) {
+		RealmKey realmKey = (RealmKey) key;
+		synchronized (realms) {
+			Cached cached = byKey.get(realmKey);
+			boolean acrossReactors = false;
+			if (cached == null && realmKey.workspace != null) {
+				cached = byCoordinates.get(realmKey.withoutWorkspace());
+				if (cached == null || !isVisible(cached.record.getArtifacts(), realmKey.workspace)) {
+					return null;
+				}
+				acrossReactors = true;
+			}
+			if (cached == null) {
+				return null;
+			}
+			if (cached.generation != generation) {
+				if (cached.reactor || !Arrays.equals(cached.stamps, stamps(cached.record.getArtifacts()))) {
+					invalidations.increment();
+					remove(cached);
+					return null;
+				}
+				cached.generation = generation;
+			}
+			if (acrossReactors) {
+				cached.keys.add(realmKey);
+				byKey.put(realmKey, cached);
+				reusedAcrossReactors.increment();
+			}
+			realms.get(cached);
+			reused.increment();
+			return cached.record;
+		}
+	}
+
+	@Override
+	public CacheRecord put(Key key, ClassRealm pluginRealm, List<Artifact> pluginArtifacts) {
+		Objects.requireNonNull(pluginRealm, "pluginRealm cannot be null");
+		Objects.requireNonNull(pluginArtifacts, "pluginArtifacts cannot be null");
+		RealmKey realmKey = (RealmKey) key;
+		synchronized (realms) {
+			if (byKey.containsKey(realmKey)) {
+				throw new IllegalStateException("Duplicate plugin realm for plugin " + key);
+			}
+			boolean reactor = !isVisible(pluginArtifacts, realmKey.workspace);
+			Cached cached = new Cached(new CacheRecord(pluginRealm, pluginArtifacts), reactor, generation);
+			cached.keys.add(realmKey);
+			byKey.put(realmKey, cached);
+			if (!reactor && realmKey.workspace != null) {
+				RealmKey sharedKey = realmKey.withoutWorkspace();
+				if (byCoordinates.putIfAbsent(sharedKey, cached) == null) {
+					cached.sharedKey = sharedKey;
+				}
+			}
+			realms.put(cached, cached);
+			created.increment();
+			evict();
+			return cached.record;
+		}
+	}
+
+	@Override
+	public void register(MavenProject project, Key key, CacheRecord record) {
+		synchronized (realms) {
+			Cached cached = byKey.get((RealmKey) key);
+			if (cached == null || cached.record != record) {
+				return;
+			}
+			Set<Cached> used = leases.get(project);
+			if (used == null) {
+				used = Collections.newSetFromMap(new IdentityHashMap<Cached, Boolean>());
+				leases.put(project, used);
+			}
+			if (used.add(cached)) {
+				cached.references++;
+			}
+		}
+	}
+
+	/**
+	 * Drops the references the projects of the finished invocation hold, and
+	 * has every realm checked again on its next use.
+	 */
+	void release() {
+		synchronized (realms) {
+			for (Set<Cached> used : leases.values()) {
+				for (Cached cached : used) {
+					if (--cached.references == 0 && cached.retired) {
+						dispose(cached.record.getRealm());
+					}
+				}
+			}
+			leases.clear();
+			generation++;
+			evict();
+		}
+	}
+
+	private void evict() {
+		Iterator<Cached> iterator = realms.keySet().iterator();
+		while (realms.size() > maxRealms && iterator.hasNext()) {
+			Cached cached = iterator.next();
+			if (cached.references == 0) {
+				iterator.remove();
+				unmap(cached);
+				dispose(cached.record.getRealm());
+				evictions.increment();
+			}
+		}
+	}
+
+	private void remove(Cached cached) {
+		realms.remove(cached);
+		unmap(cached);
+		if (cached.references == 0) {
+			dispose(cached.record.getRealm());
+		} else {
+			// still loading classes for a running build, disposed once released
+			cached.retired = true;
+		}
+	}
+
+	private void unmap(Cached cached) {
+		for (RealmKey key : cached.keys) {
+			byKey.remove(key);
+		}
+		if (cached.sharedKey != null) {
+			byCoordinates.remove(cached.sharedKey);
+		}
+	}
+
+	@Override
+	public void flush() {
+		synchronized (realms) {
+			for (Cached cached : realms.keySet()) {
+				dispose(cached.record.getRealm());
+			}
+			byKey.clear();
+			byCoordinates.clear();
+			realms.clear();
+			leases.clear();
+		}
+	}
+
+	@Override
+	public void dispose() {
+		flush();
+	}
+
+	private static void dispose(ClassRealm realm) {
+		try {
+			realm.getWorld().disposeRealm(realm.getId());
+		} catch (NoSuchRealmException e) {
+			// already gone
+		}
+	}
+
+	/**
+	 * @return whether none of the artifacts would come from the reactor behind
+	 *         the given workspace
+	 */
+	private static boolean isVisible(List<Artifact> artifacts, WorkspaceRepository workspace) {
+		if (workspace == null) {
+			return true;
+		}
+		Object projects = workspace.getKey();
+		if (!(projects instanceof Collection)) {
+			return false;
+		}
+		for (Artifact artifact : artifacts) {
+			if (((Collection<?>) projects).contains(
+					ArtifactUtils.key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long[] stamps(List<Artifact> artifacts) {
+		long[] stamps = new long[artifacts.size() * 2];
+		for (int i = 0; i < artifacts.size(); i++) {
+			File file = artifacts.get(i).getFile();
+			stamps[2 * i] = file == null ? -1 : file.length();
+			stamps[2 * i + 1] = file == null ? -1 : file.lastModified();
+		}
+		return stamps;
+	}
+
+	private static String coordinates(Plugin plugin) {
+		return plugin.getGroupId() + ':' + plugin.getArtifactId() + ':' + plugin.getVersion();
+	}
+
+	/**
+	 * Same as Maven's own cache: coordinates plus declared dependencies and
+	 * their exclusions.
+	 */
+	private static boolean pluginEquals(Plugin a, Plugin b) {
+		if (!coordinates(a).equals(coordinates(b))) {
+			return false;
+		}
+		List<Dependency> dependencies = a.getDependencies();
+		List<Dependency> others = b.getDependencies();
+		if (dependencies.size() != others.size()) {
+			return false;
+		}
+		for (int i = 0; i < dependencies.size(); i++) {
+			Dependency dependency = dependencies.get(i);
+			Dependency other = others.get(i);
+			if (!Objects.equals(dependency.getGroupId(), other.getGroupId())
+					|| !Objects.equals(dependency.getArtifactId(), other.getArtifactId())
+					|| !Objects.equals(dependency.getVersion(), other.getVersion())
+					|| !Objects.equals(dependency.getType(), other.getType())
+					|| !Objects.equals(dependency.getClassifier(), other.getClassifier())
+					|| !Objects.equals(dependency.getScope(), other.getScope())
+					|| !exclusionsEqual(dependency.getExclusions(), other.getExclusions())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean exclusionsEqual(List<Exclusion> exclusions, List<Exclusion> others) {
+		if (exclusions.size() != others.size()) {
+			return false;
+		}
+		for (int i = 0; i < exclusions.size(); i++) {
+			if (!Objects.equals(exclusions.get(i).getGroupId(), others.get(i).getGroupId())
+					|| !Objects.equals(exclusions.get(i).getArtifactId(), others.get(i).getArtifactId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return lookups answered with a retained realm
+	 */
+	public long getReused() {
+		return reused.sum();
+	}
+
+	/**
+	 * @return reused realms found by their coordinates from another reactor
+	 */
+	public long getReusedAcrossReactors() {
+		return reusedAcrossReactors.sum();
+	}
+
+	/**
+	 * @return realms built because none could be reused
+	 */
+	public long getCreated() {
+		return created.sum();
+	}
+
+	/**
+	 * @return unreferenced realms disposed to stay within the bound
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return realms dropped because a file they load from changed, or because
+	 *         they load from the reactor of an earlier invocation
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * @return reused over reused and created, {@code 0} before the first lookup
+	 */
+	public double getReuseRatio() {
+		long reused = getReused();
+		long lookups = reused + getCreated();
+		return lookups == 0 ? 0 : (double) reused / lookups;
+	}
+
+	public int size() {
+		synchronized (realms) {
+			return realms.size();
+		}
+	}
+
+	/**
+	 * @return retained realms referenced by a project of the running invocation
+	 */
+	public int getReferenced() {
+		synchronized (realms) {
+			int referenced = 0;
+			for (Cached cached : realms.keySet()) {
+				if (cached.references > 0) {
+					referenced++;
+				}
+			}
+			return referenced;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SharedPluginRealmCache [realms=" + size() + ", reused=" + getReused() + ", created=" + getCreated()
+				+ ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + "]";
+	}
+
+}
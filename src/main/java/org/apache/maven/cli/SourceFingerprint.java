@@ -0,0 +1,281 @@
+package org.apache.maven.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Content fingerprints of the build inputs of a project tree: every
+ * {@code pom.xml}, everything under {@code src} directories and
+ * {@code .mvn}, and the parent POMs outside the tree that those POMs reach
+ * through {@code relativePath}. The {@code target} directory next to each
+ * {@code pom.xml} and
+ * hidden directories outside {@code src} are skipped; in a source tree,
+ * directories with those names are inputs like any other. Digests are memoized
+ * by path, size and modification time, so unchanged files are only read once.
+ * The memo forgets files that are gone from a tree when it is fingerprinted
+ * again, and the least recently used ones beyond {@link #DEFAULT_MAX_STAMPS}.
+ */
+class SourceFingerprint {
+
+	static final String POM = "pom.xml";
+	private static final String SRC = "src";
+	private static final String DOT_MVN = ".mvn";
+	private static final String TARGET = "target";
+	static final int DEFAULT_MAX_STAMPS = 100_000;
+
+	private static class Stamp {
+		private final long size;
+		private final long modified;
+		private final byte[] digest;
+		/** Only set for POMs, see {@link SourceFingerprint#parentPom(Path)}. */
+		private volatile Path parentPom;
+		private volatile boolean parentResolved;
+
+		private Stamp(long size, long modified, byte[] digest) {
+			this.size = size;
+			this.modified = modified;
+			this.digest = digest;
+		}
+	}
+
+	private final Map<Path, Stamp> stamps;
+
+	SourceFingerprint() {
+		this(DEFAULT_MAX_STAMPS);
+	}
+
+	/**
+	 * @param maxStamps the most files whose digest is memoized
+	 */
+	SourceFingerprint(int maxStamps) {
+		this.stamps = Collections.synchronizedMap(new LinkedHashMap<Path, Stamp>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, Stamp> eldest) {
+				return size() > maxStamps;
+			}
+		});
+	}
+
+	/**
+	 * @return every build input under {@code root}, sorted by path
+	 */
+	static List<Path> inputs(Path root) {
+		List<Path> files = new ArrayList<Path>();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					if (dir.equals(root)) {
+						return FileVisitResult.CONTINUE;
+					}
+					String name = dir.getFileName().toString();
+					if (TARGET.equals(name) && Files.isRegularFile(dir.resolveSibling(POM))) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					if (name.startsWith(".") && !DOT_MVN.equals(name) && !isUnderSrc(root.relativize(dir))) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (attrs.isRegularFile() && isInput(root.relativize(file))) {
+						files.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static boolean isUnderSrc(Path relative) {
+		for (int i = 0; i < relative.getNameCount() - 1; i++) {
+			if (SRC.equals(relative.getName(i).toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isInput(Path relative) {
+		if (POM.equals(relative.getFileName().toString())) {
+			return true;
+		}
+		for (Path element : relative) {
+			String name = element.toString();
+			if (SRC.equals(name) || DOT_MVN.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a SHA-256 over the relative path and content of every input under
+	 *         {@code root}, and the path and content of the parent POMs outside
+	 *         of it that their POMs name with {@code relativePath}
+	 */
+	byte[] fingerprint(Path root) {
+		MessageDigest tree = sha256();
+		List<Path> inputs = inputs(root);
+		for (Path file : inputs) {
+			tree.update(root.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+			tree.update((byte) 0);
+			tree.update(digest(file));
+		}
+		for (Path parent : externalParents(root, inputs)) {
+			tree.update(parent.toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+			tree.update((byte) 0);
+			tree.update(digest(parent));
+		}
+		Set<Path> present = new HashSet<Path>(inputs);
+		synchronized (stamps) {
+			stamps.keySet().removeIf(file -> file.startsWith(root) && !present.contains(file));
+		}
+		return tree.digest();
+	}
+
+	/**
+	 * @return the number of files whose digest is memoized
+	 */
+	int size() {
+		return stamps.size();
+	}
+
+	/**
+	 * Follows the parents of the POMs among {@code inputs} for as long as they
+	 * are files outside {@code root}. Parents that are only resolved from a
+	 * repository are not included.
+	 *
+	 * @return the parent POMs outside {@code root}, sorted by path
+	 */
+	private List<Path> externalParents(Path root, List<Path> inputs) {
+		Path base = root.toAbsolutePath().normalize();
+		Set<Path> parents = new TreeSet<Path>();
+		Deque<Path> poms = new ArrayDeque<Path>();
+		for (Path file : inputs) {
+			if (POM.equals(file.getFileName().toString())) {
+				poms.add(file);
+			}
+		}
+		while (!poms.isEmpty()) {
+			Path parent = parentPom(poms.poll());
+			if (parent != null && !parent.startsWith(base) && parents.add(parent)) {
+				poms.add(parent);
+			}
+		}
+		return new ArrayList<Path>(parents);
+	}
+
+	/**
+	 * @return the existing file the {@code relativePath} of the parent of
+	 *         {@code pom} points to, or {@code null}
+	 */
+	private Path parentPom(Path pom) {
+		Stamp stamp = stamp(pom);
+		if (!stamp.parentResolved) {
+			stamp.parentPom = readParentPom(pom);
+			stamp.parentResolved = true;
+		}
+		return stamp.parentPom;
+	}
+
+	private static Path readParentPom(Path pom) {
+		Model model;
+		try (Reader reader = Files.newBufferedReader(pom, StandardCharsets.UTF_8)) {
+			model = new MavenXpp3Reader().read(reader, false);
+		} catch (IOException | XmlPullParserException | RuntimeException e) {
+			// the build reports a POM it cannot read
+			return null;
+		}
+		Parent parent = model.getParent();
+		if (parent == null || parent.getRelativePath() == null || parent.getRelativePath().isBlank()) {
+			return null;
+		}
+		Path resolved = pom.toAbsolutePath().getParent().resolve(parent.getRelativePath().trim()).normalize();
+		if (Files.isDirectory(resolved)) {
+			resolved = resolved.resolve(POM);
+		}
+		return Files.isRegularFile(resolved) ? resolved : null;
+	}
+
+	byte[] digest(Path file) {
+		return stamp(file).digest;
+	}
+
+	private Stamp stamp(Path file) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			long size = attrs.size();
+			long modified = attrs.lastModifiedTime().toMillis();
+			Stamp stamp = stamps.get(file);
+			if (stamp == null || stamp.size != size || stamp.modified != modified) {
+				stamp = new Stamp(size, modified, contentDigest(file));
+				stamps.put(file, stamp);
+			}
+			return stamp;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static byte[] contentDigest(Path file) throws IOException {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return digest.digest();
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+}
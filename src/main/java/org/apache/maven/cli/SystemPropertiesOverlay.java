@@ -0,0 +1,374 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Confines the system properties an embedded invocation sets, with {@code -D}
+ * or from a plugin, to that invocation. While invocations run, {@link System}
+ * reads and writes go to a private copy of the properties when the calling
+ * thread, or the thread that started it, runs an invocation, and to the JVM's
+ * own properties otherwise. The copy also carries the working directory of the
+ * invocation as {@code user.dir}; this only affects code that reads the
+ * property, relative {@link File}s still resolve against the directory the JVM
+ * was started in.
+ * <p>
+ * Threads started during an invocation, such as the builder threads of a
+ * parallel build, only share its copy until it ends. A thread that outlives
+ * it, such as a pooled worker a later invocation reuses, sees the JVM's own
+ * properties from then on, and does not keep the copy reachable. The JVM's
+ * properties are put back in place once no invocation is running.
+ */
+final class SystemPropertiesOverlay extends Properties {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String USER_DIR = "user.dir";
+
+	private static final ThreadLocal<Scope> CURRENT = new InheritableThreadLocal<Scope>();
+
+	/** Invocations running; guarded by the class. */
+	private static int running;
+
+	/**
+	 * The properties of one invocation, cleared when it ends so that threads
+	 * that inherited the scope fall back to the JVM's properties.
+	 */
+	private static final class Scope {
+		volatile Properties properties;
+
+		Scope(Properties properties) {
+			this.properties = properties;
+		}
+	}
+
+	private final transient Properties base;
+
+	private SystemPropertiesOverlay(Properties base) {
+		this.base = base;
+	}
+
+	/**
+	 * Runs {@code action} with a copy of the properties the calling thread sees,
+	 * in which {@code user.dir} is {@code workingDirectory}.
+	 */
+	static <T> T run(File workingDirectory, Supplier<T> action) {
+		Properties base = install();
+		Scope previous = active();
+		Properties properties = new Properties();
+		try {
+			properties.putAll(previous != null ? previous.properties : base);
+			properties.setProperty(USER_DIR, workingDirectory.getAbsolutePath());
+			Scope scope = new Scope(properties);
+			CURRENT.set(scope);
+			try {
+				return action.get();
+			} finally {
+				scope.properties = null;
+				if (previous != null) {
+					CURRENT.set(previous);
+				} else {
+					CURRENT.remove();
+				}
+			}
+		} finally {
+			uninstall();
+		}
+	}
+
+	/**
+	 * @return the JVM's own properties
+	 */
+	private static synchronized Properties install() {
+		running++;
+		Properties properties = System.getProperties();
+		if (properties instanceof SystemPropertiesOverlay) {
+			return ((SystemPropertiesOverlay) properties).base;
+		}
+		System.setProperties(new SystemPropertiesOverlay(properties));
+		return properties;
+	}
+
+	private static synchronized void uninstall() {
+		if (--running == 0) {
+			Properties properties = System.getProperties();
+			if (properties instanceof SystemPropertiesOverlay) {
+				System.setProperties(((SystemPropertiesOverlay) properties).base);
+			}
+		}
+	}
+
+	/**
+	 * @return the scope of the invocation the calling thread belongs to, or
+	 *         {@code null} if it belongs to none or that invocation has ended
+	 */
+	private static Scope active() {
+		Scope scope = CURRENT.get();
+		if (scope != null && scope.properties == null) {
+			CURRENT.remove();
+			return null;
+		}
+		return scope;
+	}
+
+	/**
+	 * @return {@code true} while the JVM's properties are replaced by the overlay
+	 */
+	static synchronized boolean isInstalled() {
+		return running > 0;
+	}
+
+	private Properties current() {
+		Scope scope = CURRENT.get();
+		if (scope != null) {
+			Properties properties = scope.properties;
+			if (properties != null) {
+				return properties;
+			}
+			CURRENT.remove();
+		}
+		return base;
+	}
+
+	@Override
+	public String getProperty(String key) {
+		return current().getProperty(key);
+	}
+
+	@Override
+	public String getProperty(String key, String defaultValue) {
+		return current().getProperty(key, defaultValue);
+	}
+
+	@Override
+	public Object setProperty(String key, String value) {
+		return current().setProperty(key, value);
+	}
+
+	@Override
+	public Enumeration<?> propertyNames() {
+		return current().propertyNames();
+	}
+
+	@Override
+	public Set<String> stringPropertyNames() {
+		return current().stringPropertyNames();
+	}
+
+	@Override
+	public void load(Reader reader) throws IOException {
+		current().load(reader);
+	}
+
+	@Override
+	public void load(InputStream inStream) throws IOException {
+		current().load(inStream);
+	}
+
+	@Override
+	public void store(Writer writer, String comments) throws IOException {
+		current().store(writer, comments);
+	}
+
+	@Override
+	public void store(OutputStream out, String comments) throws IOException {
+		current().store(out, comments);
+	}
+
+	@Override
+	public void loadFromXML(InputStream in) throws IOException {
+		current().loadFromXML(in);
+	}
+
+	@Override
+	public void storeToXML(OutputStream os, String comment) throws IOException {
+		current().storeToXML(os, comment);
+	}
+
+	@Override
+	public void storeToXML(OutputStream os, String comment, String encoding) throws IOException {
+		current().storeToXML(os, comment, encoding);
+	}
+
+	@Override
+	public void storeToXML(OutputStream os, String comment, Charset charset) throws IOException {
+		current().storeToXML(os, comment, charset);
+	}
+
+	@Override
+	public void list(PrintStream out) {
+		current().list(out);
+	}
+
+	@Override
+	public void list(PrintWriter out) {
+		current().list(out);
+	}
+
+	@Override
+	public int size() {
+		return current().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return current().isEmpty();
+	}
+
+	@Override
+	public Enumeration<Object> keys() {
+		return current().keys();
+	}
+
+	@Override
+	public Enumeration<Object> elements() {
+		return current().elements();
+	}
+
+	@Override
+	public boolean contains(Object value) {
+		return current().contains(value);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return current().containsValue(value);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return current().containsKey(key);
+	}
+
+	@Override
+	public Object get(Object key) {
+		return current().get(key);
+	}
+
+	@Override
+	public Object getOrDefault(Object key, Object defaultValue) {
+		return current().getOrDefault(key, defaultValue);
+	}
+
+	@Override
+	public Object put(Object key, Object value) {
+		return current().put(key, value);
+	}
+
+	@Override
+	public Object putIfAbsent(Object key, Object value) {
+		return current().putIfAbsent(key, value);
+	}
+
+	@Override
+	public void putAll(Map<?, ?> t) {
+		current().putAll(t);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		return current().remove(key);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		return current().remove(key, value);
+	}
+
+	@Override
+	public Object replace(Object key, Object value) {
+		return current().replace(key, value);
+	}
+
+	@Override
+	public boolean replace(Object key, Object oldValue, Object newValue) {
+		return current().replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+		current().replaceAll(function);
+	}
+
+	@Override
+	public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+		return current().computeIfAbsent(key, mappingFunction);
+	}
+
+	@Override
+	public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		return current().computeIfPresent(key, remappingFunction);
+	}
+
+	@Override
+	public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		return current().compute(key, remappingFunction);
+	}
+
+	@Override
+	public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		return current().merge(key, value, remappingFunction);
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Object, ? super Object> action) {
+		current().forEach(action);
+	}
+
+	@Override
+	public void clear() {
+		current().clear();
+	}
+
+	@Override
+	public Set<Object> keySet() {
+		return current().keySet();
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return current().values();
+	}
+
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		return current().entrySet();
+	}
+
+	@Override
+	public Object clone() {
+		return current().clone();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return current().equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return current().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return current().toString();
+	}
+
+}
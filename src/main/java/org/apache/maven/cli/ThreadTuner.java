@@ -0,0 +1,606 @@
+package org.apache.maven.cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Chooses the {@code -T} value of a reactor from a profile of its earlier
+ * builds. Attach it to invocations with
+ * {@link CliArgsBuilder#threadTuning(ThreadTuner)}: every successful module's
+ * wall time and the module dependencies of the reactor are recorded into the
+ * profile file, and invocations that do not set {@code threads} themselves
+ * are given {@link #recommend()}.
+ * <p>
+ * Predictions replay Maven's multi-threaded builder on the profile: a module
+ * starts on the first free thread once every module it depends on has been
+ * built, ready modules in reactor order. The recommendation is the fewest
+ * threads, up to the available cores, whose predicted wall time is within
+ * {@value #TOLERANCE_PERCENT}% of the shortest one, so threads that would only
+ * wait for the critical path are not started. Module times are averaged with
+ * exponentially decreasing weights, and modules that leave the reactor are
+ * dropped from the profile, so it follows a reactor that changes.
+ * <p>
+ * A profile describes one reactor selection; builds of a subset with
+ * {@code -pl} should use a tuner and file of their own. Thread-safe.
+ */
+public class ThreadTuner {
+
+	private static final int MAGIC = 0x4d425454;
+	private static final int VERSION = 1;
+	static final int TOLERANCE_PERCENT = 2;
+
+	/**
+	 * The prediction for one invocation and what it actually took.
+	 */
+	public static final class Report {
+		private final int threads;
+		private final int modules;
+		private final long predictedNanos;
+		private final long predictedSerialNanos;
+		private final long actualNanos;
+		private final long serialNanos;
+		private final List<String> criticalPath;
+		private final long criticalPathNanos;
+
+		Report(int threads, int modules, long predictedNanos, long predictedSerialNanos, long actualNanos,
+				long serialNanos, List<String> criticalPath, long criticalPathNanos) {
+			this.threads = threads;
+			this.modules = modules;
+			this.predictedNanos = predictedNanos;
+			this.predictedSerialNanos = predictedSerialNanos;
+			this.actualNanos = actualNanos;
+			this.serialNanos = serialNanos;
+			this.criticalPath = criticalPath;
+			this.criticalPathNanos = criticalPathNanos;
+		}
+
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public int getModules() {
+			return this.modules;
+		}
+
+		/**
+		 * @return the wall time the profile predicted for the reactor, or {@code -1}
+		 *         if it did not know every module yet
+		 */
+		public long getPredicted(TimeUnit unit) {
+			return predictedNanos < 0 ? -1 : unit.convert(predictedNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return from the first module started to the last one finished
+		 */
+		public long getActual(TimeUnit unit) {
+			return unit.convert(actualNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return the predicted serial time over the predicted wall time, or
+		 *         {@code NaN} without a prediction
+		 */
+		public double getPredictedSpeedup() {
+			return predictedNanos <= 0 ? Double.NaN : (double) predictedSerialNanos / predictedNanos;
+		}
+
+		/**
+		 * @return the sum of the module times of this invocation over its wall
+		 *         time
+		 */
+		public double getActualSpeedup() {
+			return actualNanos <= 0 ? Double.NaN : (double) serialNanos / actualNanos;
+		}
+
+		/**
+		 * @return the modules of the longest dependency chain of the profile after
+		 *         this invocation, first built first
+		 */
+		public List<String> getCriticalPath() {
+			return this.criticalPath;
+		}
+
+		public long getCriticalPath(TimeUnit unit) {
+			return unit.convert(criticalPathNanos, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"Report [threads=%d, modules=%d, predictedMillis=%d, actualMillis=%d, predictedSpeedup=%.2f, "
+							+ "actualSpeedup=%.2f, criticalPathMillis=%d]",
+					threads, modules, getPredicted(TimeUnit.MILLISECONDS), getActual(TimeUnit.MILLISECONDS),
+					getPredictedSpeedup(), getActualSpeedup(), getCriticalPath(TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private static final class Module {
+		private final String key;
+		/** {@code 0} until the module was built successfully. */
+		private final long nanos;
+		private final List<String> upstream;
+
+		Module(String key, long nanos, List<String> upstream) {
+			this.key = key;
+			this.nanos = nanos;
+			this.upstream = upstream;
+		}
+	}
+
+	/** Per invocation state; events of parallel builds arrive on several threads. */
+	private class Listener extends AbstractExecutionListener {
+		private final int threads;
+		private final Map<MavenProject, Long> started = new ConcurrentHashMap<MavenProject, Long>();
+		private final Map<String, Long> built = new ConcurrentHashMap<String, Long>();
+		private volatile List<Module> reactor;
+		private volatile long predictedNanos = -1;
+		private volatile long predictedSerialNanos;
+		private boolean moduleStarted;
+		private long firstStart;
+		private long lastEnd;
+
+		Listener(int threads) {
+			this.threads = threads;
+		}
+
+		@Override
+		public void sessionStarted(ExecutionEvent event) {
+			List<Module> modules = reactor(event.getSession());
+			this.reactor = modules;
+			synchronized (ThreadTuner.this) {
+				List<Module> known = new ArrayList<Module>(modules.size());
+				long serial = 0;
+				for (Module module : modules) {
+					Module recorded = profile().get(module.key);
+					if (recorded == null || recorded.nanos == 0) {
+						return;
+					}
+					known.add(new Module(module.key, recorded.nanos, module.upstream));
+					serial += recorded.nanos;
+				}
+				this.predictedNanos = makespan(known, threads);
+				this.predictedSerialNanos = serial;
+			}
+		}
+
+		@Override
+		public void projectStarted(ExecutionEvent event) {
+			long now = System.nanoTime();
+			started.put(event.getProject(), now);
+			synchronized (this) {
+				if (!moduleStarted) {
+					moduleStarted = true;
+					firstStart = now;
+				}
+			}
+		}
+
+		@Override
+		public void projectSucceeded(ExecutionEvent event) {
+			long nanos = projectEnded(event);
+			if (nanos >= 0) {
+				built.put(moduleKey(event.getProject()), nanos);
+			}
+		}
+
+		@Override
+		public void projectFailed(ExecutionEvent event) {
+			// a failed module stops early, its time would shorten the profile
+			projectEnded(event);
+		}
+
+		/**
+		 * @return the wall time of the module, {@code -1} if it was not started
+		 */
+		private long projectEnded(ExecutionEvent event) {
+			long now = System.nanoTime();
+			synchronized (this) {
+				lastEnd = Math.max(lastEnd, now);
+			}
+			Long start = started.remove(event.getProject());
+			return start != null ? now - start : -1;
+		}
+
+		@Override
+		public void sessionEnded(ExecutionEvent event) {
+			List<Module> modules = this.reactor;
+			if (modules == null || built.isEmpty()) {
+				return;
+			}
+			long serial = 0;
+			for (long nanos : built.values()) {
+				serial += nanos;
+			}
+			long actual;
+			synchronized (this) {
+				actual = lastEnd - firstStart;
+			}
+			synchronized (ThreadTuner.this) {
+				try {
+					record(modules, built);
+				} catch (UncheckedIOException e) {
+					// the profile stays in memory and is saved again by the next build
+				}
+				List<String> path = new ArrayList<String>();
+				long length = criticalPath(profile.values(), path);
+				lastReport = new Report(threads, modules.size(), predictedNanos, predictedSerialNanos, actual, serial,
+						Collections.unmodifiableList(path), length);
+			}
+		}
+	}
+
+	private final Path profileFile;
+	private final int cores;
+	private Map<String, Module> profile;
+	private volatile Report lastReport;
+
+	/**
+	 * Tunes for the processors available to this JVM.
+	 */
+	public ThreadTuner(File profileFile) {
+		this(profileFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param profileFile where the profile of the reactor is kept; created by the
+	 *                    first successful build
+	 * @param cores       the most threads {@link #recommend()} returns
+	 */
+	public ThreadTuner(File profileFile, int cores) {
+		if (cores < 1) {
+			throw new IllegalArgumentException("cores must be positive: " + cores);
+		}
+		this.profileFile = profileFile.toPath().toAbsolutePath();
+		this.cores = cores;
+	}
+
+	public int getCores() {
+		return this.cores;
+	}
+
+	/**
+	 * @return {@code true} once every module recorded in the profile has been
+	 *         built successfully at least once
+	 */
+	public synchronized boolean hasProfile() {
+		return complete(profile().values());
+	}
+
+	/**
+	 * @return the thread count with the shortest predicted wall time, preferring
+	 *         fewer threads, or {@code 0} without a complete profile
+	 */
+	public synchronized int recommend() {
+		Collection<Module> modules = profile().values();
+		if (!complete(modules)) {
+			return 0;
+		}
+		int limit = Math.min(cores, Math.max(1, modules.size()));
+		long[] makespans = new long[limit + 1];
+		long best = Long.MAX_VALUE;
+		for (int threads = 1; threads <= limit; threads++) {
+			makespans[threads] = makespan(modules, threads);
+			best = Math.min(best, makespans[threads]);
+		}
+		for (int threads = 1; threads < limit; threads++) {
+			if (makespans[threads] <= best + best * TOLERANCE_PERCENT / 100) {
+				return threads;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * @return the predicted wall time of the reactor on {@code threads} threads,
+	 *         or {@code -1} without a complete profile
+	 */
+	public synchronized long predict(int threads, TimeUnit unit) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		Collection<Module> modules = profile().values();
+		return complete(modules) ? unit.convert(makespan(modules, threads), TimeUnit.NANOSECONDS) : -1;
+	}
+
+	/**
+	 * @return the modules of the longest dependency chain of the profile, as
+	 *         {@code groupId:artifactId}, first built first
+	 */
+	public synchronized List<String> getCriticalPath() {
+		List<String> path = new ArrayList<String>();
+		criticalPath(profile().values(), path);
+		return Collections.unmodifiableList(path);
+	}
+
+	/**
+	 * @return the predicted wall time of the reactor on as many threads as it can
+	 *         use, which no thread count can beat
+	 */
+	public synchronized long getCriticalPathLength(TimeUnit unit) {
+		return unit.convert(criticalPath(profile().values(), null), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the report of the most recent invocation, {@code null} before the
+	 *         first one that built a module
+	 */
+	public Report getLastReport() {
+		return this.lastReport;
+	}
+
+	/**
+	 * @param threads the degree of concurrency the invocation runs with
+	 * @return a listener recording the reactor of a single invocation into the
+	 *         profile
+	 */
+	ExecutionListener newListener(int threads) {
+		return new Listener(threads);
+	}
+
+	private static List<Module> reactor(MavenSession session) {
+		List<MavenProject> projects = session.getProjects();
+		ProjectDependencyGraph graph = session.getProjectDependencyGraph();
+		List<Module> modules = new ArrayList<Module>(projects.size());
+		for (MavenProject project : projects) {
+			List<String> upstream = new ArrayList<String>();
+			if (graph != null) {
+				for (MavenProject dependency : graph.getUpstreamProjects(project, false)) {
+					upstream.add(moduleKey(dependency));
+				}
+			}
+			modules.add(new Module(moduleKey(project), 0, upstream));
+		}
+		return modules;
+	}
+
+	private static String moduleKey(MavenProject project) {
+		return project.getGroupId() + ":" + project.getArtifactId();
+	}
+
+	private static boolean complete(Collection<Module> modules) {
+		if (modules.isEmpty()) {
+			return false;
+		}
+		for (Module module : modules) {
+			if (module.nanos == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the dependencies of the modules of {@code reactor} and averages
+	 * the times of those that were built into the profile, then saves it.
+	 * Modules that are no longer part of the reactor are dropped.
+	 */
+	private void record(List<Module> reactor, Map<String, Long> built) {
+		Map<String, Module> previous = profile();
+		Map<String, Module> updated = new LinkedHashMap<String, Module>();
+		for (Module module : reactor) {
+			Module recorded = previous.get(module.key);
+			long nanos = recorded != null ? recorded.nanos : 0;
+			Long measured = built.get(module.key);
+			if (measured != null) {
+				nanos = nanos == 0 ? Math.max(1, measured) : Math.max(1, (nanos + measured) / 2);
+			}
+			updated.put(module.key, new Module(module.key, nanos, module.upstream));
+		}
+		this.profile = updated;
+		save();
+	}
+
+	/**
+	 * Replays Maven's multi-threaded builder: ready modules start in reactor
+	 * order on the first free thread, and a module is ready once everything it
+	 * depends on has finished. Dependencies outside {@code modules} are ignored.
+	 *
+	 * @return the time the last module finishes
+	 */
+	private static long makespan(Collection<Module> modules, int threads) {
+		Module[] order = modules.toArray(new Module[0]);
+		int[] pending = new int[order.length];
+		List<List<Integer>> downstream = downstream(order, pending);
+		Deque<Integer> ready = new ArrayDeque<Integer>();
+		for (int i = 0; i < order.length; i++) {
+			if (pending[i] == 0) {
+				ready.add(i);
+			}
+		}
+		PriorityQueue<long[]> running = new PriorityQueue<long[]>(
+				(a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+		long now = 0;
+		int free = threads;
+		while (true) {
+			while (free > 0 && !ready.isEmpty()) {
+				int next = ready.poll();
+				running.add(new long[] { now + order[next].nanos, next });
+				free--;
+			}
+			long[] finished = running.poll();
+			if (finished == null) {
+				// modules caught in a dependency cycle never become ready
+				return now;
+			}
+			now = finished[0];
+			free++;
+			for (int next : downstream.get((int) finished[1])) {
+				if (--pending[next] == 0) {
+					ready.add(next);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param path receives the modules of the longest chain, or {@code null}
+	 * @return the sum of the times of the longest chain
+	 */
+	private static long criticalPath(Collection<Module> modules, List<String> path) {
+		Module[] order = modules.toArray(new Module[0]);
+		int[] pending = new int[order.length];
+		List<List<Integer>> downstream = downstream(order, pending);
+		long[] finish = new long[order.length];
+		int[] previous = new int[order.length];
+		Deque<Integer> ready = new ArrayDeque<Integer>();
+		for (int i = 0; i < order.length; i++) {
+			previous[i] = -1;
+			if (pending[i] == 0) {
+				ready.add(i);
+			}
+		}
+		int last = -1;
+		while (!ready.isEmpty()) {
+			int current = ready.poll();
+			finish[current] += order[current].nanos;
+			if (last < 0 || finish[current] > finish[last]) {
+				last = current;
+			}
+			for (int next : downstream.get(current)) {
+				if (finish[current] > finish[next]) {
+					finish[next] = finish[current];
+					previous[next] = current;
+				}
+				if (--pending[next] == 0) {
+					ready.add(next);
+				}
+			}
+		}
+		if (path != null) {
+			for (int i = last; i >= 0; i = previous[i]) {
+				path.add(0, order[i].key);
+			}
+		}
+		return last < 0 ? 0 : finish[last];
+	}
+
+	/**
+	 * @param pending receives the number of dependencies of each module within
+	 *                {@code order}
+	 * @return the indices of the modules depending on each module, in reactor
+	 *         order
+	 */
+	private static List<List<Integer>> downstream(Module[] order, int[] pending) {
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		for (int i = 0; i < order.length; i++) {
+			index.put(order[i].key, i);
+		}
+		List<List<Integer>> downstream = new ArrayList<List<Integer>>(order.length);
+		for (int i = 0; i < order.length; i++) {
+			downstream.add(new ArrayList<Integer>(0));
+		}
+		for (int i = 0; i < order.length; i++) {
+			for (String dependency : order[i].upstream) {
+				Integer upstream = index.get(dependency);
+				if (upstream != null && upstream != i) {
+					downstream.get(upstream).add(i);
+					pending[i]++;
+				}
+			}
+		}
+		return downstream;
+	}
+
+	private Map<String, Module> profile() {
+		if (this.profile == null) {
+			try (InputStream in = Files.newInputStream(profileFile)) {
+				this.profile = read(in);
+			} catch (IOException e) {
+				// missing or truncated: the next build records a new one
+				this.profile = new LinkedHashMap<String, Module>();
+			}
+		}
+		return this.profile;
+	}
+
+	/**
+	 * @return the profile in {@code in}, empty if it was written by another
+	 *         version
+	 */
+	private static Map<String, Module> read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		Map<String, Module> modules = new LinkedHashMap<String, Module>();
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+			return modules;
+		}
+		int count = WireFormat.readCount(data);
+		for (int i = 0; i < count; i++) {
+			String key = WireFormat.readString(data);
+			long nanos = data.readLong();
+			String[] upstream = new String[WireFormat.readCount(data)];
+			for (int u = 0; u < upstream.length; u++) {
+				upstream[u] = WireFormat.readString(data);
+			}
+			modules.put(key, new Module(key, nanos, List.of(upstream)));
+		}
+		return modules;
+	}
+
+	private void save() {
+		Path tmp = profileFile.resolveSibling(profileFile.getFileName() + ".tmp");
+		try {
+			if (profileFile.getParent() != null) {
+				Files.createDirectories(profileFile.getParent());
+			}
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				DataOutputStream data = new DataOutputStream(out);
+				data.writeInt(MAGIC);
+				data.writeInt(VERSION);
+				WireFormat.writeVarInt(data, profile.size());
+				for (Module module : profile.values()) {
+					WireFormat.writeString(data, module.key);
+					data.writeLong(module.nanos);
+					WireFormat.writeVarInt(data, module.upstream.size());
+					for (String upstream : module.upstream) {
+						WireFormat.writeString(data, upstream);
+					}
+				}
+				data.flush();
+			}
+			Files.move(tmp, profileFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				// nothing left to clean up
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ThreadTuner [profile=" + profileFile + ", modules=" + (profile != null ? profile.size() : -1)
+				+ ", cores=" + cores + "]";
+	}
+
+}
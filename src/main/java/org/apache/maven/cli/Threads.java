@@ -0,0 +1,39 @@
+package org.apache.maven.cli;
+
+/**
+ * Interprets the {@code -T} values Maven accepts: a plain thread count such as
+ * {@code 4}, or a per-core multiplier such as {@code 1C} or {@code 1.5C}. The
+ * value is parsed exactly as Maven 3.6.3 does, leniencies and all: any value
+ * that parses is accepted, and one that comes to fewer than two threads, such
+ * as {@code 0}, builds single-threaded.
+ */
+final class Threads {
+
+	private Threads() {
+	}
+
+	/**
+	 * Mirrors {@code MavenCli.calculateDegreeOfConcurrency}: a value containing
+	 * {@code C} anywhere is a multiplier once every {@code C} is removed, and
+	 * anything else has to be an integer, without surrounding whitespace.
+	 *
+	 * @return the number of threads {@code threads} asks for on a machine with
+	 *         {@code cores} cores, at least {@code 1}, and {@code 1} if it is
+	 *         {@code null} or blank
+	 * @throws IllegalArgumentException if {@code threads} is malformed
+	 */
+	static int degreeOfConcurrency(String threads, int cores) {
+		if (threads == null || threads.isBlank()) {
+			return 1;
+		}
+		try {
+			if (threads.contains("C")) {
+				return Math.max(1, (int) (Float.valueOf(threads.replace("C", "")) * cores));
+			}
+			return Math.max(1, Integer.valueOf(threads));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid thread count: " + threads, e);
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.apache.maven.cli;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations with fixed bucket bounds of 1 ms, 2 ms,
+ * 4 ms and so on up to {@value #BUCKETS} doublings, plus an overflow bucket.
+ * Recording is a few atomic increments; percentiles are reported as the upper
+ * bound of the bucket they fall into.
+ */
+public class TimingHistogram {
+
+	static final int BUCKETS = 22;
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		counts.incrementAndGet(bucket(nanos));
+		count.increment();
+		sumNanos.add(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	static int bucket(long nanos) {
+		long millis = (nanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+		int bucket = millis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+		return Math.min(bucket, BUCKETS);
+	}
+
+	/**
+	 * @return the inclusive upper bound of {@code bucket}, or
+	 *         {@link Long#MAX_VALUE} for the overflow bucket
+	 */
+	static long upperBoundNanos(int bucket) {
+		return bucket >= BUCKETS ? Long.MAX_VALUE : NANOS_PER_MILLI << bucket;
+	}
+
+	long bucketCount(int bucket) {
+		return counts.get(bucket);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		long n = getCount();
+		return n == 0 ? 0 : getSumNanos() / n;
+	}
+
+	/**
+	 * @param quantile between 0 and 1
+	 * @return the upper bound of the bucket holding {@code quantile}, capped at
+	 *         the largest recorded value
+	 */
+	public long getPercentileNanos(double quantile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i <= BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundNanos(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	public void reset() {
+		for (int i = 0; i <= BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sumNanos.reset();
+		maxNanos.set(0);
+	}
+
+}
@@ -0,0 +1,264 @@
+package org.apache.maven.cli;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import org.apache.maven.cli.event.DefaultEventSpyContext;
+import org.apache.maven.cli.logging.Slf4jConfiguration;
+import org.apache.maven.cli.logging.Slf4jConfigurationFactory;
+import org.apache.maven.eventspy.AbstractEventSpy;
+import org.apache.maven.eventspy.EventSpy;
+import org.apache.maven.eventspy.internal.EventSpyDispatcher;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.plugin.PluginRealmCache;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.eclipse.aether.spi.localrepo.LocalRepositoryManagerFactory;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link MavenCli} that boots its Plexus container once and hands the same
+ * container to every following {@link #doMain(CliRequest)} call.
+ * <p>
+ * {@link MavenCli#container(CliRequest)} is package-private, so this only takes
+ * effect when this class and maven-embedder share a class loader. Core
+ * extensions are loaded from the project that triggered the cold start.
+ * <p>
+ * Given a {@link ComponentIndex}, the container binds the indexed components
+ * without scanning their class files, unless the project that triggers the
+ * cold start declares core extensions: Maven resolves those with a container
+ * of its own, which only finds components by scanning.
+ * <p>
+ * The library ships no SLF4J binding. If the application has Maven's own,
+ * maven-slf4j-provider, on its class path, it is given the console format of
+ * the mvn distribution before SLF4J initializes, for every setting the
+ * application has not made itself; see {@link #SIMPLE_LOGGER_DEFAULTS}.
+ */
+class WarmMavenCli extends MavenCli {
+
+	/**
+	 * Hands the execution request of each invocation to the
+	 * {@link InvocationContext} of the thread that started it.
+	 */
+	static class InvocationSpy extends AbstractEventSpy {
+		@Override
+		public void onEvent(Object event) {
+			InvocationContext context = InvocationContext.current();
+			if (context != null && event instanceof MavenExecutionRequest) {
+				MavenExecutionRequest request = (MavenExecutionRequest) event;
+				request.setExecutionListener(context.wrap(request.getExecutionListener()));
+			}
+		}
+	}
+
+	private static final String EXTENSIONS = ".mvn/extensions.xml";
+
+	/**
+	 * The settings of {@code conf/logging/simplelogger.properties} in the mvn
+	 * distribution, except that the output stream is not cached, so every
+	 * invocation logs to the {@link System#out} it runs with.
+	 */
+	private static final String[][] SIMPLE_LOGGER_DEFAULTS = {
+			{ "org.slf4j.simpleLogger.defaultLogLevel", "info" },
+			{ "org.slf4j.simpleLogger.showDateTime", "false" },
+			{ "org.slf4j.simpleLogger.showThreadName", "false" },
+			{ "org.slf4j.simpleLogger.showLogName", "false" },
+			{ "org.slf4j.simpleLogger.logFile", "System.out" },
+			{ "org.slf4j.simpleLogger.cacheOutputStream", "false" },
+			{ "org.slf4j.simpleLogger.levelInBrackets", "true" },
+			{ "org.slf4j.simpleLogger.log.Sisu", "info" },
+			{ "org.slf4j.simpleLogger.warnLevelString", "WARNING" } };
+	private static final String MAVEN_SIMPLE_LOGGER = "org/slf4j/impl/MavenSimpleLoggerFactory.class";
+
+	static {
+		if (WarmMavenCli.class.getClassLoader().getResource(MAVEN_SIMPLE_LOGGER) != null) {
+			for (String[] setting : SIMPLE_LOGGER_DEFAULTS) {
+				if (System.getProperty(setting[0]) == null) {
+					System.setProperty(setting[0], setting[1]);
+				}
+			}
+		}
+	}
+
+	private final ClassWorld classWorld;
+	private final ComponentIndex componentIndex;
+	private final ComponentIndex.IndexedClassLoader indexedLoader;
+	private final ProjectModelCache modelCache = new ProjectModelCache();
+	private final SharedPluginRealmCache pluginRealmCache = new SharedPluginRealmCache();
+	private DefaultPlexusContainer container;
+	private PlexusContainer retained;
+	private IndexedLocalRepositoryManagerFactory localRepositoryIndexes;
+
+	WarmMavenCli(ClassWorld classWorld) {
+		this(classWorld, null, null);
+	}
+
+	WarmMavenCli(ClassLoader classLoader, ComponentIndex componentIndex) {
+		this(componentIndex.classLoader(classLoader), componentIndex);
+	}
+
+	private WarmMavenCli(ComponentIndex.IndexedClassLoader indexedLoader, ComponentIndex componentIndex) {
+		this(new ClassWorld("plexus.core", indexedLoader), componentIndex, indexedLoader);
+	}
+
+	private WarmMavenCli(ClassWorld classWorld, ComponentIndex componentIndex,
+			ComponentIndex.IndexedClassLoader indexedLoader) {
+		super(classWorld);
+		this.classWorld = classWorld;
+		this.componentIndex = componentIndex;
+		this.indexedLoader = indexedLoader;
+	}
+
+	ClassWorld getClassWorld() {
+		return this.classWorld;
+	}
+
+	DefaultPlexusContainer getContainer() {
+		return this.container;
+	}
+
+	ProjectModelCache getModelCache() {
+		return this.modelCache;
+	}
+
+	SharedPluginRealmCache getPluginRealmCache() {
+		return this.pluginRealmCache;
+	}
+
+	/**
+	 * @return {@code null} until the container has been booted
+	 */
+	IndexedLocalRepositoryManagerFactory getLocalRepositoryIndexes() {
+		return this.localRepositoryIndexes;
+	}
+
+	boolean isWarm() {
+		return this.container != null;
+	}
+
+	/**
+	 * @return {@code true} if the container was booted from a
+	 *         {@link ComponentIndex}
+	 */
+	boolean isIndexed() {
+		return this.container != null && this.indexedLoader != null && this.indexedLoader.isIndexed();
+	}
+
+	@Override
+	PlexusContainer container(CliRequest cliRequest) throws Exception {
+		cliRequest.classWorld = this.classWorld;
+		if (this.container == null) {
+			if (this.indexedLoader != null) {
+				this.indexedLoader.setIndexed(!new File(cliRequest.multiModuleProjectDirectory, EXTENSIONS).isFile());
+			}
+			this.container = (DefaultPlexusContainer) super.container(cliRequest);
+			this.retained = retain(this.container);
+		} else {
+			Thread.currentThread().setContextClassLoader(this.container.getContainerRealm());
+			this.container.getLoggerManager().setThresholds(cliRequest.request.getLoggingLevel());
+			// MavenCli closes the dispatcher at the end of every execute, so it has to be re-initialized
+			DefaultEventSpyContext eventSpyContext = new DefaultEventSpyContext();
+			Map<String, Object> data = eventSpyContext.getData();
+			data.put("plexus", this.container);
+			data.put("workingDirectory", cliRequest.workingDirectory);
+			data.put("systemProperties", cliRequest.systemProperties);
+			data.put("userProperties", cliRequest.userProperties);
+			data.put("versionProperties", CLIReportingUtils.getBuildProperties());
+			this.container.lookup(EventSpyDispatcher.class).init(eventSpyContext);
+		}
+		return this.retained;
+	}
+
+	/**
+	 * Maven's loggers are shared by every invocation, so they are kept at the most
+	 * verbose level of the running invocations; the {@link OutputRouter} drops
+	 * what a quieter invocation would not have printed.
+	 */
+	@Override
+	void logging(CliRequest cliRequest) {
+		super.logging(cliRequest);
+		LogEvent.Level level = OutputRouter.mostVerboseLevel();
+		Slf4jConfiguration configuration = Slf4jConfigurationFactory
+				.getConfiguration(LoggerFactory.getILoggerFactory());
+		if (level == LogEvent.Level.DEBUG) {
+			cliRequest.request.setLoggingLevel(MavenExecutionRequest.LOGGING_LEVEL_DEBUG);
+			configuration.setRootLoggerLevel(Slf4jConfiguration.Level.DEBUG);
+		} else if (level == LogEvent.Level.INFO) {
+			cliRequest.request.setLoggingLevel(MavenExecutionRequest.LOGGING_LEVEL_INFO);
+			configuration.setRootLoggerLevel(Slf4jConfiguration.Level.INFO);
+		} else {
+			return;
+		}
+		configuration.activate();
+	}
+
+	@Override
+	public int doMain(CliRequest cliRequest) {
+		try {
+			return super.doMain(cliRequest);
+		} finally {
+			this.pluginRealmCache.release();
+		}
+	}
+
+	@Override
+	protected void customizeContainer(PlexusContainer container) {
+		if (this.indexedLoader != null && this.indexedLoader.isIndexed()) {
+			// before anything is looked up, so no lookup misses the indexed components
+			this.componentIndex.publish((DefaultPlexusContainer) container);
+		}
+		super.customizeContainer(container);
+		container.addComponent(new InvocationSpy(), EventSpy.class, InvocationSpy.class.getName());
+		try {
+			// registered later, so it outranks the default binding it wraps
+			ModelBuilder modelBuilder = container.lookup(ModelBuilder.class);
+			container.addComponent(modelCache.decorate(modelBuilder), ModelBuilder.class, "default");
+		} catch (ComponentLookupException e) {
+			// builds simply go uncached
+		}
+		container.addComponent(pluginRealmCache, PluginRealmCache.class, "default");
+		try {
+			localRepositoryIndexes = new IndexedLocalRepositoryManagerFactory(
+					container.lookup(LocalRepositoryManagerFactory.class, "enhanced"));
+			container.addComponent(localRepositoryIndexes, LocalRepositoryManagerFactory.class, "indexed");
+		} catch (ComponentLookupException e) {
+			// resolution goes through the enhanced manager alone
+		}
+	}
+
+	void dispose() {
+		if (this.localRepositoryIndexes != null) {
+			this.localRepositoryIndexes.flush();
+		}
+		if (this.container != null) {
+			this.pluginRealmCache.flush();
+			this.container.dispose();
+			this.container = null;
+			this.retained = null;
+		}
+	}
+
+	/**
+	 * {@link MavenCli#doMain(CliRequest)} disposes whatever container it was given,
+	 * so it is handed a view that ignores {@code dispose()}.
+	 */
+	private static PlexusContainer retain(PlexusContainer container) {
+		return (PlexusContainer) Proxy.newProxyInstance(PlexusContainer.class.getClassLoader(),
+				new Class<?>[] { PlexusContainer.class }, (proxy, method, args) -> {
+					if ("dispose".equals(method.getName()) && method.getParameterCount() == 0) {
+						return null;
+					}
+					try {
+						return method.invoke(container, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+}
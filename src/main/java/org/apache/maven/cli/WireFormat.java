@@ -0,0 +1,110 @@
+package org.apache.maven.cli;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Variable-length integers and length-prefixed UTF-8 strings shared by the
+ * binary forms of {@link CliArgsBuilder}, the daemon protocol, the job journal
+ * and the {@link ComponentIndex}.
+ * <p>
+ * Readers reject lengths beyond {@link #MAX_STRING_BYTES} and
+ * {@link #MAX_COUNT} before allocating anything, so a corrupt file or a
+ * hostile peer cannot make them allocate gigabytes with a few bytes.
+ */
+final class WireFormat {
+
+	/** The longest string, in UTF-8 bytes, that is written or read. */
+	static final int MAX_STRING_BYTES = 1 << 20;
+	/** The most elements a collection that is read may have. */
+	static final int MAX_COUNT = 1 << 20;
+
+	private WireFormat() {
+	}
+
+	/**
+	 * Writes {@code value} in 7-bit groups, least significant first; values below
+	 * 128 take a single byte.
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		long value = readVarLong(in);
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Length out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Reads a length written with {@link #writeVarInt(DataOutput, int)}.
+	 *
+	 * @throws IOException if it exceeds {@code max}
+	 */
+	static int readLength(DataInput in, int max) throws IOException {
+		int value = readVarInt(in);
+		if (value > max) {
+			throw new IOException("Length out of range: " + value + " > " + max);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads the number of elements of a collection, at most {@link #MAX_COUNT}.
+	 */
+	static int readCount(DataInput in) throws IOException {
+		return readLength(in, MAX_COUNT);
+	}
+
+	/**
+	 * Writes the UTF-8 length plus one, {@code 0} standing for {@code null},
+	 * followed by the bytes.
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeByte(0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_STRING_BYTES) {
+			throw new IOException("String too long: " + bytes.length + " bytes");
+		}
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = readLength(in, MAX_STRING_BYTES + 1) - 1;
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArgsValidatorTest {
+
+	private static final File DIR = new File(".");
+
+	@Test
+	public void threadCountsMavenAcceptsPass() {
+		for (String threads : new String[] { "0", "1", "4", "0C", "1C", "1.5C", "1CC", "C1", " 2C" }) {
+			List<ArgsValidator.Violation> violations = ArgsValidator.defaults()
+					.validate(new CliArgsBuilder().threads(threads).goals("verify"), DIR);
+			assertTrue(threads + ": " + violations, violations.isEmpty());
+		}
+	}
+
+	@Test
+	public void malformedThreadCountsFail() {
+		for (String threads : new String[] { "x", "C", "1.5", "2c", " 2 ", "2 " }) {
+			List<ArgsValidator.Violation> violations = ArgsValidator.defaults()
+					.validate(new CliArgsBuilder().threads(threads).goals("verify"), DIR);
+			assertEquals(threads, 1, violations.size());
+			assertEquals("-T", violations.get(0).getOption());
+		}
+	}
+
+	@Test
+	public void threadCountsBelowOneBuildSingleThreaded() {
+		assertEquals(1, Threads.degreeOfConcurrency("0", 8));
+		assertEquals(1, Threads.degreeOfConcurrency("0C", 8));
+		assertEquals(1, Threads.degreeOfConcurrency("0.1C", 8));
+		assertEquals(1, Threads.degreeOfConcurrency(null, 8));
+		assertEquals(4, Threads.degreeOfConcurrency("4", 8));
+		assertEquals(12, Threads.degreeOfConcurrency("1.5C", 8));
+		assertEquals(16, Threads.degreeOfConcurrency("2CC", 8));
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+
+public class AsyncMavenExecutorTest {
+
+	@Test
+	public void defaultExecutorIsABoundedPoolOfPlatformThreads() throws Exception {
+		ExecutorService executor = AsyncMavenExecutor.defaultExecutor();
+		try {
+			assertTrue(executor instanceof ThreadPoolExecutor);
+			assertEquals(Runtime.getRuntime().availableProcessors(),
+					((ThreadPoolExecutor) executor).getMaximumPoolSize());
+			Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, executor).get();
+			assertTrue(thread.getName(), thread.getName().startsWith("maven-async-"));
+			assertTrue(thread.isDaemon());
+			assertEquals(Thread.class, thread.getClass());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
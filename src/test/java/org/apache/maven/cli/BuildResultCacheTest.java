@@ -0,0 +1,164 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BuildResultCacheTest {
+
+	private final Path root;
+	private final File project;
+	private final AtomicInteger builds = new AtomicInteger();
+	private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+	private String printed = "built\n";
+
+	public BuildResultCacheTest() throws IOException {
+		root = Files.createTempDirectory("cache");
+		project = Files.createDirectories(root.resolve("project")).toFile();
+		Files.write(project.toPath().resolve("pom.xml"), "<project/>".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	private BuildResultCache cache(long maxBytes) {
+		return new BuildResultCache((args, workingDirectory, out, err) -> {
+			builds.incrementAndGet();
+			out.print(printed);
+			err.print("warned\n");
+			return new BuildResult(0, 1, false);
+		}, root.resolve("store").toFile(), maxBytes);
+	}
+
+	@Test
+	public void replaysRecordedOutput() {
+		BuildResultCache cache = cache(1 << 20);
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		ByteArrayOutputStream secondErr = new ByteArrayOutputStream();
+		cache.execute(new CliArgsBuilder().goals("verify"), project, new PrintStream(first), discard);
+		BuildResult replayed = cache.execute(new CliArgsBuilder().goals("verify"), project, new PrintStream(second),
+				new PrintStream(secondErr));
+		assertTrue(replayed.isCacheHit());
+		assertEquals(1, builds.get());
+		assertEquals("built\n", text(first));
+		assertEquals("built\n", text(second));
+		assertEquals("warned\n", text(secondErr));
+	}
+
+	@Test
+	public void outputLargerThanTheStoreIsNotRecorded() throws IOException {
+		printed = "x".repeat(4096);
+		BuildResultCache cache = cache(1024);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.execute(new CliArgsBuilder().goals("verify"), project, new PrintStream(out), discard);
+		assertEquals(printed, text(out));
+		assertFalse(cache.execute(new CliArgsBuilder().goals("verify"), project, discard, discard).isCacheHit());
+		assertEquals(2, builds.get());
+		assertEquals(0, cache.getStoredBytes());
+		try (Stream<Path> left = Files.list(root.resolve("store"))) {
+			assertEquals(0, left.count());
+		}
+	}
+
+	@Test
+	public void truncatedEntryIsRemovedWithoutReplayingAnything() throws IOException {
+		printed = "x".repeat(1000) + "\n";
+		BuildResultCache cache = cache(1 << 20);
+		cache.execute(new CliArgsBuilder().goals("verify"), project, discard, discard);
+		Path entry;
+		try (Stream<Path> entries = Files.list(root.resolve("store"))) {
+			entry = entries.findFirst().get();
+		}
+		byte[] recorded = Files.readAllBytes(entry);
+		Files.write(entry, Arrays.copyOf(recorded, recorded.length - 600));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BuildResult result = cache.execute(new CliArgsBuilder().goals("verify"), project, new PrintStream(out),
+				discard);
+		assertFalse(result.isCacheHit());
+		assertEquals(2, builds.get());
+		assertEquals(printed, text(out));
+		assertEquals(recorded.length, Files.size(entry));
+		assertTrue(cache.execute(new CliArgsBuilder().goals("verify"), project, discard, discard).isCacheHit());
+	}
+
+	@Test
+	public void invocationsWithALogFileAreNotCached() {
+		BuildResultCache cache = cache(1 << 20);
+		CliArgsBuilder args = new CliArgsBuilder().logFile("build.log").goals("verify");
+		assertFalse(cache.execute(args, project, discard, discard).isCacheHit());
+		assertFalse(cache.execute(args, project, discard, discard).isCacheHit());
+		assertEquals(2, builds.get());
+		assertEquals(2, cache.getBypassed());
+		assertEquals(0, cache.getStoredBytes());
+	}
+
+	@Test
+	public void installAndDeployAreNotCached() {
+		BuildResultCache cache = cache(1 << 20);
+		for (CliArgsBuilder args : new CliArgsBuilder[] { new CliArgsBuilder().goals("clean", "install"),
+				new CliArgsBuilder().goals("deploy"), new CliArgsBuilder().goals("install:install-file"),
+				new CliArgsBuilder().goals("org.apache.maven.plugins:maven-deploy-plugin:3.0.0:deploy") }) {
+			cache.execute(args, project, discard, discard);
+			assertFalse(cache.execute(args, project, discard, discard).isCacheHit());
+		}
+		assertEquals(8, cache.getBypassed());
+		cache.execute(new CliArgsBuilder().goals("verify"), project, discard, discard);
+		assertTrue(cache.execute(new CliArgsBuilder().goals("verify"), project, discard, discard).isCacheHit());
+	}
+
+	@Test
+	public void keyCoversParentPomsOutsideTheProject() throws IOException {
+		Path parent = root.resolve("parent/pom.xml");
+		Files.createDirectories(parent.getParent());
+		Files.write(parent, "<project><version>1</version></project>".getBytes(StandardCharsets.UTF_8));
+		Files.write(project.toPath().resolve("pom.xml"),
+				"<project><parent><relativePath>../parent</relativePath></parent></project>"
+						.getBytes(StandardCharsets.UTF_8));
+		BuildResultCache cache = cache(1 << 20);
+		CliArgsBuilder args = new CliArgsBuilder().goals("verify");
+		String before = cache.key(args, project);
+		assertEquals(before, cache.key(args, project));
+		Files.write(parent, "<project><version>10</version></project>".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(before, cache.key(args, project));
+	}
+
+	@Test
+	public void keyCoversSettingsContent() throws IOException {
+		BuildResultCache cache = cache(1 << 20);
+		Path settings = project.toPath().resolve("settings.xml");
+		Files.write(settings, "<settings/>".getBytes(StandardCharsets.UTF_8));
+		CliArgsBuilder args = new CliArgsBuilder().alternateUserSettings("settings.xml").goals("verify");
+		String before = cache.key(args, project);
+		assertEquals(before, cache.key(args, project));
+		Files.write(settings, "<settings><offline>true</offline></settings>".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(before, cache.key(args, project));
+	}
+
+	private static String text(ByteArrayOutputStream out) {
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
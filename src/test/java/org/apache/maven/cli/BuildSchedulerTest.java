@@ -0,0 +1,117 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BuildSchedulerTest {
+
+	@Test
+	public void fairShareCountsQueuedJobs() throws Exception {
+		Queue<String> granted = new ConcurrentLinkedQueue<String>();
+		CountDownLatch bothStarted = new CountDownLatch(2);
+		try (BuildScheduler scheduler = new BuildScheduler((args, workingDirectory, out, err) -> {
+			granted.add(args.getThreads());
+			bothStarted.countDown();
+			await(bothStarted);
+			return new BuildResult(0, 0, false);
+		}, 4, 2)) {
+			List<CompletableFuture<BuildResult>> results = scheduler.submitAll(
+					List.of(new BuildScheduler.Job(new CliArgsBuilder().threads("4"), null),
+							new BuildScheduler.Job(new CliArgsBuilder().threads("4"), null)));
+			for (CompletableFuture<BuildResult> result : results) {
+				result.get(10, TimeUnit.SECONDS);
+			}
+		}
+		assertEquals(List.of("2", "2"), List.copyOf(granted));
+	}
+
+	@Test
+	public void closeLetsRunningBuildsFinish() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		boolean[] interrupted = new boolean[1];
+		BuildScheduler scheduler = new BuildScheduler((args, workingDirectory, out, err) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				interrupted[0] = true;
+			}
+			return new BuildResult(0, 0, false);
+		}, 1, 1);
+		CompletableFuture<BuildResult> running = scheduler.submit(new CliArgsBuilder(), null, 0);
+		CompletableFuture<BuildResult> queued = scheduler.submit(new CliArgsBuilder(), null, 0);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		scheduler.close();
+		release.countDown();
+		assertEquals(0, running.get(10, TimeUnit.SECONDS).getExitCode());
+		assertFalse(interrupted[0]);
+		assertTrue(queued.isCancelled());
+	}
+
+	@Test
+	public void jobWaitingForCoresIsCancelledOnClose() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BuildScheduler scheduler = new BuildScheduler((args, workingDirectory, out, err) -> {
+			started.countDown();
+			await(release);
+			return new BuildResult(0, 0, false);
+		}, 1, 2);
+		CompletableFuture<BuildResult> running = scheduler.submit(new CliArgsBuilder(), null, 0);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		CompletableFuture<BuildResult> waiting = scheduler.submit(new CliArgsBuilder(), null, 0);
+		while (scheduler.getMetrics().getQueueDepth() > 0) {
+			Thread.sleep(1);
+		}
+		scheduler.close();
+		assertTrue(waiting.handle((result, failure) -> failure != null).get(10, TimeUnit.SECONDS));
+		release.countDown();
+		assertEquals(0, running.get(10, TimeUnit.SECONDS).getExitCode());
+	}
+
+	@Test
+	public void idleWorkersStealEveryJobOfConcurrentBatches() throws Exception {
+		List<CompletableFuture<BuildResult>> results = new CopyOnWriteArrayList<CompletableFuture<BuildResult>>();
+		try (BuildScheduler scheduler = new BuildScheduler(
+				(args, workingDirectory, out, err) -> new BuildResult(0, 0, false), 8, 8)) {
+			Thread[] submitters = new Thread[4];
+			for (int i = 0; i < submitters.length; i++) {
+				submitters[i] = new Thread(() -> {
+					for (int batch = 0; batch < 50; batch++) {
+						results.addAll(scheduler.submitAll(List.of(new BuildScheduler.Job(new CliArgsBuilder(), null),
+								new BuildScheduler.Job(new CliArgsBuilder(), null))));
+					}
+				});
+				submitters[i].start();
+			}
+			for (Thread submitter : submitters) {
+				submitter.join();
+			}
+			assertEquals(400, results.size());
+			for (CompletableFuture<BuildResult> result : results) {
+				assertEquals(0, result.get(10, TimeUnit.SECONDS).getExitCode());
+			}
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
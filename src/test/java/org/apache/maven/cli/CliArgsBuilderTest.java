@@ -0,0 +1,205 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CliArgsBuilderTest {
+
+	/**
+	 * The binary form of {@link #sample()}, as written since options were first
+	 * journaled. Jobs and daemon requests in this form have to keep decoding to
+	 * the same arguments, whatever the order of the options in the code.
+	 */
+	private static final String SAMPLE_BINARY_FORM = "87828081090c7375622f706f6d2e786d6c010a736b69705465737473057472"
+			+ "7565010363690205636f7265046170700332430206636c65616e08696e7374616c6c0000";
+
+	private static CliArgsBuilder sample() {
+		return new CliArgsBuilder().alternatePomFile("sub/pom.xml").systemProperty("skipTests", "true").offline()
+				.activateProfiles("ci").projectList("core", "app").threads("2C").noTransferProgress()
+				.goals("clean", "install");
+	}
+
+	@Test
+	public void binaryFormIsStable() throws IOException {
+		assertEquals(SAMPLE_BINARY_FORM, hex(write(sample())));
+	}
+
+	@Test
+	public void readsRecordedBinaryForm() throws IOException {
+		CliArgsBuilder read = CliArgsBuilder
+				.readFrom(new DataInputStream(new ByteArrayInputStream(bytes(SAMPLE_BINARY_FORM))));
+		assertArrayEquals(sample().toArgv(), read.toArgv());
+	}
+
+	@Test
+	public void binaryFormRoundTrips() throws IOException {
+		CliArgsBuilder args = new CliArgsBuilder().alternateUserSettings("settings.xml").debug().failAtEnd()
+				.resumeFrom(":core").alternateUserToolchains("a.xml", "b.xml").builder("smart").phases("verify");
+		CliArgsBuilder read = CliArgsBuilder.readFrom(new DataInputStream(new ByteArrayInputStream(write(args))));
+		assertArrayEquals(args.toArgv(), read.toArgv());
+	}
+
+	@Test
+	public void systemPropertiesKeepTheirKeysAndValuesThroughTheBinaryForm() throws IOException {
+		CliArgsBuilder args = new CliArgsBuilder();
+		args.getSystemProperties().put("a=b", "c");
+		args.getSystemProperties().put("flag", null);
+		CliArgsBuilder read = CliArgsBuilder.readFrom(new DataInputStream(new ByteArrayInputStream(write(args))));
+		assertEquals(args.getSystemProperties(), read.getSystemProperties());
+	}
+
+	@Test
+	public void systemPropertyWithoutAValueIsRenderedAsAFlag() {
+		CliArgsBuilder args = new CliArgsBuilder();
+		args.getSystemProperties().put("flag", null);
+		assertArrayEquals(new String[] { "-D", "flag" }, args.toArgv());
+		assertEquals("-Dflag", args.toString());
+	}
+
+	@Test
+	public void parsesValuesAttachedToShortNamesOfAnyLength() {
+		assertEquals("secret", CliArgsBuilder.fromArgv("-empsecret").getEncryptMasterPassword());
+		assertEquals("secret", CliArgsBuilder.fromArgv("-epsecret").getEncryptPassword());
+		assertEquals("4", CliArgsBuilder.fromArgv("-T4").getThreads());
+	}
+
+	@Test
+	public void quotedSystemPropertyValuesRoundTrip() {
+		CliArgsBuilder args = new CliArgsBuilder().systemProperty("message", "hello  world")
+				.systemProperty("skipTests", "true").phases("verify");
+		assertEquals(args, CliArgsBuilder.parse("mvn -Dmessage=\"hello  world\" -DskipTests=true verify"));
+		assertRoundTrips(args);
+	}
+
+	@Test
+	public void valuesAttachedToShortNamesRoundTrip() {
+		CliArgsBuilder args = new CliArgsBuilder().threads("4").alternatePomFile("pom.xml");
+		assertEquals(args, CliArgsBuilder.fromArgv("-T4", "-fpom.xml"));
+		assertRoundTrips(args);
+	}
+
+	@Test
+	public void valuesAfterLongNamesRoundTrip() {
+		CliArgsBuilder args = new CliArgsBuilder().threads("4").projectList("core", "app");
+		assertEquals(args, CliArgsBuilder.fromArgv("--threads=4", "--projects=core,app"));
+		assertRoundTrips(args);
+	}
+
+	@Test
+	public void systemPropertiesInTheirOwnTokenRoundTrip() {
+		CliArgsBuilder args = new CliArgsBuilder().systemProperty("key", "value").goals("dependency:tree");
+		assertEquals(args, CliArgsBuilder.fromArgv("-D", "key=value", "dependency:tree"));
+		assertRoundTrips(args);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotRejectsSetters() {
+		new CliArgsBuilder().offline().freeze().threads("4");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotCollectionsAreUnmodifiable() {
+		new CliArgsBuilder().projectList("core").freeze().getProjectList().add("app");
+	}
+
+	@Test
+	public void snapshotKeepsTheHashCodeItWasFrozenWith() {
+		CliArgsBuilder args = sample();
+		int hash = args.hashCode();
+		CliArgsBuilder snapshot = args.freeze();
+		args.threads("8").projectList("cli");
+		assertEquals(hash, snapshot.hashCode());
+		assertNotEquals(hash, args.hashCode());
+		assertSame(snapshot, snapshot.freeze());
+	}
+
+	@Test
+	public void derivedBuildersShareUntouchedCollectionsAndCopyTouchedOnes() {
+		CliArgsBuilder template = new CliArgsBuilder().projectList("core").systemProperty("a", "1").freeze();
+		CliArgsBuilder derived = template.derive();
+		derived.getProjectList().add("app");
+		derived.systemProperty("b", "2");
+		assertEquals(List.of("core"), template.getProjectList());
+		assertEquals(Map.of("a", "1"), template.getSystemProperties());
+		assertEquals(List.of("core", "app"), derived.getProjectList());
+		assertEquals(List.of("core"), template.derive().getProjectList());
+
+		CliArgsBuilder variant = template.derive().threads("4").freeze();
+		assertSame(template.getProjectList(), variant.getProjectList());
+		assertSame(template.getSystemProperties(), variant.getSystemProperties());
+	}
+
+	@Test
+	public void snapshotsOfBuildersRenderingTheSameArgumentsAreEqual() {
+		CliArgsBuilder built = new CliArgsBuilder().threads("4").projectList("core").freeze();
+		CliArgsBuilder parsed = CliArgsBuilder.fromArgv("-T", "4", "-pl", "core").freeze();
+		assertEquals(built, parsed);
+		assertEquals(built.hashCode(), parsed.hashCode());
+
+		CliArgsBuilder touched = new CliArgsBuilder();
+		touched.getGoals();
+		touched.getSystemProperties();
+		assertEquals(new CliArgsBuilder().freeze(), touched.freeze());
+
+		assertNotEquals(built, new CliArgsBuilder().threads("8").projectList("core").freeze());
+	}
+
+	@Test
+	public void argvCarriesTheArgumentsOfTheRenderedCommandLine() {
+		assertSameArguments(new CliArgsBuilder().offline().batchMode().alsoMakeDependents());
+		assertSameArguments(new CliArgsBuilder().threads("2C").alternatePomFile("sub/pom.xml").resumeFrom(":core"));
+		assertSameArguments(new CliArgsBuilder().projectList("core", "app").activateProfiles("ci")
+				.alternateUserToolchains("a.xml", "b.xml"));
+		assertSameArguments(new CliArgsBuilder().systemProperty("zeta", "1").systemProperty("alpha", "two words")
+				.systemProperty("mid", "3").systemProperty("beta", "4"));
+		assertSameArguments(sample().phases("verify"));
+	}
+
+	private static void assertRoundTrips(CliArgsBuilder args) {
+		assertEquals(args, CliArgsBuilder.fromArgv(args.toArgv()));
+		assertEquals(args, CliArgsBuilder.parse(args.toString()));
+	}
+
+	/**
+	 * Checks that the tokens {@link CliArgsBuilder#toArgv()} produces are what the
+	 * command line rendered by {@link CliArgsBuilder#toString()} parses to.
+	 */
+	private static void assertSameArguments(CliArgsBuilder args) {
+		assertArrayEquals(CliArgsBuilder.parse(args.toString()).toArgv(), args.toArgv());
+	}
+
+	private static byte[] write(CliArgsBuilder args) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		args.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static byte[] bytes(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CoalescingMavenExecutorTest {
+
+	@Test
+	public void leavesTheCallersBuilderUntouched() throws IOException {
+		CoalescingMavenExecutor executor = new CoalescingMavenExecutor(
+				(args, workingDirectory, out, err) -> new BuildResult(0, 0, false), 0, TimeUnit.MILLISECONDS, 1);
+		CliArgsBuilder args = new CliArgsBuilder().offline().goals("verify");
+		String before = Arrays.toString(binaryForm(args));
+		assertEquals(0, executor.execute(args, new File(".")).getExitCode());
+		assertEquals(before, Arrays.toString(binaryForm(args)));
+	}
+
+	@Test
+	public void runsWhatWasSubmittedEvenIfTheCallerChangesItsBuilder() {
+		List<String> ran = new CopyOnWriteArrayList<String>();
+		CoalescingMavenExecutor executor = new CoalescingMavenExecutor((args, workingDirectory, out, err) -> {
+			ran.add(String.join(" ", args.toArgv()));
+			return new BuildResult(0, 0, false);
+		}, 0, TimeUnit.MILLISECONDS, 1);
+		CliArgsBuilder args = new CliArgsBuilder().projectList(":core").goals("verify");
+		executor.execute(args, new File("."));
+		args.getProjectList().add(":app");
+		assertEquals(List.of("-pl :core verify"), ran);
+	}
+
+	private static byte[] binaryForm(CliArgsBuilder args) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		args.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+}
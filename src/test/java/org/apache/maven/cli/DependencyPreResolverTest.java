@@ -0,0 +1,143 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@code validate} on a project whose dependencies are only available
+ * from a {@code file://} repository, which settings mirror every repository
+ * to, so nothing is fetched over the network.
+ */
+public class DependencyPreResolverTest {
+
+	private static final int LIBRARIES = 6;
+
+	private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+	private Path dir;
+	private Path localRepository;
+	private File project;
+	private EmbeddedMavenExecutor executor;
+
+	@Before
+	public void createRepositoryAndProject() throws IOException {
+		dir = Files.createTempDirectory("pre-resolver");
+		Path remote = Files.createDirectories(dir.resolve("remote"));
+		StringBuilder dependencies = new StringBuilder();
+		for (int i = 1; i <= LIBRARIES; i++) {
+			String artifactId = "lib" + i;
+			Path version = Files.createDirectories(remote.resolve("test/" + artifactId + "/1.0"));
+			publish(version.resolve(artifactId + "-1.0.pom"), pom("test", artifactId, "jar", ""));
+			publish(version.resolve(artifactId + "-1.0.jar"), ("jar " + artifactId).getBytes(StandardCharsets.UTF_8));
+			dependencies.append("<dependency><groupId>test</groupId><artifactId>").append(artifactId)
+					.append("</artifactId><version>1.0</version></dependency>");
+		}
+		localRepository = dir.resolve("local");
+		Files.write(dir.resolve("settings.xml"),
+				("<settings><localRepository>" + localRepository + "</localRepository><mirrors><mirror>"
+						+ "<id>file</id><mirrorOf>*</mirrorOf><url>" + remote.toUri() + "</url></mirror></mirrors>"
+						+ "</settings>").getBytes(StandardCharsets.UTF_8));
+		project = Files.createDirectories(dir.resolve("project")).toFile();
+		Files.write(project.toPath().resolve("pom.xml"),
+				pom("test", "app", "jar", "<dependencies>" + dependencies + "</dependencies>"));
+		executor = new EmbeddedMavenExecutor();
+	}
+
+	@After
+	public void deleteRepositoryAndProject() throws IOException {
+		executor.close();
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void fetchesEveryDependencyOfTheReactor() {
+		DependencyPreResolver resolver = new DependencyPreResolver(4);
+		assertEquals(0, validate(args().preResolution(resolver)).getExitCode());
+		DependencyPreResolver.Report report = resolver.getLastReport();
+		assertEquals(1, report.getProjects());
+		assertEquals(1, report.getCollected());
+		assertEquals(LIBRARIES, report.getArtifacts());
+		assertEquals(0, report.getFailed());
+		// a POM while collecting and a JAR while resolving per library
+		assertEquals(2 * LIBRARIES, report.getDownloaded());
+		for (int i = 1; i <= LIBRARIES; i++) {
+			assertTrue(Files.isRegularFile(localRepository.resolve("test/lib" + i + "/1.0/lib" + i + "-1.0.jar")));
+		}
+	}
+
+	@Test
+	public void offlineDownloadsNothing() {
+		DependencyPreResolver resolver = new DependencyPreResolver(4);
+		validate(args().offline().preResolution(resolver));
+		DependencyPreResolver.Report report = resolver.getLastReport();
+		assertEquals(0, report.getDownloaded());
+		assertEquals(LIBRARIES, report.getFailed());
+		assertFalse(Files.exists(localRepository.resolve("test")));
+	}
+
+	@Test
+	public void warmRerunDownloadsNothing() {
+		DependencyPreResolver resolver = new DependencyPreResolver(4);
+		validate(args().preResolution(resolver));
+		assertEquals(2 * LIBRARIES, resolver.getLastReport().getDownloaded());
+
+		assertEquals(0, validate(args().preResolution(resolver)).getExitCode());
+		DependencyPreResolver.Report report = resolver.getLastReport();
+		assertEquals(LIBRARIES, report.getArtifacts());
+		assertEquals(0, report.getFailed());
+		assertEquals(0, report.getDownloaded());
+	}
+
+	private CliArgsBuilder args() {
+		return new CliArgsBuilder().batchMode().alternateUserSettings(dir.resolve("settings.xml").toString())
+				.goals("validate");
+	}
+
+	private BuildResult validate(CliArgsBuilder args) {
+		return executor.execute(args, project, DISCARD, DISCARD);
+	}
+
+	private static byte[] pom(String groupId, String artifactId, String packaging, String content) {
+		return ("<project><modelVersion>4.0.0</modelVersion><groupId>" + groupId + "</groupId><artifactId>"
+				+ artifactId + "</artifactId><version>1.0</version><packaging>" + packaging + "</packaging>"
+				+ content + "</project>").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes {@code content} to {@code file} along with its SHA-1, which the
+	 * resolver verifies.
+	 */
+	private static void publish(Path file, byte[] content) throws IOException {
+		Files.write(file, content);
+		StringBuilder sha1 = new StringBuilder();
+		try {
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+				sha1.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		Files.write(file.resolveSibling(file.getFileName() + ".sha1"),
+				sha1.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+}
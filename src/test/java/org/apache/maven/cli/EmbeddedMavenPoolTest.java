@@ -0,0 +1,123 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Pools executors that answer every invocation without booting Maven.
+ */
+public class EmbeddedMavenPoolTest {
+
+	private final Set<EmbeddedMavenExecutor> unhealthy = ConcurrentHashMap.newKeySet();
+
+	private EmbeddedMavenPool.Config config() {
+		return new EmbeddedMavenPool.Config().idleTimeout(0, TimeUnit.NANOSECONDS)
+				.healthCheck(executor -> !unhealthy.contains(executor)).factory(StubExecutor::new);
+	}
+
+	@Test
+	public void leaseTimesOutWhileEveryInstanceIsLeased() throws Exception {
+		try (EmbeddedMavenPool pool = new EmbeddedMavenPool(
+				config().maxSize(1).leaseTimeout(50, TimeUnit.MILLISECONDS));
+				EmbeddedMavenPool.Lease lease = pool.lease()) {
+			try {
+				pool.lease(50, TimeUnit.MILLISECONDS);
+				fail("leased a second instance from a pool of one");
+			} catch (TimeoutException e) {
+				// expected
+			}
+			try {
+				pool.execute(new CliArgsBuilder(), null, null, null);
+				fail("executed without an instance");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertEquals(1, pool.getMetrics().getLeases());
+		}
+	}
+
+	@Test
+	public void unhealthyIdleInstanceIsReplaced() throws Exception {
+		try (EmbeddedMavenPool pool = new EmbeddedMavenPool(config().maxSize(1))) {
+			EmbeddedMavenExecutor first;
+			try (EmbeddedMavenPool.Lease lease = pool.lease()) {
+				first = lease.getExecutor();
+			}
+			unhealthy.add(first);
+			try (EmbeddedMavenPool.Lease lease = pool.lease()) {
+				assertNotSame(first, lease.getExecutor());
+				assertFalse(lease.getExecutor().isClosed());
+			}
+			assertTrue(first.isClosed());
+			EmbeddedMavenPool.Metrics metrics = pool.getMetrics();
+			assertEquals(1, metrics.getUnhealthy());
+			assertEquals(2, metrics.getColdCreations());
+			assertEquals(1, metrics.getSize());
+		}
+	}
+
+	@Test
+	public void instanceIsRecycledAfterMaxBuilds() throws Exception {
+		try (EmbeddedMavenPool pool = new EmbeddedMavenPool(config().maxSize(1).maxBuildsPerInstance(2))) {
+			EmbeddedMavenExecutor first;
+			try (EmbeddedMavenPool.Lease lease = pool.lease()) {
+				first = lease.getExecutor();
+				lease.execute(new CliArgsBuilder(), null, null, null);
+			}
+			try (EmbeddedMavenPool.Lease lease = pool.lease()) {
+				assertSame(first, lease.getExecutor());
+				lease.execute(new CliArgsBuilder(), null, null, null);
+			}
+			assertTrue(first.isClosed());
+			try (EmbeddedMavenPool.Lease lease = pool.lease()) {
+				assertNotSame(first, lease.getExecutor());
+			}
+			assertEquals(1, pool.getMetrics().getRecycled());
+		}
+	}
+
+	@Test
+	public void evictionHonorsIdleTime() throws Exception {
+		// the evictor first runs after a second, well after this test's own calls
+		try (EmbeddedMavenPool pool = new EmbeddedMavenPool(
+				config().maxSize(2).idleTimeout(300, TimeUnit.MILLISECONDS))) {
+			EmbeddedMavenPool.Lease older = pool.lease();
+			EmbeddedMavenPool.Lease newer = pool.lease();
+			older.close();
+			pool.evictIdle();
+			assertFalse(older.getExecutor().isClosed());
+
+			Thread.sleep(400);
+			newer.close();
+			pool.evictIdle();
+			assertTrue(older.getExecutor().isClosed());
+			assertFalse(newer.getExecutor().isClosed());
+			EmbeddedMavenPool.Metrics metrics = pool.getMetrics();
+			assertEquals(1, metrics.getEvicted());
+			assertEquals(1, metrics.getSize());
+			assertEquals(1, metrics.getIdle());
+		}
+	}
+
+	private static class StubExecutor extends EmbeddedMavenExecutor {
+		@Override
+		public synchronized BuildResult execute(CliArgsBuilder args, File workingDirectory, PrintStream out,
+				PrintStream err) {
+			return new BuildResult(0, 0, false);
+		}
+	}
+
+}
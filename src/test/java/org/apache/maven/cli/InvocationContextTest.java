@@ -0,0 +1,41 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CancellationException;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.junit.Test;
+
+public class InvocationContextTest {
+
+	@Test
+	public void failingAProjectOfACancelledBuildMarksItAborted() {
+		InvocationContext parent = new InvocationContext();
+		InvocationContext context = parent.fork();
+		ExecutionListener listener = context.wrap(null);
+		listener.projectStarted(event(ExecutionEvent.Type.ProjectStarted));
+		assertFalse(context.isAborted());
+
+		parent.cancel();
+		listener.projectDiscoveryStarted(event(ExecutionEvent.Type.ProjectDiscoveryStarted));
+		assertFalse(context.isAborted());
+		try {
+			listener.projectStarted(event(ExecutionEvent.Type.ProjectStarted));
+			fail("the project should not start");
+		} catch (CancellationException e) {
+			assertTrue(context.isAborted());
+		}
+	}
+
+	private static ExecutionEvent event(ExecutionEvent.Type type) {
+		return (ExecutionEvent) Proxy.newProxyInstance(ExecutionEvent.class.getClassLoader(),
+				new Class<?>[] { ExecutionEvent.class },
+				(proxy, method, args) -> method.getName().equals("getType") ? type : null);
+	}
+
+}
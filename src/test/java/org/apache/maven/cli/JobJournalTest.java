@@ -0,0 +1,58 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class JobJournalTest {
+
+	private final Path directory;
+
+	public JobJournalTest() throws IOException {
+		directory = Files.createTempDirectory("journal");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void replaysSegmentsWrittenByThisVersion() {
+		CliArgsBuilder first = new CliArgsBuilder().offline().activateProfiles("ci").threads("1C")
+				.systemProperty("skipTests", "true").goals("verify");
+		CliArgsBuilder second = new CliArgsBuilder().alternatePomFile("app/pom.xml").projectList("core")
+				.alsoMake().batchMode().noTransferProgress().goals("install");
+		File workingDirectory = directory.resolve("project").toFile();
+		long firstId;
+		long secondId;
+		try (JobJournal journal = new JobJournal(directory.toFile(), 64 * 1024)) {
+			firstId = journal.enqueue(first, workingDirectory);
+			secondId = journal.enqueue(second, null);
+			journal.markRunning(secondId);
+		}
+		try (JobJournal journal = new JobJournal(directory.toFile(), 64 * 1024)) {
+			List<JobJournal.Job> queued = journal.queued();
+			assertEquals(2, queued.size());
+			assertEquals(firstId, queued.get(0).getId());
+			assertEquals(workingDirectory, queued.get(0).getWorkingDirectory());
+			assertArrayEquals(first.toArgv(), queued.get(0).getArgs().toArgv());
+			// running when the journal was closed, so queued again
+			assertEquals(secondId, queued.get(1).getId());
+			assertArrayEquals(second.toArgv(), queued.get(1).getArgs().toArgv());
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LogEventStreamTest {
+
+	@Test
+	public void longLineIsSplitBetweenCharacters() {
+		List<LogEvent> events = new ArrayList<LogEvent>();
+		LogEventStream stream = new LogEventStream(events::add, false);
+		String start = "a".repeat(LogEventStream.MAX_LINE_BYTES - 1);
+		// the three bytes of the euro sign would straddle the limit
+		byte[] line = (start + "\u20ac end\n").getBytes(StandardCharsets.UTF_8);
+		stream.write(line, 0, line.length);
+		assertEquals(2, events.size());
+		assertEquals(start, events.get(0).getMessage());
+		assertEquals("\u20ac end", events.get(1).getMessage());
+	}
+
+	@Test
+	public void lineOfSingleByteCharactersIsSplitAtTheLimit() {
+		List<LogEvent> events = new ArrayList<LogEvent>();
+		LogEventStream stream = new LogEventStream(events::add, false);
+		byte[] line = ("[INFO] " + "x".repeat(LogEventStream.MAX_LINE_BYTES)).getBytes(StandardCharsets.UTF_8);
+		stream.write(line, 0, line.length);
+		stream.close();
+		assertEquals(2, events.size());
+		assertEquals(LogEventStream.MAX_LINE_BYTES - "[INFO] ".length(), events.get(0).getMessage().length());
+		assertEquals("x".repeat("[INFO] ".length()), events.get(1).getMessage());
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LogRingBufferTest {
+
+	/** Message length, timestamp, level and stream flag, as encoded. */
+	private static final int HEADER_BYTES = 14;
+
+	@Test
+	public void eventsStraddlingTheEndOfTheBufferReadBackWhole() {
+		// 56 bytes hold two 24-byte records; the third wraps within its header and
+		// the fifth within its message
+		LogRingBuffer buffer = new LogRingBuffer(56);
+		for (int i = 1; i <= 5; i++) {
+			buffer.accept(new LogEvent(LogEvent.Level.WARNING, "message #" + i, 1000L + i, i % 2 == 0));
+		}
+		List<LogEvent> events = buffer.snapshot();
+		assertEquals(2, events.size());
+		assertEquals("message #4", events.get(0).getMessage());
+		assertEquals(1004L, events.get(0).getTimestamp());
+		assertTrue(events.get(0).isError());
+		assertEquals("message #5", events.get(1).getMessage());
+		assertEquals(LogEvent.Level.WARNING, events.get(1).getLevel());
+		assertEquals(1005L, events.get(1).getTimestamp());
+		assertFalse(events.get(1).isError());
+		assertEquals(48, buffer.getUsedBytes());
+	}
+
+	@Test
+	public void oldestEventsAreEvictedFirst() {
+		LogRingBuffer buffer = new LogRingBuffer(4 * (HEADER_BYTES + 1));
+		for (int i = 0; i < 10; i++) {
+			buffer.accept(new LogEvent(LogEvent.Level.INFO, Integer.toString(i), i, false));
+		}
+		assertEquals(List.of("6", "7", "8", "9"), messages(buffer.snapshot()));
+		assertEquals(6, buffer.getDroppedEvents());
+		assertEquals(List.of("8", "9"), messages(buffer.tail(2)));
+
+		// a longer event evicts as many of the oldest as it needs room for
+		buffer.accept(new LogEvent(LogEvent.Level.INFO, "10", 10, false));
+		assertEquals(List.of("8", "9", "10"), messages(buffer.snapshot()));
+		assertEquals(8, buffer.getDroppedEvents());
+	}
+
+	@Test
+	public void oversizedMessageIsTruncatedBetweenCharacters() {
+		LogRingBuffer buffer = new LogRingBuffer(HEADER_BYTES + 10);
+		buffer.accept(new LogEvent(LogEvent.Level.INFO, "first", 1, false));
+		// 'a' and six two-byte characters: the tenth byte is the first half of the fifth of them
+		buffer.accept(new LogEvent(LogEvent.Level.ERROR, "a\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9", 2, true));
+		List<LogEvent> events = buffer.snapshot();
+		assertEquals(1, events.size());
+		assertEquals("a\u00e9\u00e9\u00e9\u00e9", events.get(0).getMessage());
+		assertEquals(HEADER_BYTES + 9, buffer.getUsedBytes());
+
+		buffer.accept(new LogEvent(LogEvent.Level.INFO, "0123456789\u20ac", 3, false));
+		assertEquals("0123456789", buffer.snapshot().get(0).getMessage());
+	}
+
+	private static List<String> messages(List<LogEvent> events) {
+		List<String> messages = new ArrayList<String>();
+		for (LogEvent event : events) {
+			messages.add(event.getMessage());
+		}
+		return messages;
+	}
+
+}
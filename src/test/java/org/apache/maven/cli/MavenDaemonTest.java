@@ -0,0 +1,105 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MavenDaemonTest {
+
+	private Path directory;
+	private MavenDaemon daemon;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("daemon");
+		daemon = new MavenDaemon((args, workingDirectory, out, err) -> {
+			out.print("goals " + args.getGoals());
+			return new BuildResult(3, 1, false);
+		}, 0, directory.resolve("daemon.token"));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		daemon.close();
+		Files.deleteIfExists(directory.resolve("other.token"));
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	public void clientWithTheTokenRunsBuilds() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BuildResult result = new MavenDaemonClient(daemon.getPort(), daemon.getTokenFile())
+				.execute(new CliArgsBuilder().goals("verify"), directory.toFile(), new PrintStream(out), null);
+		assertEquals(3, result.getExitCode());
+		assertEquals("goals [verify]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+		assertEquals(1, daemon.getRequests());
+	}
+
+	@Test
+	public void tokenFileIsOwnerOnly() throws IOException {
+		if (daemon.getTokenFile().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+					Files.getPosixFilePermissions(daemon.getTokenFile()));
+		}
+	}
+
+	@Test
+	public void clientWithAnotherTokenIsRefused() throws IOException {
+		Path other = Files.write(directory.resolve("other.token"), "guess".getBytes(StandardCharsets.US_ASCII));
+		try {
+			new MavenDaemonClient(daemon.getPort(), other).execute(new CliArgsBuilder().goals("verify"),
+					directory.toFile());
+			fail("built without the token");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Invalid daemon token"));
+		}
+		assertEquals(0, daemon.getRequests());
+	}
+
+	@Test
+	public void oversizedLengthIsRejectedBeforeAllocating() throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeInt(DaemonProtocol.MAGIC);
+			out.writeByte(DaemonProtocol.VERSION);
+			// a token claiming to be almost 2 GB long
+			WireFormat.writeVarInt(out, Integer.MAX_VALUE);
+			out.flush();
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			try {
+				in.readByte();
+				fail("connection still open");
+			} catch (EOFException e) {
+				// closed by the daemon
+			}
+		}
+		assertEquals(0, daemon.getRequests());
+	}
+
+	@Test
+	public void tokenFileIsDeletedOnClose() throws IOException {
+		assertTrue(Files.exists(daemon.getTokenFile()));
+		daemon.close();
+		assertFalse(Files.exists(daemon.getTokenFile()));
+	}
+
+}
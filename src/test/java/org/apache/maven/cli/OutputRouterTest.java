@@ -0,0 +1,78 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutputRouterTest {
+
+	private final ExecutorService pool = Executors.newSingleThreadExecutor();
+	private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+	private PrintStream originalOut;
+
+	@Before
+	public void setUp() {
+		// an earlier build may have left the router installed; restore the stream it routes around
+		OutputRouter.uninstall();
+		originalOut = System.out;
+		System.setOut(new PrintStream(console, true));
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+		OutputRouter.uninstall();
+		System.setOut(originalOut);
+	}
+
+	@Test
+	public void invocationPrintsToItsRoute() {
+		ByteArrayOutputStream a = new ByteArrayOutputStream();
+		OutputRouter.run(new PrintStream(a), null, LogEvent.Level.INFO, () -> {
+			System.out.println("[INFO] a");
+			System.out.println("[DEBUG] hidden");
+			return null;
+		});
+		assertEquals("[INFO] a\n", text(a));
+		assertEquals("", text(console));
+	}
+
+	@Test
+	public void threadStartedDuringOneInvocationPrintsToTheConsoleAfterwards() throws Exception {
+		ByteArrayOutputStream a = new ByteArrayOutputStream();
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		OutputRouter.run(new PrintStream(a), null, LogEvent.Level.INFO, () -> {
+			try {
+				// starts the pool's only thread, which inherits the route of invocation a
+				pool.submit(() -> System.out.println("during a")).get();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+		OutputRouter.run(new PrintStream(b), null, LogEvent.Level.INFO, () -> {
+			try {
+				pool.submit(() -> System.out.println("during b")).get();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+		assertEquals("during a\n", text(a));
+		assertEquals("", text(b));
+		assertEquals("during b\n", text(console));
+	}
+
+	private static String text(ByteArrayOutputStream out) {
+		return new String(out.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReactorChangeIndexTest {
+
+	private Path dir;
+	private Path root;
+	private Path indexFile;
+
+	@Before
+	public void createReactor() throws IOException {
+		dir = Files.createTempDirectory("change-index");
+		root = Files.createDirectories(dir.resolve("reactor"));
+		indexFile = dir.resolve("index");
+		write("pom.xml", pom("<modules><module>core</module><module>app</module></modules>"
+				+ "<profiles><profile><id>extra</id><modules><module>extra</module></modules></profile>"
+				+ "<profile><id>samples</id><activation><activeByDefault>true</activeByDefault></activation>"
+				+ "<modules><module>samples</module></modules></profile></profiles>"));
+		for (String module : Arrays.asList("core", "app", "extra", "samples")) {
+			write(module + "/pom.xml", pom(""));
+			write(module + "/src/main/java/" + module + "/Main.java", "class Main {}");
+		}
+	}
+
+	@After
+	public void deleteReactor() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void everythingChangesWithoutAnIndex() {
+		ReactorChangeIndex index = new ReactorChangeIndex(root.toFile(), indexFile.toFile());
+		assertFalse(index.hasBaseline());
+		assertTrue(index.detect().isFull());
+	}
+
+	@Test
+	public void unreadableIndexIsNoBaseline() throws IOException {
+		new ReactorChangeIndex(root.toFile(), indexFile.toFile()).commit(detect());
+		byte[] recorded = Files.readAllBytes(indexFile);
+
+		Files.write(indexFile, "not an index".getBytes(StandardCharsets.UTF_8));
+		ReactorChangeIndex index = new ReactorChangeIndex(root.toFile(), indexFile.toFile());
+		assertFalse(index.hasBaseline());
+		assertTrue(index.detect().isFull());
+
+		Files.write(indexFile, Arrays.copyOf(recorded, recorded.length - 1));
+		assertFalse(new ReactorChangeIndex(root.toFile(), indexFile.toFile()).hasBaseline());
+	}
+
+	@Test
+	public void unchangedTreeHasNoChanges() {
+		new ReactorChangeIndex(root.toFile(), indexFile.toFile()).commit(detect());
+		ReactorChangeIndex.Changes changes = detect();
+		assertTrue(changes.isEmpty());
+		assertEquals(0, changes.getChangedFiles());
+		assertEquals(0, changes.getHashedFiles());
+	}
+
+	@Test
+	public void changeInOneModuleSelectsItAndItsDependents() throws IOException {
+		new ReactorChangeIndex(root.toFile(), indexFile.toFile()).commit(detect());
+		write("core/src/main/java/core/Main.java", "class Main { int changed; }");
+
+		ReactorChangeIndex.Changes changes = detect();
+		assertFalse(changes.isFull());
+		assertEquals(Collections.singletonList("core"), changes.getModules());
+		assertEquals(1, changes.getChangedFiles());
+		assertArrayEquals(new String[] { "-pl", "core", "-amd", "install" },
+				changes.applyTo(new CliArgsBuilder().phases("install")).toArgv());
+	}
+
+	@Test
+	public void newFileIsAChange() throws IOException {
+		new ReactorChangeIndex(root.toFile(), indexFile.toFile()).commit(detect());
+		write("app/src/main/java/app/Added.java", "class Added {}");
+		assertEquals(Collections.singletonList("app"), detect().getModules());
+	}
+
+	@Test
+	public void modulesOfActiveProfilesArePartOfTheReactor() throws IOException {
+		ReactorChangeIndex index = new ReactorChangeIndex(root.toFile(), indexFile.toFile());
+		assertEquals(Arrays.asList(".", "core", "app", "samples"), index.modules(new CliArgsBuilder()));
+		assertEquals(Arrays.asList(".", "core", "app", "extra"),
+				index.modules(new CliArgsBuilder().activateProfiles("extra")));
+		assertEquals(Arrays.asList(".", "core", "app"),
+				index.modules(new CliArgsBuilder().activateProfiles("!samples")));
+
+		CliArgsBuilder args = new CliArgsBuilder().activateProfiles("extra");
+		index.commit(index.detect(args));
+		write("extra/src/main/java/extra/Main.java", "class Main { int changed; }");
+		assertEquals(Collections.singletonList("extra"), index.detect(args).getModules());
+	}
+
+	private ReactorChangeIndex.Changes detect() {
+		return new ReactorChangeIndex(root.toFile(), indexFile.toFile()).detect();
+	}
+
+	private void write(String relative, String content) throws IOException {
+		Path file = root.resolve(relative);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String pom(String content) {
+		return "<project><modelVersion>4.0.0</modelVersion><groupId>test</groupId><artifactId>test</artifactId>"
+				+ "<version>1.0</version><packaging>pom</packaging>" + content + "</project>";
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SourceFingerprintTest {
+
+	private final Path root;
+
+	public SourceFingerprintTest() throws IOException {
+		root = Files.createTempDirectory("fingerprint");
+		Files.write(root.resolve("pom.xml"), "<project/>".getBytes(StandardCharsets.UTF_8));
+		Path src = Files.createDirectories(root.resolve("src/main/java"));
+		for (int i = 0; i < 4; i++) {
+			Files.write(src.resolve("C" + i + ".java"), ("class C" + i + " {}").getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void skipsBuildOutputButNotSourceDirectoriesWithTheSameNames() throws IOException {
+		Path packageNamedTarget = Files.createDirectories(root.resolve("src/main/java/com/x/target"));
+		Files.write(packageNamedTarget.resolve("Foo.java"), "class Foo {}".getBytes(StandardCharsets.UTF_8));
+		Path hidden = Files.createDirectories(root.resolve("src/test/resources/.config"));
+		Files.write(hidden.resolve("app.properties"), "a=1".getBytes(StandardCharsets.UTF_8));
+		Files.createDirectories(root.resolve("target/classes"));
+		Files.write(root.resolve("target/classes/C0.class"), new byte[] { 1 });
+		Files.createDirectories(root.resolve(".git"));
+		Files.write(root.resolve(".git/HEAD"), "ref".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(Arrays.asList(root.resolve("pom.xml"), root.resolve("src/main/java/C0.java"),
+				root.resolve("src/main/java/C1.java"), root.resolve("src/main/java/C2.java"),
+				root.resolve("src/main/java/C3.java"), packageNamedTarget.resolve("Foo.java"),
+				hidden.resolve("app.properties")), SourceFingerprint.inputs(root));
+	}
+
+	@Test
+	public void forgetsDeletedFiles() throws IOException {
+		SourceFingerprint fingerprints = new SourceFingerprint();
+		byte[] before = fingerprints.fingerprint(root);
+		assertEquals(5, fingerprints.size());
+		Files.delete(root.resolve("src/main/java/C0.java"));
+		assertNotEquals(Arrays.toString(before), Arrays.toString(fingerprints.fingerprint(root)));
+		assertEquals(4, fingerprints.size());
+	}
+
+	@Test
+	public void keepsAtMostMaxStamps() {
+		SourceFingerprint fingerprints = new SourceFingerprint(3);
+		byte[] bounded = fingerprints.fingerprint(root);
+		assertEquals(3, fingerprints.size());
+		assertEquals(Arrays.toString(new SourceFingerprint().fingerprint(root)), Arrays.toString(bounded));
+	}
+
+}
@@ -0,0 +1,93 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SystemPropertiesOverlayTest {
+
+	private static final String KEY = SystemPropertiesOverlayTest.class.getName();
+
+	private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+		System.clearProperty(KEY);
+	}
+
+	@Test
+	public void invocationSeesItsOwnProperties() {
+		File dir = new File("a").getAbsoluteFile();
+		String seen = SystemPropertiesOverlay.run(dir, () -> {
+			System.setProperty(KEY, "a");
+			return System.getProperty(KEY) + " " + System.getProperty("user.dir");
+		});
+		assertEquals("a " + dir.getPath(), seen);
+		assertNull(System.getProperty(KEY));
+	}
+
+	@Test
+	public void threadStartedDuringOneInvocationDoesNotLeakItIntoTheNext() throws Exception {
+		String userDir = System.getProperty("user.dir");
+		SystemPropertiesOverlay.run(new File("a").getAbsoluteFile(), () -> {
+			System.setProperty(KEY, "a");
+			try {
+				// starts the pool's only thread, which inherits invocation a
+				assertEquals("a", pool.submit(() -> System.getProperty(KEY)).get());
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+		String[] seen = SystemPropertiesOverlay.run(new File("b").getAbsoluteFile(), () -> {
+			System.setProperty(KEY, "b");
+			try {
+				Future<String[]> reused = pool.submit(() -> new String[] { System.getProperty(KEY),
+						System.getProperty("user.dir") });
+				return reused.get();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertNull(seen[0]);
+		assertEquals(userDir, seen[1]);
+	}
+
+	@Test
+	public void threadOutlivingAnInvocationWritesToTheJvmProperties() throws Exception {
+		SystemPropertiesOverlay.run(new File("a").getAbsoluteFile(), () -> {
+			try {
+				pool.submit(() -> null).get();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+		pool.submit(() -> System.setProperty(KEY, "late")).get();
+		assertEquals("late", System.getProperty(KEY));
+	}
+
+	@Test
+	public void jvmPropertiesAreRestoredWhenNoInvocationRuns() {
+		Properties jvm = System.getProperties();
+		SystemPropertiesOverlay.run(new File("a").getAbsoluteFile(), () -> {
+			assertTrue(SystemPropertiesOverlay.isInstalled());
+			return SystemPropertiesOverlay.run(new File("b").getAbsoluteFile(), () -> null);
+		});
+		assertFalse(SystemPropertiesOverlay.isInstalled());
+		assertSame(jvm, System.getProperties());
+	}
+
+}
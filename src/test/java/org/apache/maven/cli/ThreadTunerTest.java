@@ -0,0 +1,98 @@
+package org.apache.maven.cli;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadTunerTest {
+
+	private Path dir;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("thread-tuner");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void modulesThatLeaveTheReactorAreDropped() {
+		File profile = dir.resolve("profile.bin").toFile();
+		ThreadTuner tuner = new ThreadTuner(profile, 4);
+		MavenProject legacy = project("legacy");
+		build(tuner, Arrays.asList(legacy), project("core"), project("app"), legacy);
+		// a module that has never been built leaves the profile incomplete
+		assertFalse(tuner.hasProfile());
+
+		build(tuner, Collections.<MavenProject>emptyList(), project("core"), project("app"));
+		assertTrue(tuner.hasProfile());
+		assertTrue(tuner.recommend() > 0);
+		assertTrue(new ThreadTuner(profile, 4).hasProfile());
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void build(ThreadTuner tuner, List<MavenProject> failing, MavenProject... projects) {
+		MavenSession session = new MavenSession(null, new DefaultMavenExecutionRequest(),
+				new DefaultMavenExecutionResult(), Arrays.asList(projects));
+		ExecutionListener listener = tuner.newListener(1);
+		listener.sessionStarted(event(ExecutionEvent.Type.SessionStarted, session, null));
+		for (MavenProject project : projects) {
+			listener.projectStarted(event(ExecutionEvent.Type.ProjectStarted, session, project));
+			if (failing.contains(project)) {
+				listener.projectFailed(event(ExecutionEvent.Type.ProjectFailed, session, project));
+			} else {
+				listener.projectSucceeded(event(ExecutionEvent.Type.ProjectSucceeded, session, project));
+			}
+		}
+		listener.sessionEnded(event(ExecutionEvent.Type.SessionEnded, session, null));
+	}
+
+	private static MavenProject project(String artifactId) {
+		MavenProject project = new MavenProject();
+		project.setGroupId("g");
+		project.setArtifactId(artifactId);
+		return project;
+	}
+
+	private static ExecutionEvent event(ExecutionEvent.Type type, MavenSession session, MavenProject project) {
+		return (ExecutionEvent) Proxy.newProxyInstance(ExecutionEvent.class.getClassLoader(),
+				new Class<?>[] { ExecutionEvent.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getType":
+						return type;
+					case "getSession":
+						return session;
+					case "getProject":
+						return project;
+					default:
+						return null;
+					}
+				});
+	}
+
+}